@@ -0,0 +1,51 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import com.davixdevelop.worldshifter.model.MultiTerrainRegion;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the in memory work done per source chunk. The skeleton chunk replaces the clearing of a copied region file
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChunkBenchmark {
+    @Param({"sparse", "normal", "dense"})
+    public String density;
+
+    @Param({"false", "true"})
+    public boolean isMultiWorld;
+
+    private CompoundTag chunkTag;
+    private TerrainChunk chunk;
+    private MultiTerrainRegion region;
+
+    @Setup(Level.Trial)
+    public void createChunkTag() {
+        chunkTag = SyntheticChunks.terrainChunkTag(3, 7, SyntheticChunks.Density.of(density));
+    }
+
+    @Setup(Level.Invocation)
+    public void createChunk() {
+        //The shift moves the tags of the source chunk into the world slices, so each invocation needs a fresh chunk
+        chunk = new TerrainChunk(chunkTag.clone());
+        region = new MultiTerrainRegion(new File("r.0.0.mca"), -64, 320, 64, 4, new File("world-shifted"), isMultiWorld, new AtomicInteger(), new AtomicInteger(), null);
+    }
+
+    @Benchmark
+    public TerrainChunk createSkeletonChunk() {
+        return region.createSkeletonChunk(chunk);
+    }
+
+    @Benchmark
+    public MultiTerrainRegion shiftChunk() throws Exception {
+        region.shiftChunk(chunk);
+        return region;
+    }
+}
@@ -0,0 +1,49 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import com.davixdevelop.worldshifter.model.WorldHeight;
+import com.davixdevelop.worldshifter.utils.EntityUtils;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the offset of the entities of a chunk, from a few mobs to an item farm
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class EntityBenchmark {
+    @Param({"16", "1024", "16384"})
+    public int entitiesCount;
+
+    @Param({"false", "true"})
+    public boolean isMultiWorld;
+
+    private final WorldHeight worldHeight = new WorldHeight(-64, 320);
+    private final AtomicInteger removedEntities = new AtomicInteger();
+
+    private ListTag<CompoundTag> sourceEntities;
+    private ListTag<CompoundTag> entities;
+
+    @Setup(Level.Trial)
+    public void createSourceEntities() {
+        SyntheticChunks.Density density = new SyntheticChunks.Density(24, 1, entitiesCount, 0, 0, SyntheticChunks.DEFAULT_DATA_VERSION);
+        sourceEntities = SyntheticChunks.entities(3, 7, density, new Random(42));
+    }
+
+    @Setup(Level.Invocation)
+    public void copyEntities() {
+        //The offset rewrites the entities in place, so each invocation needs a fresh copy
+        entities = sourceEntities.clone();
+    }
+
+    @Benchmark
+    public Map<Integer, ListTag<CompoundTag>> offsetEntities() {
+        return EntityUtils.offsetEntities(entities, 64, SyntheticChunks.DEFAULT_DATA_VERSION, worldHeight, removedEntities, isMultiWorld);
+    }
+}
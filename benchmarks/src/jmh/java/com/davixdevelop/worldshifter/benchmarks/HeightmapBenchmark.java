@@ -0,0 +1,54 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import com.davixdevelop.worldshifter.model.WorldHeight;
+import com.davixdevelop.worldshifter.utils.HeightmapCodec;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the heightmap codec, that replaced the heightmap decode and encode of Utils
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HeightmapBenchmark {
+    @Param({"false", "true"})
+    public boolean isMultiWorld;
+
+    private final WorldHeight worldHeight = new WorldHeight(-64, 320);
+    private long[] heightmap;
+    private long[] target;
+    private int[] legacyHeightmap;
+    private int[] legacyTarget;
+
+    @Setup(Level.Trial)
+    public void createHeightmaps() {
+        CompoundTag chunkTag = SyntheticChunks.terrainChunkTag(3, 7, SyntheticChunks.Density.of("dense"));
+        heightmap = chunkTag.getCompoundTag("Heightmaps").getLongArray("MOTION_BLOCKING");
+        target = new long[heightmap.length];
+
+        legacyHeightmap = new int[HeightmapCodec.HEIGHTS_COUNT];
+        for(int i = 0; i < legacyHeightmap.length; i++) {
+            legacyHeightmap[i] = 60 + (i * 31) % 40;
+        }
+        legacyTarget = new int[HeightmapCodec.HEIGHTS_COUNT];
+    }
+
+    @Benchmark
+    public boolean scan() {
+        return HeightmapCodec.get().scan(heightmap, 9, SyntheticChunks.MIN_SECTION_Y * 16);
+    }
+
+    @Benchmark
+    public long[] repack() {
+        return HeightmapCodec.get().repack(heightmap, 9, SyntheticChunks.MIN_SECTION_Y * 16, 64, worldHeight, 0, isMultiWorld, target);
+    }
+
+    @Benchmark
+    public int[] sliceLegacy() {
+        HeightmapCodec.get().slice(legacyHeightmap, 64, worldHeight, 0, isMultiWorld, legacyTarget);
+        return legacyTarget;
+    }
+}
@@ -0,0 +1,85 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import com.davixdevelop.worldshifter.model.MultiTerrainRegion;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Benchmarks the shift of a whole terrain region, from reading the source region file to writing the world slices
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ShiftRegionBenchmark {
+    @Param({"sparse", "normal", "dense"})
+    public String density;
+
+    @Param({"256"})
+    public int chunksCount;
+
+    private File workFolder;
+    private File sourceRegionFile;
+    private File outputFolder;
+
+    @Setup(Level.Trial)
+    public void writeSourceRegion() throws IOException {
+        workFolder = Files.createTempDirectory("worldshifter-bench").toFile();
+        sourceRegionFile = new File(workFolder, "r.0.0.mca");
+        outputFolder = new File(workFolder, "world-shifted");
+        SyntheticChunks.writeTerrainRegion(sourceRegionFile, 0, 0, chunksCount, SyntheticChunks.Density.of(density));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkFolder() throws IOException {
+        try(var paths = Files.walk(workFolder.toPath())) {
+            paths.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    MultiTerrainRegion createRegion(boolean isMultiWorld) {
+        //Shift up by 64 blocks, into the default 1.18+ height, so that the top sections are sliced off
+        return new MultiTerrainRegion(sourceRegionFile, -64, 320, 64, 4, outputFolder, isMultiWorld, new AtomicInteger(), new AtomicInteger(), null);
+    }
+
+    @Benchmark
+    public void shiftRegion() throws Exception {
+        createRegion(false).shiftRegion();
+    }
+
+    @Benchmark
+    public void shiftRegionMultiWorld() throws Exception {
+        createRegion(true).shiftRegion();
+    }
+
+    @Benchmark
+    public void flushRegions(ShiftedRegion shiftedRegion) {
+        shiftedRegion.region.flushRegions();
+    }
+
+    /**
+     * The chunks of the source region shifted in memory, but not yet flushed
+     */
+    @State(Scope.Thread)
+    public static class ShiftedRegion {
+        private MultiTerrainRegion region;
+
+        @Setup(Level.Invocation)
+        public void shiftChunks(ShiftRegionBenchmark benchmark) throws Exception {
+            region = benchmark.createRegion(true);
+            try(RandomAccessMcaFile<TerrainChunk> regionMCA = new RandomAccessMcaFile<>(TerrainChunk.class, benchmark.sourceRegionFile, "r")) {
+                regionMCA.touch();
+                for(int index = 0; index < 1024; index++) {
+                    if(regionMCA.hasChunk(index))
+                        region.shiftChunk(regionMCA.read(index));
+                }
+            }
+        }
+    }
+}
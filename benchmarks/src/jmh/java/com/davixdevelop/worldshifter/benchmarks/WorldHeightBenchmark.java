@@ -0,0 +1,47 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import com.davixdevelop.worldshifter.model.SectionRoutingPlan;
+import com.davixdevelop.worldshifter.model.WorldHeight;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the world index math of a chunk column, computed on the fly and looked up from the routing plan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class WorldHeightBenchmark {
+    private static final int SECTION_OFFSET_Y = 4;
+
+    private final WorldHeight worldHeight = new WorldHeight(-64, 320);
+    private final SectionRoutingPlan routingPlan = SectionRoutingPlan.of(worldHeight, SECTION_OFFSET_Y, true);
+
+    @Benchmark
+    public void computeSections(Blackhole blackhole) {
+        for(int sectionY = -4; sectionY < 20; sectionY++) {
+            int newSectionY = sectionY + SECTION_OFFSET_Y;
+            int worldIndex = worldHeight.getWorldIndexFromSection(newSectionY);
+            blackhole.consume(worldIndex);
+            blackhole.consume(worldHeight.calcSectionOffset(worldIndex, newSectionY));
+        }
+    }
+
+    @Benchmark
+    public void routeSections(Blackhole blackhole) {
+        for(int sectionY = -4; sectionY < 20; sectionY++) {
+            blackhole.consume(routingPlan.getWorldIndex(sectionY));
+            blackhole.consume(routingPlan.getTargetSectionY(sectionY));
+        }
+    }
+
+    @Benchmark
+    public void computeBlocks(Blackhole blackhole) {
+        for(int y = -64; y < 320; y++) {
+            int worldIndex = worldHeight.getWorldIndexFromY(y + 64);
+            blackhole.consume(worldHeight.calcBlockOffset(worldIndex, y + 64));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import com.davixdevelop.worldshifter.Main;
+import com.davixdevelop.worldshifter.io.McaReader;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs the full WorldShifter shift of a world at 1 to N threads, and reports the throughput and speedup curve as JSON
+ */
+public class ScalingHarness {
+
+    /**
+     * The result of the runs at a thread count
+     * @param threadCount The requested thread count
+     * @param seconds The median wall time of the runs
+     */
+    private record ScalingPoint(int threadCount, double seconds) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length < 2) {
+            LogUtils.log("usage: ScalingHarness <worldPath> <offset> [minY] [maxY] [--maxThreads <n>] [--runs <n>] [--output <file>] [-- <extra WorldShifter args>]");
+            return;
+        }
+
+        List<String> shiftArgs = new ArrayList<>();
+        List<String> extraArgs = new ArrayList<>();
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        int runs = 3;
+        File outputFile = new File("scaling.json");
+
+        for(int a = 0; a < args.length; a++) {
+            switch (args[a]) {
+                case "--maxThreads" -> maxThreads = Integer.parseInt(args[++a]);
+                case "--runs" -> runs = Integer.parseInt(args[++a]);
+                case "--output" -> outputFile = new File(args[++a]);
+                case "--" -> {
+                    extraArgs.addAll(Arrays.asList(args).subList(a + 1, args.length));
+                    a = args.length;
+                }
+                default -> shiftArgs.add(args[a]);
+            }
+        }
+
+        File worldFolder = Paths.get(shiftArgs.getFirst()).toFile();
+        long chunksCount = countChunks(new File(worldFolder, "region")) + countChunks(new File(worldFolder, "entities"));
+        long inputBytes = folderSize(new File(worldFolder, "region")) + folderSize(new File(worldFolder, "entities"));
+
+        //Warm up the JIT, so that the first thread count isn't penalized
+        runShift(worldFolder, shiftArgs, extraArgs, maxThreads);
+
+        List<ScalingPoint> points = new ArrayList<>();
+        for(int threadCount = 1; threadCount <= maxThreads; threadCount++) {
+            double[] times = new double[runs];
+            for(int r = 0; r < runs; r++) {
+                times[r] = runShift(worldFolder, shiftArgs, extraArgs, threadCount);
+            }
+
+            Arrays.sort(times);
+            points.add(new ScalingPoint(threadCount, times[runs / 2]));
+        }
+
+        writeReport(outputFile, worldFolder, chunksCount, inputBytes, runs, points);
+        LogUtils.log("Wrote scaling report to " + outputFile.getPath());
+    }
+
+    /**
+     * Run the full shift of the world in process, starting from an empty output folder
+     * @return The wall time in seconds
+     */
+    private static double runShift(File worldFolder, List<String> shiftArgs, List<String> extraArgs, int threadCount) throws Exception {
+        deleteFolder(new File(worldFolder, "world-shifted"));
+
+        List<String> args = new ArrayList<>(shiftArgs);
+        args.addAll(extraArgs);
+        args.add("--threadCount");
+        args.add(String.valueOf(threadCount));
+
+        long startTime = System.nanoTime();
+        Main.main(args.toArray(new String[0]));
+        return (System.nanoTime() - startTime) / 1_000_000_000.0;
+    }
+
+    private static void writeReport(File outputFile, File worldFolder, long chunksCount, long inputBytes, int runs, List<ScalingPoint> points) throws IOException {
+        double baseSeconds = points.getFirst().seconds();
+
+        try(PrintWriter writer = new PrintWriter(outputFile)) {
+            writer.println("{");
+            writer.println("  \"world\": \"" + worldFolder.getPath().replace("\\", "\\\\") + "\",");
+            writer.println("  \"chunks\": " + chunksCount + ",");
+            writer.println("  \"inputBytes\": " + inputBytes + ",");
+            writer.println("  \"availableProcessors\": " + Runtime.getRuntime().availableProcessors() + ",");
+            writer.println("  \"runsPerPoint\": " + runs + ",");
+            writer.println("  \"points\": [");
+            for(int p = 0; p < points.size(); p++) {
+                ScalingPoint point = points.get(p);
+                double speedup = baseSeconds / point.seconds();
+                writer.print(String.format(Locale.ROOT,
+                        "    {\"threads\": %d, \"seconds\": %.3f, \"chunksPerSecond\": %.1f, \"megabytesPerSecond\": %.2f, \"speedup\": %.3f, \"efficiency\": %.3f}",
+                        point.threadCount(), point.seconds(), chunksCount / point.seconds(), inputBytes / 1_048_576.0 / point.seconds(),
+                        speedup, speedup / point.threadCount()));
+                writer.println(p + 1 < points.size() ? "," : "");
+            }
+            writer.println("  ]");
+            writer.println("}");
+        }
+    }
+
+    private static long countChunks(File folder) {
+        File[] regionFiles = folder.listFiles(path -> path.getName().endsWith("mca"));
+        if(regionFiles == null)
+            return 0;
+
+        long chunksCount = 0;
+        for(File regionFile : regionFiles) {
+            try(McaReader reader = new McaReader(regionFile)) {
+                for(int index = 0; index < 1024; index++) {
+                    if(reader.hasChunk(index))
+                        chunksCount++;
+                }
+            } catch (IOException ex) {
+                LogUtils.logError("Error while reading the header", regionFile, ex);
+            }
+        }
+
+        return chunksCount;
+    }
+
+    private static long folderSize(File folder) {
+        File[] files = folder.listFiles();
+        return files == null ? 0 : Arrays.stream(files).mapToLong(File::length).sum();
+    }
+
+    private static void deleteFolder(File folder) throws IOException {
+        if(!folder.exists())
+            return;
+
+        try(var paths = Files.walk(folder.toPath())) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import io.github.ensgijs.nbt.mca.EntitiesChunk;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.tag.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic 1.18+ chunks. The content of a chunk only depends on its position and the
+ * density, so the same inputs always produce the same chunks
+ */
+public class SyntheticChunks {
+    /**
+     * The DataVersion of 1.20.4
+     */
+    public static final int DEFAULT_DATA_VERSION = 3700;
+
+    /**
+     * The min section Y of the 1.18+ worlds
+     */
+    public static final int MIN_SECTION_Y = -4;
+
+    /**
+     * The density of the synthetic chunks
+     * @param sectionsCount The amount of sections of a chunk, from the bottom of the world
+     * @param paletteSize The amount of block states in the palette of a section
+     * @param entitiesCount The amount of entities of a chunk
+     * @param blockEntitiesCount The amount of block entities of a chunk
+     * @param ticksCount The amount of block and fluid ticks of a chunk
+     * @param dataVersion The DataVersion of the chunks
+     */
+    public record Density(int sectionsCount, int paletteSize, int entitiesCount, int blockEntitiesCount, int ticksCount, int dataVersion) {
+        public static Density of(String name) {
+            return switch (name) {
+                case "sparse" -> new Density(4, 4, 2, 1, 4, DEFAULT_DATA_VERSION);
+                case "normal" -> new Density(12, 16, 16, 8, 32, DEFAULT_DATA_VERSION);
+                case "dense" -> new Density(24, 64, 256, 64, 256, DEFAULT_DATA_VERSION);
+                case "farm" -> new Density(16, 16, 4096, 16, 64, DEFAULT_DATA_VERSION);
+                default -> throw new IllegalArgumentException("Unknown density: " + name);
+            };
+        }
+    }
+
+    private static final String[] BLOCKS = {
+            "minecraft:air", "minecraft:stone", "minecraft:deepslate", "minecraft:dirt", "minecraft:grass_block",
+            "minecraft:water", "minecraft:sand", "minecraft:gravel", "minecraft:oak_log", "minecraft:oak_leaves",
+            "minecraft:coal_ore", "minecraft:iron_ore", "minecraft:copper_ore", "minecraft:andesite", "minecraft:diorite",
+            "minecraft:granite"
+    };
+
+    private static final String[] ENTITIES = {
+            "minecraft:item", "minecraft:zombie", "minecraft:cow", "minecraft:bee", "minecraft:villager"
+    };
+
+    private static final String[] BLOCK_ENTITIES = {
+            "minecraft:chest", "minecraft:furnace", "minecraft:hopper", "minecraft:beehive", "minecraft:sign"
+    };
+
+    private static Random random(int chunkX, int chunkZ, long salt) {
+        return new Random(((long) chunkX << 32) ^ (chunkZ & 0xffffffffL) ^ salt);
+    }
+
+    /**
+     * Create a synthetic terrain chunk
+     * @param chunkX The X position of the chunk
+     * @param chunkZ The Z position of the chunk
+     * @param density The density of the chunk
+     * @return The root tag of the chunk
+     */
+    public static CompoundTag terrainChunkTag(int chunkX, int chunkZ, Density density) {
+        Random random = random(chunkX, chunkZ, 0x5eed);
+
+        CompoundTag root = new CompoundTag();
+        root.putInt("DataVersion", density.dataVersion());
+        root.putInt("xPos", chunkX);
+        root.putInt("zPos", chunkZ);
+        root.putInt("yPos", MIN_SECTION_Y);
+        root.putString("Status", "minecraft:full");
+        root.putLong("LastUpdate", 1000L);
+        root.putLong("InhabitedTime", 0L);
+
+        ListTag<CompoundTag> sections = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for(int s = 0; s < density.sectionsCount(); s++) {
+            sections.add(sectionTag(MIN_SECTION_Y + s, density.paletteSize(), random));
+        }
+        root.put("sections", sections);
+
+        int surfaceHeight = MIN_SECTION_Y * 16 + density.sectionsCount() * 16;
+        CompoundTag heightmaps = new CompoundTag();
+        heightmaps.putLongArray("MOTION_BLOCKING", heightmap(surfaceHeight, random));
+        heightmaps.putLongArray("WORLD_SURFACE", heightmap(surfaceHeight, random));
+        heightmaps.putLongArray("OCEAN_FLOOR", heightmap(surfaceHeight - 4, random));
+        root.put("Heightmaps", heightmaps);
+
+        ListTag<CompoundTag> blockEntities = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for(int e = 0; e < density.blockEntitiesCount(); e++) {
+            CompoundTag blockEntity = new CompoundTag();
+            blockEntity.putString("id", BLOCK_ENTITIES[random.nextInt(BLOCK_ENTITIES.length)]);
+            blockEntity.putInt("x", chunkX * 16 + random.nextInt(16));
+            blockEntity.putInt("y", MIN_SECTION_Y * 16 + random.nextInt(density.sectionsCount() * 16));
+            blockEntity.putInt("z", chunkZ * 16 + random.nextInt(16));
+            blockEntity.putBoolean("keepPacked", false);
+            blockEntities.add(blockEntity);
+        }
+        root.put("block_entities", blockEntities);
+
+        root.put("block_ticks", ticks(chunkX, chunkZ, density, random));
+        root.put("fluid_ticks", ticks(chunkX, chunkZ, density, random));
+
+        ListTag<ListTag<?>> postProcessing = ListTag.createUnchecked(ListTag.class).asListTagList();
+        for(int s = 0; s < density.sectionsCount(); s++) {
+            ListTag<ShortTag> positions = ListTag.createUnchecked(ShortTag.class).asShortTagList();
+            if(random.nextInt(4) == 0)
+                positions.add(new ShortTag((short) random.nextInt(4096)));
+            postProcessing.add(positions);
+        }
+        root.put("PostProcessing", postProcessing);
+
+        return root;
+    }
+
+    /**
+     * Create a synthetic entities chunk
+     * @param chunkX The X position of the chunk
+     * @param chunkZ The Z position of the chunk
+     * @param density The density of the chunk
+     * @return The root tag of the chunk
+     */
+    public static CompoundTag entitiesChunkTag(int chunkX, int chunkZ, Density density) {
+        Random random = random(chunkX, chunkZ, 0xe117);
+
+        CompoundTag root = new CompoundTag();
+        root.putInt("DataVersion", density.dataVersion());
+        root.putIntArray("Position", new int[]{chunkX, chunkZ});
+        root.put("Entities", entities(chunkX, chunkZ, density, random));
+
+        return root;
+    }
+
+    /**
+     * Create synthetic entities, with the Y-bearing tags the shift rewrites
+     * @param chunkX The X position of the chunk
+     * @param chunkZ The Z position of the chunk
+     * @param density The density of the chunk
+     * @param random The random of the chunk
+     * @return The list of entities
+     */
+    public static ListTag<CompoundTag> entities(int chunkX, int chunkZ, Density density, Random random) {
+        ListTag<CompoundTag> entities = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        int height = density.sectionsCount() * 16;
+
+        for(int e = 0; e < density.entitiesCount(); e++) {
+            String id = ENTITIES[random.nextInt(ENTITIES.length)];
+            double y = MIN_SECTION_Y * 16 + random.nextDouble() * height;
+
+            CompoundTag entity = new CompoundTag();
+            entity.putString("id", id);
+
+            ListTag<DoubleTag> pos = ListTag.createUnchecked(DoubleTag.class).asDoubleTagList();
+            pos.add(new DoubleTag(chunkX * 16 + random.nextDouble() * 16));
+            pos.add(new DoubleTag(y));
+            pos.add(new DoubleTag(chunkZ * 16 + random.nextDouble() * 16));
+            entity.put("Pos", pos);
+
+            ListTag<DoubleTag> motion = ListTag.createUnchecked(DoubleTag.class).asDoubleTagList();
+            motion.add(new DoubleTag(0));
+            motion.add(new DoubleTag(-0.08));
+            motion.add(new DoubleTag(0));
+            entity.put("Motion", motion);
+
+            entity.putIntArray("UUID", new int[]{random.nextInt(), random.nextInt(), random.nextInt(), random.nextInt()});
+            entity.putShort("Fire", (short) -1);
+            entity.putBoolean("OnGround", true);
+
+            switch (id) {
+                case "minecraft:item" -> {
+                    CompoundTag item = new CompoundTag();
+                    item.putString("id", "minecraft:cobblestone");
+                    item.putByte("Count", (byte) 64);
+                    entity.put("Item", item);
+                }
+                case "minecraft:bee" -> {
+                    CompoundTag hivePos = new CompoundTag();
+                    hivePos.putInt("X", chunkX * 16);
+                    hivePos.putInt("Y", (int) y);
+                    hivePos.putInt("Z", chunkZ * 16);
+                    entity.put("HivePos", hivePos);
+                }
+                case "minecraft:villager" -> {
+                    CompoundTag memory = new CompoundTag();
+                    CompoundTag value = new CompoundTag();
+                    value.putIntArray("pos", new int[]{chunkX * 16, (int) y, chunkZ * 16});
+                    value.putString("dimension", "minecraft:overworld");
+                    memory.put("value", value);
+
+                    CompoundTag memories = new CompoundTag();
+                    memories.put("minecraft:home", memory);
+                    CompoundTag brain = new CompoundTag();
+                    brain.put("memories", memories);
+                    entity.put("Brain", brain);
+                }
+                default -> {
+                }
+            }
+
+            entities.add(entity);
+        }
+
+        return entities;
+    }
+
+    private static CompoundTag sectionTag(int sectionY, int paletteSize, Random random) {
+        CompoundTag section = new CompoundTag();
+        section.putByte("Y", (byte) sectionY);
+
+        int blocksCount = Math.max(1, Math.min(paletteSize, BLOCKS.length * 16));
+        ListTag<CompoundTag> palette = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for(int p = 0; p < blocksCount; p++) {
+            CompoundTag blockState = new CompoundTag();
+            blockState.putString("Name", BLOCKS[p % BLOCKS.length]);
+            if(p >= BLOCKS.length) {
+                CompoundTag properties = new CompoundTag();
+                properties.putString("variant", String.valueOf(p / BLOCKS.length));
+                blockState.put("Properties", properties);
+            }
+            palette.add(blockState);
+        }
+
+        CompoundTag blockStates = new CompoundTag();
+        blockStates.put("palette", palette);
+        if(blocksCount > 1)
+            blockStates.putLongArray("data", packed(4096, Math.max(4, 32 - Integer.numberOfLeadingZeros(blocksCount - 1)), blocksCount, random));
+        section.put("block_states", blockStates);
+
+        ListTag<StringTag> biomesPalette = ListTag.createUnchecked(StringTag.class).asStringTagList();
+        biomesPalette.add(new StringTag("minecraft:plains"));
+        CompoundTag biomes = new CompoundTag();
+        biomes.put("palette", biomesPalette);
+        section.put("biomes", biomes);
+
+        return section;
+    }
+
+    private static ListTag<CompoundTag> ticks(int chunkX, int chunkZ, Density density, Random random) {
+        ListTag<CompoundTag> ticks = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for(int t = 0; t < density.ticksCount(); t++) {
+            CompoundTag tick = new CompoundTag();
+            tick.putString("i", "minecraft:water");
+            tick.putInt("x", chunkX * 16 + random.nextInt(16));
+            tick.putInt("y", MIN_SECTION_Y * 16 + random.nextInt(density.sectionsCount() * 16));
+            tick.putInt("z", chunkZ * 16 + random.nextInt(16));
+            tick.putInt("t", random.nextInt(20));
+            tick.putInt("p", 0);
+            ticks.add(tick);
+        }
+
+        return ticks;
+    }
+
+    /**
+     * Create a heightmap in the padded 9 bits layout, around the surface height
+     */
+    private static long[] heightmap(int surfaceHeight, Random random) {
+        int minHeight = MIN_SECTION_Y * 16;
+        int[] values = new int[256];
+        for(int i = 0; i < 256; i++) {
+            values[i] = Math.max(1, surfaceHeight - minHeight + 1 - random.nextInt(8));
+        }
+
+        return pack(values, 9);
+    }
+
+    private static long[] packed(int count, int bits, int bound, Random random) {
+        int[] values = new int[count];
+        for(int i = 0; i < count; i++) {
+            values[i] = random.nextInt(bound);
+        }
+
+        return pack(values, bits);
+    }
+
+    private static long[] pack(int[] values, int bits) {
+        int valuesPerLong = 64 / bits;
+        long[] packed = new long[(values.length + valuesPerLong - 1) / valuesPerLong];
+        for(int i = 0; i < values.length; i++) {
+            packed[i / valuesPerLong] |= (long) values[i] << ((i % valuesPerLong) * bits);
+        }
+
+        return packed;
+    }
+
+    /**
+     * Write a synthetic terrain region file
+     * @param regionFile The path to the region file, which is named after the region position, ex r.0.0.mca
+     * @param regionX The X position of the region
+     * @param regionZ The Z position of the region
+     * @param chunksCount The amount of chunks in the region, from 1 to 1024
+     * @param density The density of the chunks
+     * @throws IOException If the region file could not be written
+     */
+    public static void writeTerrainRegion(File regionFile, int regionX, int regionZ, int chunksCount, Density density) throws IOException {
+        regionFile.delete();
+        try(RandomAccessMcaFile<TerrainChunk> mcaFile = new RandomAccessMcaFile<>(TerrainChunk.class, regionFile, "rw")) {
+            mcaFile.touch();
+            for(int index = 0; index < chunksCount; index++) {
+                mcaFile.write(new TerrainChunk(terrainChunkTag(regionX * 32 + (index & 31), regionZ * 32 + (index >> 5), density)));
+            }
+            mcaFile.flush();
+        }
+    }
+
+    /**
+     * Write a synthetic entities region file
+     * @param regionFile The path to the region file, which is named after the region position, ex r.0.0.mca
+     * @param regionX The X position of the region
+     * @param regionZ The Z position of the region
+     * @param chunksCount The amount of chunks in the region, from 1 to 1024
+     * @param density The density of the chunks
+     * @throws IOException If the region file could not be written
+     */
+    public static void writeEntitiesRegion(File regionFile, int regionX, int regionZ, int chunksCount, Density density) throws IOException {
+        regionFile.delete();
+        try(RandomAccessMcaFile<EntitiesChunk> mcaFile = new RandomAccessMcaFile<>(EntitiesChunk.class, regionFile, "rw")) {
+            mcaFile.touch();
+            for(int index = 0; index < chunksCount; index++) {
+                mcaFile.write(new EntitiesChunk(entitiesChunkTag(regionX * 32 + (index & 31), regionZ * 32 + (index >> 5), density)));
+            }
+            mcaFile.flush();
+        }
+    }
+}
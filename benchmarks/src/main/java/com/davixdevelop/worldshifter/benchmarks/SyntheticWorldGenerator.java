@@ -0,0 +1,90 @@
+package com.davixdevelop.worldshifter.benchmarks;
+
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Generates a synthetic world with the given amount of region files, so that the scaling of WorldShifter can be measured
+ * without sharing real worlds. The regions are laid out in a square around the origin
+ */
+public class SyntheticWorldGenerator {
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 2) {
+            printHelp();
+            return;
+        }
+
+        File worldFolder = Paths.get(args[0]).toFile();
+        int regionsCount = Integer.parseInt(args[1]);
+
+        int chunksCount = 1024;
+        int sectionsCount = 24;
+        int paletteSize = 16;
+        int entitiesCount = 16;
+        int blockEntitiesCount = 8;
+        int ticksCount = 32;
+        int[] dataVersions = {SyntheticChunks.DEFAULT_DATA_VERSION};
+
+        List<String> argsList = new ArrayList<>(Arrays.asList(args).subList(2, args.length));
+        for(int a = 0; a + 1 < argsList.size(); a += 2) {
+            String value = argsList.get(a + 1);
+            switch (argsList.get(a)) {
+                case "--chunks" -> chunksCount = Math.min(1024, Integer.parseInt(value));
+                case "--sections" -> sectionsCount = Integer.parseInt(value);
+                case "--palette" -> paletteSize = Integer.parseInt(value);
+                case "--entities" -> entitiesCount = Integer.parseInt(value);
+                case "--blockEntities" -> blockEntitiesCount = Integer.parseInt(value);
+                case "--ticks" -> ticksCount = Integer.parseInt(value);
+                case "--dataVersions" -> dataVersions = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                default -> {
+                    LogUtils.log("Unknown option: " + argsList.get(a));
+                    printHelp();
+                    return;
+                }
+            }
+        }
+
+        File regionFolder = new File(worldFolder, "region");
+        File entitiesFolder = new File(worldFolder, "entities");
+        regionFolder.mkdirs();
+        entitiesFolder.mkdirs();
+
+        int side = (int) Math.ceil(Math.sqrt(regionsCount));
+        for(int r = 0; r < regionsCount; r++) {
+            int regionX = (r % side) - side / 2;
+            int regionZ = (r / side) - side / 2;
+            //Mix the DataVersions per region, as a world upgraded over many versions has
+            int dataVersion = dataVersions[r % dataVersions.length];
+            SyntheticChunks.Density density = new SyntheticChunks.Density(sectionsCount, paletteSize, entitiesCount, blockEntitiesCount, ticksCount, dataVersion);
+
+            String regionName = "r." + regionX + "." + regionZ + ".mca";
+            SyntheticChunks.writeTerrainRegion(new File(regionFolder, regionName), regionX, regionZ, chunksCount, density);
+            if(entitiesCount > 0)
+                SyntheticChunks.writeEntitiesRegion(new File(entitiesFolder, regionName), regionX, regionZ, chunksCount, density);
+
+            System.out.print("\rGenerated " + (r + 1) + "/" + regionsCount + " regions");
+        }
+
+        LogUtils.log();
+        LogUtils.log("Done");
+    }
+
+    private static void printHelp() {
+        LogUtils.log("usage: SyntheticWorldGenerator <worldPath> <regions> [--chunks <n>] [--sections <n>] [--palette <n>] [--entities <n>] [--blockEntities <n>] [--ticks <n>] [--dataVersions <v1>,<v2>,...]");
+        LogUtils.log("\t<regions>\tThe amount of region files to generate");
+        LogUtils.log("\t[--chunks <n>]\tThe amount of chunks per region. Default 1024");
+        LogUtils.log("\t[--sections <n>]\tThe amount of sections per chunk. Default 24");
+        LogUtils.log("\t[--palette <n>]\tThe amount of block states in the palette of a section. Default 16");
+        LogUtils.log("\t[--entities <n>]\tThe amount of entities per chunk. Default 16");
+        LogUtils.log("\t[--blockEntities <n>]\tThe amount of block entities per chunk. Default 8");
+        LogUtils.log("\t[--ticks <n>]\tThe amount of block and fluid ticks per chunk. Default 32");
+        LogUtils.log("\t[--dataVersions <v1>,<v2>,...]\tThe 1.18+ DataVersions, the regions are spread across. Default " + SyntheticChunks.DEFAULT_DATA_VERSION);
+    }
+}
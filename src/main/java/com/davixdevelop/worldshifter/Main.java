@@ -1,9 +1,23 @@
 package com.davixdevelop.worldshifter;
 
+import com.davixdevelop.worldshifter.io.ChunkCodec;
+import com.davixdevelop.worldshifter.io.ChunkCompression;
 import com.davixdevelop.worldshifter.model.WorldHeight;
-import com.davixdevelop.worldshifter.tasks.MoveEntitiesTask;
+import com.davixdevelop.worldshifter.tasks.AdaptiveWorkerController;
+import com.davixdevelop.worldshifter.tasks.CheckpointJournal;
+import com.davixdevelop.worldshifter.tasks.DryRunPlanner;
+import com.davixdevelop.worldshifter.tasks.MemoryBudget;
 import com.davixdevelop.worldshifter.tasks.MoveRegionsTask;
+import com.davixdevelop.worldshifter.tasks.ProgressReporter;
+import com.davixdevelop.worldshifter.tasks.RegionScheduler;
+import com.davixdevelop.worldshifter.tasks.RegionWatcher;
+import com.davixdevelop.worldshifter.tasks.Shard;
+import com.davixdevelop.worldshifter.tasks.ShardMerger;
+import com.davixdevelop.worldshifter.tasks.ShiftPipeline;
+import com.davixdevelop.worldshifter.utils.EntityUtils;
+import com.davixdevelop.worldshifter.utils.EntityYRewriter;
 import com.davixdevelop.worldshifter.utils.LogUtils;
+import com.davixdevelop.worldshifter.utils.RunStats;
 import io.github.ensgijs.nbt.mca.*;
 import io.github.ensgijs.nbt.mca.util.VersionAware;
 import io.github.ensgijs.nbt.query.NbtPath;
@@ -41,10 +55,40 @@ public class Main {
 
 
         int defaultThreadCount = 2;
+        boolean isAdaptiveThreadCount = false;
         boolean isMultiWorld = false;
+        boolean isChunkParallel = false;
+        boolean isPipeline = false;
+        boolean isSectionPassthrough = false;
+        int[] pipelineStages = null;
+        Long memoryBudgetMB = null;
+        boolean isDryRun = false;
+        Double samplePercent = null;
+        String entityRulesPath = null;
+        boolean isResume = false;
+        boolean isIncremental = false;
+        boolean isWatch = false;
+        Shard shard = null;
+        Integer mergeShardCount = null;
+        Integer maxRuntimeMinutes = null;
 
         String threadCountParam = "--threadCount";
         String multiWorldParam = "--multiWorld";
+        String chunkParallelParam = "--chunkParallel";
+        String pipelineParam = "--pipeline";
+        String pipelineStagesParam = "--pipelineStages";
+        String sectionPassthroughParam = "--sectionPassthrough";
+        String memoryBudgetParam = "--memoryBudget";
+        String compressionParam = "--compression";
+        String entityRulesParam = "--entityRules";
+        String dryRunParam = "--dryRun";
+        String sampleParam = "--sample";
+        String resumeParam = "--resume";
+        String incrementalParam = "--incremental";
+        String watchParam = "--watch";
+        String shardParam = "--shard";
+        String mergeShardsParam = "--mergeShards";
+        String maxRuntimeParam = "--maxRuntime";
 
 
         String inputWorld = argsList.getFirst();
@@ -73,7 +117,10 @@ public class Main {
             String errorMessage = null;
             if(threadCountIndex + 1 < argsList.size()) {
                 try {
-                    defaultThreadCount = Integer.parseInt(argsList.get(threadCountIndex + 1));
+                    if(argsList.get(threadCountIndex + 1).equals("auto"))
+                        isAdaptiveThreadCount = true;
+                    else
+                        defaultThreadCount = Integer.parseInt(argsList.get(threadCountIndex + 1));
                 } catch (NumberFormatException ex) {
                    errorMessage = "Incorrect thread count format, could not parse: " + argsList.get(threadCountIndex + 1);
                 }
@@ -81,7 +128,7 @@ public class Main {
                 errorMessage = "No thread count specified";
 
             if(errorMessage != null) {
-                LogUtils.log("Incorrect usage of [--threadCount <count>]: ");
+                LogUtils.log("Incorrect usage of [--threadCount <count|auto>]: ");
                 LogUtils.logHelp("\t" + errorMessage);
                 return;
             }
@@ -91,12 +138,275 @@ public class Main {
             argsList.remove(threadCountIndex);
         }
 
+        //Check if a memory budget is specified
+        if(argsList.contains(memoryBudgetParam)) {
+            int memoryBudgetIndex = argsList.indexOf(memoryBudgetParam);
+            String errorMessage = null;
+            if(memoryBudgetIndex + 1 < argsList.size()) {
+                try {
+                    memoryBudgetMB = Long.parseLong(argsList.get(memoryBudgetIndex + 1));
+                    if(memoryBudgetMB < 1)
+                        errorMessage = "Memory budget must be bigger then 0";
+                } catch (NumberFormatException ex) {
+                    errorMessage = "Incorrect memory budget format, could not parse: " + argsList.get(memoryBudgetIndex + 1);
+                }
+            }else
+                errorMessage = "No memory budget specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--memoryBudget <MB>]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(memoryBudgetIndex);
+            argsList.remove(memoryBudgetIndex);
+        }
+
+        //Check if a custom output compression is specified
+        if(argsList.contains(compressionParam)) {
+            int compressionIndex = argsList.indexOf(compressionParam);
+            String errorMessage = null;
+            if(compressionIndex + 1 < argsList.size()) {
+                try {
+                    ChunkCodec.OUTPUT_COMPRESSION.set(ChunkCompression.parse(argsList.get(compressionIndex + 1)));
+                } catch (IllegalArgumentException ex) {
+                    errorMessage = ex.getMessage();
+                }
+            }else
+                errorMessage = "No compression specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--compression <zlib|gzip|lz4|none>[:<level>]]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(compressionIndex);
+            argsList.remove(compressionIndex);
+        }
+
+        //Check if custom rules of the Y-bearing entity tags are specified
+        if(argsList.contains(entityRulesParam)) {
+            int entityRulesIndex = argsList.indexOf(entityRulesParam);
+            String errorMessage = null;
+            if(entityRulesIndex + 1 < argsList.size()) {
+                try {
+                    entityRulesPath = argsList.get(entityRulesIndex + 1);
+                    EntityUtils.Y_REWRITERS.set(EntityYRewriter.load(Paths.get(entityRulesPath).toFile()));
+                } catch (Exception ex) {
+                    errorMessage = "Could not load the entity rules (" + argsList.get(entityRulesIndex + 1) + "): " + ex.getMessage();
+                }
+            }else
+                errorMessage = "No entity rules file specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--entityRules <file>]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(entityRulesIndex);
+            argsList.remove(entityRulesIndex);
+        }
+
+        //Check if the run should stop between regions after the max runtime
+        if(argsList.contains(maxRuntimeParam)) {
+            int maxRuntimeIndex = argsList.indexOf(maxRuntimeParam);
+            String errorMessage = null;
+            if(maxRuntimeIndex + 1 < argsList.size()) {
+                try {
+                    maxRuntimeMinutes = Integer.parseInt(argsList.get(maxRuntimeIndex + 1));
+                    if(maxRuntimeMinutes < 1)
+                        errorMessage = "Max runtime must be bigger then 0";
+                } catch (NumberFormatException ex) {
+                    errorMessage = "Incorrect max runtime format, could not parse: " + argsList.get(maxRuntimeIndex + 1);
+                }
+            }else
+                errorMessage = "No max runtime specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--maxRuntime <minutes>]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(maxRuntimeIndex);
+            argsList.remove(maxRuntimeIndex);
+        }
+
+        //Check if the run should skip the regions completed by a previous run
+        if(argsList.contains(resumeParam)) {
+            argsList.remove(resumeParam);
+            isResume = true;
+        }
+
+        //Check if the run should only shift the regions, that changed since the previous run
+        if(argsList.contains(incrementalParam)) {
+            argsList.remove(incrementalParam);
+            isIncremental = true;
+        }
+
+        //Check if the source world should be watched, and the changed regions shifted as they change
+        if(argsList.contains(watchParam)) {
+            argsList.remove(watchParam);
+            isWatch = true;
+            isIncremental = true;
+        }
+
+        //Check if only a slice of the region files should be shifted by this process
+        if(argsList.contains(shardParam)) {
+            int shardIndex = argsList.indexOf(shardParam);
+            String errorMessage = null;
+            if(shardIndex + 1 < argsList.size()) {
+                try {
+                    shard = Shard.parse(argsList.get(shardIndex + 1));
+                } catch (IllegalArgumentException ex) {
+                    errorMessage = ex.getMessage();
+                }
+            }else
+                errorMessage = "No shard specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--shard <index>/<count>]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(shardIndex);
+            argsList.remove(shardIndex);
+        }
+
+        //Check if the output of the shards should be verified and merged
+        if(argsList.contains(mergeShardsParam)) {
+            int mergeShardsIndex = argsList.indexOf(mergeShardsParam);
+            String errorMessage = null;
+            if(mergeShardsIndex + 1 < argsList.size()) {
+                try {
+                    mergeShardCount = Integer.parseInt(argsList.get(mergeShardsIndex + 1));
+                    if(mergeShardCount < 1)
+                        errorMessage = "Shard count must be bigger then 0";
+                } catch (NumberFormatException ex) {
+                    errorMessage = "Incorrect shard count format, could not parse: " + argsList.get(mergeShardsIndex + 1);
+                }
+            }else
+                errorMessage = "No shard count specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--mergeShards <count>]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(mergeShardsIndex);
+            argsList.remove(mergeShardsIndex);
+        }
+
+        //Check if only the plan of the shift should be shown
+        if(argsList.contains(dryRunParam)) {
+            argsList.remove(dryRunParam);
+            isDryRun = true;
+        }
+
+        //Check if the dry run should only scan a percentage of the chunks
+        if(argsList.contains(sampleParam)) {
+            int sampleIndex = argsList.indexOf(sampleParam);
+            String errorMessage = null;
+            if(!isDryRun)
+                errorMessage = "Sampling is only supported with --dryRun";
+            else if(sampleIndex + 1 < argsList.size()) {
+                try {
+                    samplePercent = Double.parseDouble(argsList.get(sampleIndex + 1));
+                    if(samplePercent <= 0 || samplePercent > 100)
+                        errorMessage = "Sample percent must be bigger then 0 and at most 100";
+                } catch (NumberFormatException ex) {
+                    errorMessage = "Incorrect sample percent format, could not parse: " + argsList.get(sampleIndex + 1);
+                }
+            }else
+                errorMessage = "No sample percent specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--sample <percent>]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(sampleIndex);
+            argsList.remove(sampleIndex);
+        }
+
         //Check if multi world option should be enabled
         if(argsList.contains(multiWorldParam)) {
             argsList.remove(multiWorldParam);
             isMultiWorld = true;
         }
 
+        //Check if the chunks of a region should be processed in parallel
+        if(argsList.contains(chunkParallelParam)) {
+            argsList.remove(chunkParallelParam);
+            isChunkParallel = true;
+        }
+
+        //Check if the regions should be shifted in the staged pipeline
+        if(argsList.contains(pipelineParam)) {
+            argsList.remove(pipelineParam);
+            isPipeline = true;
+        }
+
+        //Check if the sections should be copied as opaque bytes. The raw chunk bytes are only available in the pipeline
+        if(argsList.contains(sectionPassthroughParam)) {
+            argsList.remove(sectionPassthroughParam);
+            isSectionPassthrough = true;
+            isPipeline = true;
+        }
+
+        //Check if custom pipeline stage thread counts are specified
+        if(argsList.contains(pipelineStagesParam)) {
+            int pipelineStagesIndex = argsList.indexOf(pipelineStagesParam);
+            String errorMessage = null;
+            if(pipelineStagesIndex + 1 < argsList.size()) {
+                try {
+                    pipelineStages = Arrays.stream(argsList.get(pipelineStagesIndex + 1).split(",")).mapToInt(Integer::parseInt).toArray();
+                    if(pipelineStages.length != 4 || Arrays.stream(pipelineStages).anyMatch(c -> c < 1))
+                        errorMessage = "Expected 4 thread counts bigger then 0, got: " + argsList.get(pipelineStagesIndex + 1);
+                } catch (NumberFormatException ex) {
+                    errorMessage = "Incorrect stage thread counts format, could not parse: " + argsList.get(pipelineStagesIndex + 1);
+                }
+            }else
+                errorMessage = "No stage thread counts specified";
+
+            if(errorMessage != null) {
+                LogUtils.log("Incorrect usage of [--pipelineStages <parse>,<transform>,<compress>,<write>]: ");
+                LogUtils.logHelp("\t" + errorMessage);
+                return;
+            }
+
+            //Remove the param from the args list
+            argsList.remove(pipelineStagesIndex);
+            argsList.remove(pipelineStagesIndex);
+            isPipeline = true;
+        }
+
+        //The merge only needs the output of the shards, so it doesn't take an offset
+        if(mergeShardCount != null) {
+            new ShardMerger(new File(inputWorld), Paths.get(inputWorld, "world-shifted").toFile(), mergeShardCount).merge();
+            return;
+        }
+
+        //The watcher would shift the changed regions of all the shards
+        if(shard != null && isWatch) {
+            LogUtils.log("Incorrect usage of [--shard <index>/<count>]: ");
+            LogUtils.logHelp("\tSharding is not supported with --watch");
+            return;
+        }
+
         if(argsList.isEmpty()) {
             LogUtils.logHelp("No offset specified");
             return;
@@ -148,7 +458,9 @@ public class Main {
             return;
         }
 
-        int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), defaultThreadCount);
+        int availableProcessors = Runtime.getRuntime().availableProcessors();
+        //In the auto mode, the controller starts from half the processors and adjusts the amount of region workers from there
+        int threadCount = isAdaptiveThreadCount ? Math.max(1, availableProcessors / 2) : Math.min(availableProcessors, defaultThreadCount);
 
         File[] regionFiles = regionFolder.listFiles(path -> path.getName().endsWith("mca"));
 
@@ -158,55 +470,143 @@ public class Main {
         }
 
         File outputFolder = Paths.get(inputWorld, "world-shifted").toFile();
-        outputFolder.mkdir();
-        LogUtils.log();
 
-        AtomicInteger counter = new AtomicInteger(0);
-        AtomicInteger removedEntities = new AtomicInteger(0);
-        int totalRegionsCount = regionFiles.length;
+        //Record the completed regions, so that a stopped run can be resumed, and a later run only shifts the changed regions.
+        //The journal is only valid for a run with the same parameters, as they change the output. It hashes all the output,
+        //so it's only kept by the runs that are resumed, repeated or merged later
+        String shiftParams = "offset=" + offsetY + " min=" + targetWorldMin + " max=" + targetWorldMax + " multiWorld=" + isMultiWorld +
+                " compression=" + ChunkCodec.OUTPUT_COMPRESSION.get() + " entityRules=" + entityRulesPath;
+        boolean isJournaled = isResume || isIncremental || shard != null || maxRuntimeMinutes != null;
+        CheckpointJournal journal = isJournaled ? new CheckpointJournal(outputFolder, CheckpointJournal.getJournalFileName(shard), shiftParams) : null;
+        boolean isJournalLoaded = false;
+        if(isResume || isIncremental) {
+            try {
+                journal.load();
+                isJournalLoaded = true;
+            } catch (IOException ex) {
+                if(isResume) {
+                    LogUtils.log("Could not resume the previous run:");
+                    LogUtils.logHelp("\t" + ex.getMessage());
+                    return;
+                }
+
+                //Without a usable journal, the incremental run shifts all the regions
+                LogUtils.log("Shifting all regions, " + ex.getMessage());
+            }
+        }
 
         String entitiesFolderPath = Paths.get(inputWorld, "entities").toString();
         File entitiesFolder = new File(entitiesFolderPath);
-        File[] entitiesFiles = null;
+        File[] entitiesFiles = entitiesFolder.isDirectory() ? entitiesFolder.listFiles(path -> path.getName().endsWith("mca")) : null;
 
-        //First move the entities in the entities folder, if there are any
-        if(entitiesFolder.isDirectory()) {
-            entitiesFiles = entitiesFolder.listFiles(path -> path.getName().endsWith("mca"));
-            if(entitiesFiles != null) {
-                totalRegionsCount += entitiesFiles.length;
+        //Only keep the region files of the shard, with the entities region files in the same shard as the terrain region files
+        if(shard != null) {
+            regionFiles = shard.filter(regionFiles);
+            if(entitiesFiles != null)
+                entitiesFiles = shard.filter(entitiesFiles);
 
-                final ConcurrentLinkedQueue<File> entitiesRegionQueue = new ConcurrentLinkedQueue<>(Arrays.stream(entitiesFiles).toList());
+            LogUtils.log("Shard " + shard.index() + "/" + shard.count() + ": " + (regionFiles.length + (entitiesFiles != null ? entitiesFiles.length : 0)) + " regions");
+        }
 
-                ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
-                ArrayList<MoveEntitiesTask> moveTasks = new ArrayList<>();
+        //Skip the regions, that were completed by the previous run and whose output is intact. The resume verifies the hash
+        //of the output, while the incremental run only checks its size, so that its runtime scales with the changed regions.
+        //The dry run doesn't write anything, so it keeps the output of the deleted regions
+        if(isJournalLoaded) {
+            if(isIncremental && !isDryRun) {
+                int removedCount = journal.removeDeleted(new File(inputWorld));
+                if(removedCount > 0)
+                    LogUtils.log("Removed the output of " + removedCount + " deleted regions");
+            }
 
-                for(int t = 0; t < threadCount; t++) {
-                    moveTasks.add(new MoveEntitiesTask(targetWorldMin, targetWorldMax, offsetY, isMultiWorld, outputFolder, totalRegionsCount, counter, entitiesRegionQueue));
-                }
+            int regionCount = regionFiles.length + (entitiesFiles != null ? entitiesFiles.length : 0);
+            regionFiles = journal.filterCompleted(regionFiles, "region", isResume);
+            if(entitiesFiles != null)
+                entitiesFiles = journal.filterCompleted(entitiesFiles, "entities", isResume);
 
-                List<Future<Integer>> completedTasks = executorService.invokeAll(moveTasks);
-                executorService.shutdown();
+            int pendingCount = regionFiles.length + (entitiesFiles != null ? entitiesFiles.length : 0);
+            LogUtils.log("Skipped " + (regionCount - pendingCount) + " unchanged completed regions, " + pendingCount + " regions left");
+        }
 
-                for(Future<Integer> future : completedTasks) {
-                    if(future.state() == Future.State.SUCCESS)
-                        removedEntities.addAndGet(future.resultNow());
-                }
+        //Schedule the terrain regions and the entities in the entities folder, if there are any,
+        //together with the most expensive regions first
+        RegionScheduler regionScheduler = new RegionScheduler();
+        regionScheduler.schedule(regionFiles, "region");
 
-            }
+        if(entitiesFiles != null)
+            regionScheduler.schedule(entitiesFiles, "entities");
+
+        if(isDryRun) {
+            //Only read the headers and the Y of the chunks, and show the plan without writing anything
+            new DryRunPlanner(targetWorldMin, targetWorldMax, offsetY, sectionOffsetY, isMultiWorld, outputFolder, threadCount, samplePercent != null ? samplePercent : 100).plan(regionScheduler.getScheduledRegions());
+            return;
         }
 
-        //Then move the terrain regions
-        final ConcurrentLinkedQueue<File> regionQueue = new ConcurrentLinkedQueue<>(Arrays.stream(regionFiles).toList());
+        outputFolder.mkdir();
+        LogUtils.log();
+
+        //Delete the region files, that were being written when the previous run was stopped. The shards share the
+        //output folder, so each only deletes the ones of its own regions
+        int deletedTempFiles = CheckpointJournal.deleteTempFiles(outputFolder, shard);
+        if(deletedTempFiles > 0)
+            LogUtils.log("Deleted " + deletedTempFiles + " unfinished region files of the previous run");
+
+        //Write the errors to a log file on a separate thread, so that the workers don't wait on the console
+        //The shards write their own reports, so that they can share the output folder
+        String shardSuffix = shard != null ? shard.getFileSuffix() : "";
+        File errorLogFile = Paths.get(outputFolder.getPath(), "errors" + shardSuffix + ".log").toFile();
+        LogUtils.startErrorLog(errorLogFile);
+
+        AtomicInteger removedEntities = new AtomicInteger(0);
+
+        ProgressReporter progressReporter = new ProgressReporter(regionScheduler.getScheduledRegions());
+
+        //The thread count is used by the read stage, while the other stages are sized independently
+        ShiftPipeline pipeline = null;
+        if(isPipeline) {
+            if(pipelineStages == null)
+                pipelineStages = new int[]{threadCount, threadCount, threadCount, 1};
+
+            pipeline = new ShiftPipeline(pipelineStages[0], pipelineStages[1], pipelineStages[2], pipelineStages[3], isSectionPassthrough);
+        }
 
-        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
-        ArrayList<MoveRegionsTask> tasks = new ArrayList<>();
+        //Work-stealing pool, shared by all region tasks, to process the chunks of a region in parallel
+        ForkJoinPool chunkPool = isChunkParallel ? new ForkJoinPool(threadCount) : null;
+
+        //Global memory budget, shared by all region tasks, which also enables the streaming flush of the chunks
+        MemoryBudget memoryBudget = memoryBudgetMB != null ? new MemoryBudget(memoryBudgetMB * 1024 * 1024) : null;
+        if(memoryBudget != null && pipeline != null)
+            LogUtils.log("The memory budget is ignored with the pipeline, as the chunks it holds are bounded by its queues");
+
+        long startTime = System.nanoTime();
+        Long deadline = maxRuntimeMinutes != null ? startTime + maxRuntimeMinutes * 60_000_000_000L : null;
+        progressReporter.start();
+        List<Future<Integer>> completed;
+        if(isAdaptiveThreadCount) {
+            //The workers are mostly waiting on the disk when it's saturated, so allow more workers then processors
+            AdaptiveWorkerController workerController = new AdaptiveWorkerController(regionScheduler, 1, availableProcessors * 2);
+            final ShiftPipeline finalPipeline = pipeline;
+            final Integer finalTargetWorldMin = targetWorldMin;
+            final Integer finalTargetWorldMax = targetWorldMax;
+            final int finalOffsetY = offsetY;
+            final boolean finalIsMultiWorld = isMultiWorld;
+            workerController.start(threadCount, controller -> new MoveRegionsTask(finalTargetWorldMin, finalTargetWorldMax, finalOffsetY, sectionOffsetY, finalIsMultiWorld, outputFolder, progressReporter, removedEntities, regionScheduler, chunkPool, finalPipeline, memoryBudget, controller, journal, deadline));
+
+            completed = workerController.awaitCompletion();
+        } else {
+            ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+            ArrayList<MoveRegionsTask> tasks = new ArrayList<>();
+
+            for (int t = 0; t < threadCount; t++) {
+                tasks.add(new MoveRegionsTask(targetWorldMin, targetWorldMax, offsetY, sectionOffsetY, isMultiWorld, outputFolder, progressReporter, removedEntities, regionScheduler, chunkPool, pipeline, memoryBudget, null, journal, deadline));
+            }
 
-        for (int t = 0; t < threadCount; t++) {
-            tasks.add(new MoveRegionsTask(targetWorldMin, targetWorldMax, offsetY, sectionOffsetY, isMultiWorld, outputFolder, totalRegionsCount, counter, removedEntities, regionQueue));
+            completed = executorService.invokeAll(tasks);
+            executorService.shutdown();
         }
 
-        List<Future<Integer>> completed = executorService.invokeAll(tasks);
-        executorService.shutdown();
+        progressReporter.stop();
+        if(journal != null)
+            journal.save();
 
         int skippedSections = 0;
         for(Future<Integer> future : completed) {
@@ -214,10 +614,15 @@ public class Main {
                 skippedSections += future.resultNow();
         }
 
-        File tempFolder = Paths.get(outputFolder.getPath(), "temp").toFile();
-        if(tempFolder.exists()) {
-            deleteFolder(tempFolder);
-        }
+        //Report the predicted vs actual cost of each region
+        regionScheduler.writeReport(Paths.get(outputFolder.getPath(), "schedule" + shardSuffix + ".csv").toFile());
+
+        //Report the time spent in each stage and the throughput of the run
+        RunStats.writeReport(Paths.get(outputFolder.getPath(), "stats" + shardSuffix + ".json").toFile(), System.nanoTime() - startTime, regionScheduler.getScheduledRegions());
+
+        //Record the counters of the shard, for the merge
+        if(shard != null)
+            ShardMerger.writeSummary(outputFolder, shard, shiftParams, regionScheduler.isEmpty(), skippedSections, removedEntities.get());
 
         LogUtils.log();
 
@@ -227,35 +632,90 @@ public class Main {
         if (removedEntities.get() > 0)
             LogUtils.log("Skipped " + removedEntities.get() + " out of bounds entities/tile entities");
 
+        if(!regionScheduler.isEmpty())
+            LogUtils.log("Stopped after the max runtime of " + maxRuntimeMinutes + " minutes, with " + regionScheduler.remaining() + " regions left. Run again with --resume to continue");
+
+        //Keep the workers warm and shift the region files as they change, until the process is stopped
+        if(isWatch) {
+            final ShiftPipeline watchPipeline = pipeline;
+            final Integer watchTargetWorldMin = targetWorldMin;
+            final Integer watchTargetWorldMax = targetWorldMax;
+            final int watchOffsetY = offsetY;
+            final boolean watchIsMultiWorld = isMultiWorld;
+            ExecutorService watchExecutor = Executors.newFixedThreadPool(threadCount);
+
+            RegionWatcher watcher = new RegionWatcher(new File(inputWorld), journal, batchScheduler -> {
+                ProgressReporter batchReporter = new ProgressReporter(batchScheduler.getScheduledRegions());
+                List<MoveRegionsTask> batchTasks = new ArrayList<>();
+                for (int t = 0; t < threadCount; t++) {
+                    batchTasks.add(new MoveRegionsTask(watchTargetWorldMin, watchTargetWorldMax, watchOffsetY, sectionOffsetY, watchIsMultiWorld, outputFolder, batchReporter, removedEntities, batchScheduler, chunkPool, watchPipeline, memoryBudget, null, journal, null));
+                }
+
+                batchReporter.start();
+                try {
+                    watchExecutor.invokeAll(batchTasks);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                batchReporter.stop();
+            });
+
+            //Record the regions shifted so far, and write the queued errors, when the process is stopped
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                journal.save();
+                LogUtils.stopErrorLog();
+            }));
+            try {
+                watcher.watch();
+            } catch (IOException ex) {
+                LogUtils.logError("Error while watching the source world", ex);
+            }
+
+            watchExecutor.shutdown();
+        }
+
+        if(chunkPool != null)
+            chunkPool.shutdown();
+
+        if(pipeline != null)
+            pipeline.close();
+
+        long loggedErrors = LogUtils.stopErrorLog();
+        if (loggedErrors > 0)
+            LogUtils.log(loggedErrors + " errors were logged to " + errorLogFile.getPath());
+        else
+            errorLogFile.delete();
+
         LogUtils.log("Done");
     }
 
     private static void printHelp() {
         List<String> lines = new ArrayList<>();
-        lines.add("usage: WorldShifter-1.3.7 <worldPath> [minY] [maxY] [--multiWorld] [--threadCount <count>]");
+        lines.add("usage: WorldShifter-1.3.7 <worldPath> [minY] [maxY] [--multiWorld] [--threadCount <count|auto>] [--chunkParallel] [--pipeline] [--pipelineStages <parse>,<transform>,<compress>,<write>] [--sectionPassthrough] [--memoryBudget <MB>] [--compression <zlib|gzip|lz4|none>[:<level>]] [--entityRules <file>] [--dryRun] [--sample <percent>] [--resume] [--incremental] [--watch] [--maxRuntime <minutes>] [--shard <index>/<count>] [--mergeShards <count>]");
         lines.add("Shift/slice a vanilla Minecraft Java (v1.13+) world on the Y axis");
         lines.add("\t<worldPath>\tPath to the world (Required)");
         lines.add("\t[minY] [maxY]\tMinimum (inclusive) anx maximum (exclusive) height  of the output world. Must be in values of 16 (Optional)");
         lines.add("\t[--multiWorld]\tCreate multiple output worlds from the out of bound chunk sections (Optional)");
-        lines.add("\t[--threadCount <count>]\tThe amount of threads to use. Default 2 (Optional)");
+        lines.add("\t[--threadCount <count|auto>]\tThe amount of threads to use. Default 2. With auto, the amount is adjusted while running, toward the highest throughput (Optional)");
+        lines.add("\t[--chunkParallel]\tProcess the chunks of each region in parallel on a work-stealing pool (Optional)");
+        lines.add("\t[--pipeline]\tShift the regions in a staged read/parse/transform/compress/write pipeline (Optional)");
+        lines.add("\t[--pipelineStages <parse>,<transform>,<compress>,<write>]\tThe amount of threads of each pipeline stage. The read stage uses the thread count (Optional)");
+        lines.add("\t[--sectionPassthrough]\tCopy the terrain sections as opaque bytes, with only their Y rewritten, instead of parsing and serializing them. Implies --pipeline (Optional)");
+        lines.add("\t[--memoryBudget <MB>]\tWrite the chunks as soon as they are shifted and only start new regions, when they fit into the memory budget. Ignored with --pipeline (Optional)");
+        lines.add("\t[--compression <zlib|gzip|lz4|none>[:<level>]]\tThe compression of the output chunks, with the level from 1 to 9 for zlib and gzip. Default zlib. Only Minecraft 1.20.5+ can read lz4 chunks (Optional)");
+        lines.add("\t[--entityRules <file>]\tLoad the rules of the entity tags, that hold a Y coordinate, from a file. See entity_y_tags.txt for the format (Optional)");
+        lines.add("\t[--dryRun]\tOnly read the region headers and the Y of the chunks, and show the clipped sections/entities, world slices, estimated output size and runtime, without writing anything (Optional)");
+        lines.add("\t[--sample <percent>]\tWith --dryRun, only scan the percentage of the chunks of each region, and extrapolate the plan from them (Optional)");
+        lines.add("\t[--resume]\tSkip the regions completed by the previous run with the same parameters, and shift the rest (Optional)");
+        lines.add("\t[--incremental]\tOnly shift the regions, that changed since the previous run with the same parameters, and keep the output of the rest (Optional)");
+        lines.add("\t[--watch]\tAfter the incremental run, keep running and shift the region files as they change. Implies --incremental (Optional)");
+        lines.add("\t[--maxRuntime <minutes>]\tStop between regions once the runtime is reached. Continue the run with --resume (Optional)");
+        lines.add("\t[--shard <index>/<count>]\tOnly shift the slice of the region files, that is assigned to the shard by their coordinates, ex. 0/4 to 3/4 in four processes (Optional)");
+        lines.add("\t[--mergeShards <count>]\tOnce all the shards are done and their output is in the same output folder, verify it and combine their journals and counters. Doesn't take an offset (Optional)");
         LogUtils.log();
         for(String l : lines) {
             LogUtils.log(l);
         }
         LogUtils.log();
     }
-
-    private static void deleteFolder(File folder) {
-        String[] files = folder.list();
-        for(String filePath : files) {
-            File file = Paths.get(folder.getPath(), filePath).toFile();
-            if(file.isDirectory())
-                deleteFolder(file);
-
-            file.delete();
-        }
-
-        folder.delete();
-    }
-
-}
\ No newline at end of file
+}
@@ -0,0 +1,39 @@
+package com.davixdevelop.worldshifter.events;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of the shift of a single source chunk. The event is created, begun and committed in the
+ * same method, so when recording is off the JIT removes the allocation and only the shouldCommit check remains
+ */
+@Name("com.davixdevelop.worldshifter.ChunkShift")
+@Label("Chunk Shift")
+@Category({"WorldShifter", "Chunk"})
+@Description("Shift and slice of a single source chunk")
+@StackTrace(false)
+public class ChunkShiftEvent extends Event {
+    @Label("Region File")
+    public String regionFile;
+
+    @Label("Chunk Index")
+    @Description("The local index of the chunk in the region")
+    public int chunkIndex;
+
+    @Label("DataVersion")
+    public int dataVersion;
+
+    @Label("Min World Index")
+    @Description("The first world slice the chunk was sliced into, else -1 if it wasn't sliced into any")
+    public int minWorldIndex;
+
+    @Label("Max World Index")
+    @Description("The last world slice the chunk was sliced into, else -1 if it wasn't sliced into any")
+    public int maxWorldIndex;
+
+    @Label("Section Count")
+    public int sectionCount;
+
+    @Label("Entity Count")
+    @Description("The amount of entities and block entities in the source chunk")
+    public int entityCount;
+}
@@ -0,0 +1,27 @@
+package com.davixdevelop.worldshifter.events;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of the chunks of a world slice being written to its region file
+ */
+@Name("com.davixdevelop.worldshifter.RegionFlush")
+@Label("Region Flush")
+@Category({"WorldShifter", "Region"})
+@Description("Write of the chunks of a world slice to its region file")
+@StackTrace(false)
+public class RegionFlushEvent extends Event {
+    @Label("Region File")
+    @Description("The world slice region file")
+    public String regionFile;
+
+    @Label("World Index")
+    public int worldIndex;
+
+    @Label("Chunk Index")
+    @Description("The local index of the streamed chunk, else -1 if the whole region was flushed")
+    public int chunkIndex;
+
+    @Label("Chunk Count")
+    public int chunkCount;
+}
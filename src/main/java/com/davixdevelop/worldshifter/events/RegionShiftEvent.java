@@ -0,0 +1,24 @@
+package com.davixdevelop.worldshifter.events;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of the shift of a whole source region file, from the first read to the last flush
+ */
+@Name("com.davixdevelop.worldshifter.RegionShift")
+@Label("Region Shift")
+@Category({"WorldShifter", "Region"})
+@Description("Shift and slice of a source region file")
+@StackTrace(false)
+public class RegionShiftEvent extends Event {
+    @Label("Region File")
+    public String regionFile;
+
+    @Label("Region Type")
+    @Description("The type of the region, ex region or entities")
+    public String regionType;
+
+    @Label("World Slice Count")
+    @Description("The amount of world slices region files the region was sliced into")
+    public int worldSliceCount;
+}
@@ -0,0 +1,86 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of byte buffers for the compressed chunk data, that is shared by all threads, as the raw chunks are read and
+ * compressed on one thread and released on another in the pipeline. The buffers are pooled in buckets of power of two
+ * sizes, so that a small chunk doesn't take a buffer of a large chunk, and a buffer is never dropped for being too small
+ * for the next chunk
+ */
+public class BufferPool {
+    /**
+     * The pool of the compressed chunk data buffers. The amount of pooled buffers is about the
+     * amount of raw chunks waiting in the queues of the pipeline
+     */
+    public static final BufferPool RAW_CHUNKS = new BufferPool(128);
+
+    /**
+     * The size of the smallest (4 KiB, one sector) and the largest (2 MiB, more then the 255 sectors of a chunk) bucket, as a power of two
+     */
+    private static final int MIN_BUCKET_BITS = 12;
+    private static final int MAX_BUCKET_BITS = 21;
+
+    /**
+     * The amount of larger buckets to take a buffer from, when the bucket of the requested length is empty
+     */
+    private static final int LARGER_BUCKETS = 2;
+
+    private final int capacity;
+    private final ConcurrentLinkedQueue<byte[]>[] buckets;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Create an empty pool
+     * @param capacity The max amount of buffers the pool retains, over all the buckets
+     */
+    @SuppressWarnings("unchecked")
+    public BufferPool(int capacity) {
+        this.capacity = capacity;
+        buckets = new ConcurrentLinkedQueue[MAX_BUCKET_BITS - MIN_BUCKET_BITS + 1];
+        for(int b = 0; b < buckets.length; b++) {
+            buckets[b] = new ConcurrentLinkedQueue<>();
+        }
+    }
+
+    /**
+     * Take a buffer from the pool, or allocate a new one if there is none of the length
+     * @param minLength The min length of the buffer
+     * @return A buffer with at least the min length. Its content is undefined
+     */
+    public byte[] acquire(int minLength) {
+        //The smallest power of two, that fits the length
+        int bucket = 32 - Integer.numberOfLeadingZeros(Math.max(minLength, 1 << MIN_BUCKET_BITS) - 1);
+        if(bucket > MAX_BUCKET_BITS)
+            return new byte[minLength];
+
+        for(int b = bucket; b <= Math.min(bucket + LARGER_BUCKETS, MAX_BUCKET_BITS); b++) {
+            byte[] buffer = buckets[b - MIN_BUCKET_BITS].poll();
+            if(buffer != null) {
+                size.decrementAndGet();
+                return buffer;
+            }
+        }
+
+        return new byte[1 << bucket];
+    }
+
+    /**
+     * Return a buffer to the pool. The buffer must no longer be used by the caller
+     * @param buffer The buffer
+     */
+    public void release(byte[] buffer) {
+        //The largest power of two, that the buffer fits, so that any buffer of the bucket fits its requested lengths
+        int bucket = 31 - Integer.numberOfLeadingZeros(buffer.length);
+        if(bucket < MIN_BUCKET_BITS || bucket > MAX_BUCKET_BITS)
+            return;
+
+        if(size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            return;
+        }
+
+        buckets[bucket - MIN_BUCKET_BITS].offer(buffer);
+    }
+}
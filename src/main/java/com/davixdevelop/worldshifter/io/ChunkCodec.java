@@ -0,0 +1,192 @@
+package com.davixdevelop.worldshifter.io;
+
+import io.github.ensgijs.nbt.io.BinaryNbtDeserializer;
+import io.github.ensgijs.nbt.io.BinaryNbtSerializer;
+import io.github.ensgijs.nbt.io.CompressionType;
+import io.github.ensgijs.nbt.io.NamedTag;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import net.jpountz.lz4.LZ4BlockInputStream;
+import net.jpountz.lz4.LZ4BlockOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+public class ChunkCodec {
+    public static final int COMPRESSION_GZIP = 1;
+    public static final int COMPRESSION_ZLIB = 2;
+    public static final int COMPRESSION_NONE = 3;
+    public static final int COMPRESSION_LZ4 = 4;
+
+    /**
+     * The compression the shifted chunks are written with
+     */
+    public static final AtomicReference<ChunkCompression> OUTPUT_COMPRESSION = new AtomicReference<>(ChunkCompression.DEFAULT);
+
+    //The deflaters of each thread per compression level (-1 to 9), and the inflater of each thread,
+    //so that their native buffers aren't allocated for each chunk
+    private static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater[11]);
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    //The buffers of each thread for the inflated and serialized chunks, that grow to the largest chunk seen by the thread
+    private static final ThreadLocal<byte[]> INFLATE_BUFFERS = ThreadLocal.withInitial(() -> new byte[0]);
+    private static final ThreadLocal<ByteArrayOutputStream> SERIALIZE_BUFFERS = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+
+    /**
+     * Decompress the raw chunk data. The raw chunk is not released
+     * @param rawChunk The raw chunk, as read from the region file
+     * @return The uncompressed NBT data of the chunk
+     * @throws IOException If the data could not be decompressed or the compression type is not supported
+     */
+    public static byte[] decompress(RawChunk rawChunk) throws IOException {
+        InputStream is = new ByteArrayInputStream(rawChunk.getData(), 0, rawChunk.getLength());
+        switch (rawChunk.getCompressionType()) {
+            case COMPRESSION_GZIP:
+                is = new GZIPInputStream(is);
+                break;
+            case COMPRESSION_ZLIB:
+                return inflate(rawChunk.getData(), rawChunk.getLength());
+            case COMPRESSION_NONE:
+                return Arrays.copyOf(rawChunk.getData(), rawChunk.getLength());
+            case COMPRESSION_LZ4:
+                is = new LZ4BlockInputStream(is);
+                break;
+            default:
+                throw new IOException("Unsupported chunk compression type: " + rawChunk.getCompressionType());
+        }
+
+        try(InputStream in = is) {
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Parse the uncompressed NBT data of a chunk
+     * @param data The uncompressed NBT data
+     * @return The root tag of the chunk
+     * @throws IOException If the data is not a valid NBT compound tag
+     */
+    public static CompoundTag parse(byte[] data) throws IOException {
+        NamedTag namedTag = new BinaryNbtDeserializer(CompressionType.NONE).fromStream(new ByteArrayInputStream(data));
+        if(namedTag.getTag() instanceof CompoundTag compoundTag)
+            return compoundTag;
+
+        throw new IOException("Chunk root tag is not a compound tag");
+    }
+
+    /**
+     * Serialize the root tag of a chunk to uncompressed NBT data
+     * @param data The root tag of the chunk
+     * @return The uncompressed NBT data
+     * @throws IOException If the tag could not be serialized
+     */
+    public static byte[] serialize(CompoundTag data) throws IOException {
+        ByteArrayOutputStream os = SERIALIZE_BUFFERS.get();
+        os.reset();
+        new BinaryNbtSerializer(CompressionType.NONE).toStream(new NamedTag("", data), os);
+        return os.toByteArray();
+    }
+
+    /**
+     * Compress the uncompressed NBT data of a chunk with the output compression
+     * @param data The uncompressed NBT data
+     * @return The raw chunk, to be written to the region file
+     * @throws IOException If the data could not be compressed
+     */
+    public static RawChunk compress(byte[] data) throws IOException {
+        return compress(data, OUTPUT_COMPRESSION.get());
+    }
+
+    /**
+     * Compress the uncompressed NBT data of a chunk. The zlib compressed data is written to a pooled buffer,
+     * so the raw chunk should be released once it's written
+     * @param data The uncompressed NBT data
+     * @param compression The compression of the raw chunk
+     * @return The raw chunk, to be written to the region file
+     * @throws IOException If the data could not be compressed
+     */
+    public static RawChunk compress(byte[] data, ChunkCompression compression) throws IOException {
+        switch (compression.type()) {
+            case COMPRESSION_ZLIB:
+                return deflate(data, compression.level());
+            case COMPRESSION_NONE:
+                return new RawChunk(COMPRESSION_NONE, data);
+            case COMPRESSION_GZIP: {
+                ByteArrayOutputStream os = new ByteArrayOutputStream(data.length / 2);
+                try(OutputStream gos = new GZIPOutputStream(os) {{ def.setLevel(compression.level()); }}) {
+                    gos.write(data);
+                }
+                return new RawChunk(COMPRESSION_GZIP, os.toByteArray());
+            }
+            case COMPRESSION_LZ4: {
+                ByteArrayOutputStream os = new ByteArrayOutputStream(data.length / 2);
+                try(OutputStream los = new LZ4BlockOutputStream(os)) {
+                    los.write(data);
+                }
+                return new RawChunk(COMPRESSION_LZ4, os.toByteArray());
+            }
+            default:
+                throw new IOException("Unsupported chunk compression type: " + compression.type());
+        }
+    }
+
+    private static RawChunk deflate(byte[] data, int level) {
+        Deflater[] deflaters = DEFLATERS.get();
+        Deflater deflater = deflaters[level + 1];
+        if(deflater == null) {
+            deflater = new Deflater(level);
+            deflaters[level + 1] = deflater;
+        }
+
+        deflater.reset();
+        deflater.setInput(data);
+        deflater.finish();
+
+        byte[] buffer = BufferPool.RAW_CHUNKS.acquire(Math.max(64, data.length / 2));
+        int length = 0;
+        while (!deflater.finished()) {
+            if(length == buffer.length)
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            length += deflater.deflate(buffer, length, buffer.length - length);
+        }
+
+        return new RawChunk(COMPRESSION_ZLIB, buffer, length, true);
+    }
+
+    private static byte[] inflate(byte[] data, int dataLength) throws IOException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data, 0, dataLength);
+
+        byte[] buffer = INFLATE_BUFFERS.get();
+        if(buffer.length < dataLength * 4)
+            buffer = new byte[Math.max(256, dataLength * 4)];
+        int length = 0;
+        try {
+            while (!inflater.finished()) {
+                if(length == buffer.length)
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+                int inflated = inflater.inflate(buffer, length, buffer.length - length);
+                if(inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                    throw new IOException("Truncated zlib chunk data");
+                length += inflated;
+            }
+        } catch (DataFormatException ex) {
+            throw new IOException("Invalid zlib chunk data", ex);
+        }
+
+        //Keep the grown buffer for the next chunk, and only copy out the inflated data
+        INFLATE_BUFFERS.set(buffer);
+        return Arrays.copyOf(buffer, length);
+    }
+}
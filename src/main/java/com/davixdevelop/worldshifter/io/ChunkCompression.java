@@ -0,0 +1,55 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.util.Locale;
+import java.util.zip.Deflater;
+
+import static com.davixdevelop.worldshifter.io.ChunkCodec.*;
+
+/**
+ * The compression the chunks are written with
+ * @param type The compression type id of the region file format, ex. 2 for zlib
+ * @param level The compression level from 1 to 9 of zlib and gzip, or -1 for their default level
+ */
+public record ChunkCompression(int type, int level) {
+    /**
+     * The compression Minecraft writes the chunks with
+     */
+    public static final ChunkCompression DEFAULT = new ChunkCompression(COMPRESSION_ZLIB, Deflater.DEFAULT_COMPRESSION);
+
+    /**
+     * Parse the compression from the codec and the optional level, ex. zlib:6
+     * @param value The codec (zlib, gzip, lz4 or none) and the optional level separated by a `:`
+     * @return The compression
+     * @throws IllegalArgumentException If the codec is unknown or the level is not from 1 to 9
+     */
+    public static ChunkCompression parse(String value) {
+        String[] parts = value.split(":");
+        if(parts.length > 2)
+            throw new IllegalArgumentException("Expected <codec>[:<level>], got: " + value);
+
+        int type = switch (parts[0].toLowerCase(Locale.ROOT)) {
+            case "zlib" -> COMPRESSION_ZLIB;
+            case "gzip" -> COMPRESSION_GZIP;
+            case "lz4" -> COMPRESSION_LZ4;
+            case "none" -> COMPRESSION_NONE;
+            default -> throw new IllegalArgumentException("Unknown compression codec: " + parts[0]);
+        };
+
+        int level = Deflater.DEFAULT_COMPRESSION;
+        if(parts.length == 2) {
+            if(type != COMPRESSION_ZLIB && type != COMPRESSION_GZIP)
+                throw new IllegalArgumentException("Only zlib and gzip support a compression level");
+
+            try {
+                level = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("Incorrect compression level format, could not parse: " + parts[1]);
+            }
+
+            if(level < 1 || level > 9)
+                throw new IllegalArgumentException("Compression level must be from 1 to 9");
+        }
+
+        return new ChunkCompression(type, level);
+    }
+}
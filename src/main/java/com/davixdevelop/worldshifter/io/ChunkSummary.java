@@ -0,0 +1,76 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.util.Arrays;
+
+/**
+ * The minimum of a chunk, that is needed to plan the shift: the DataVersion, the Y of the sections and the Y of the
+ * entities and block entities. Reused for each scanned chunk, so that the scan doesn't allocate
+ */
+public class ChunkSummary {
+    private int dataVersion;
+    private Integer yPos;
+    private int[] sectionYs = new int[32];
+    private int sectionsCount;
+    private double[] entityYs = new double[64];
+    private int entitiesCount;
+
+    /**
+     * Clear the summary before the next chunk is scanned
+     */
+    public void reset() {
+        dataVersion = 0;
+        yPos = null;
+        sectionsCount = 0;
+        entitiesCount = 0;
+    }
+
+    public int getDataVersion() {
+        return dataVersion;
+    }
+
+    void setDataVersion(int dataVersion) {
+        this.dataVersion = dataVersion;
+    }
+
+    /**
+     * @return The bottom section Y of the chunk, else null if the chunk has no yPos tag
+     */
+    public Integer getYPos() {
+        return yPos;
+    }
+
+    void setYPos(int yPos) {
+        this.yPos = yPos;
+    }
+
+    public int getSectionsCount() {
+        return sectionsCount;
+    }
+
+    public int getSectionY(int i) {
+        return sectionYs[i];
+    }
+
+    void addSectionY(int sectionY) {
+        if(sectionsCount == sectionYs.length)
+            sectionYs = Arrays.copyOf(sectionYs, sectionYs.length * 2);
+        sectionYs[sectionsCount++] = sectionY;
+    }
+
+    /**
+     * @return The amount of entities and block entities with a Y
+     */
+    public int getEntitiesCount() {
+        return entitiesCount;
+    }
+
+    public double getEntityY(int i) {
+        return entityYs[i];
+    }
+
+    void addEntityY(double entityY) {
+        if(entitiesCount == entityYs.length)
+            entityYs = Arrays.copyOf(entityYs, entityYs.length * 2);
+        entityYs[entitiesCount++] = entityY;
+    }
+}
@@ -0,0 +1,34 @@
+package com.davixdevelop.worldshifter.io;
+
+/**
+ * Decides which sections and entities of a chunk are clipped by the shift, so that they can be skipped
+ * before the chunk is parsed
+ */
+public interface ClipPredicate {
+    /**
+     * @param dataVersion The data version of the chunk
+     * @param sectionY The source Y of the section
+     * @return True, if the section is out of bounds of the target world
+     */
+    boolean isSectionClipped(int dataVersion, int sectionY);
+
+    /**
+     * @param dataVersion The data version of the chunk
+     * @param originY The source Y of the entity origin
+     * @return True, if the entity origin is out of bounds of the target world
+     */
+    boolean isOriginClipped(int dataVersion, double originY);
+
+    /**
+     * @param dataVersion The data version of the chunk
+     * @return The origin tags of the entities, else null if the entities can't be clipped before they are parsed
+     */
+    ClippedFilter.OriginTrie getOriginTrie(int dataVersion);
+
+    /**
+     * Count the skipped sections and entities, as if they were clipped by the shift
+     * @param sections The amount of skipped sections
+     * @param entities The amount of out of bounds entity origins
+     */
+    void recordClipped(int sections, int entities);
+}
@@ -0,0 +1,347 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.davixdevelop.worldshifter.io.NbtCursor.*;
+
+/**
+ * Removes the sections and entities, that the shift would clip, from the uncompressed NBT data of a chunk before it's
+ * parsed, so that the parse and the shift only spend time and memory on what is kept. The elements are removed at the
+ * byte level, by copying the data around them and patching the length of their lists. The decisions are the same as
+ * the shift would make, and the removed sections and entities are still counted
+ */
+public class ClippedFilter {
+    /**
+     * An entity list or the sections list of the chunk
+     */
+    private static class ListRange {
+        private final boolean isSections;
+        private final int lengthPos;
+        private int[] starts = new int[16];
+        private int[] ends = new int[16];
+        private boolean[] isClipped = new boolean[16];
+        private int[] clippedOrigins = new int[16];
+        private int length;
+
+        private ListRange(boolean isSections, int lengthPos) {
+            this.isSections = isSections;
+            this.lengthPos = lengthPos;
+        }
+
+        private void add(int start, int end, boolean clipped, int clippedOriginsCount) {
+            if(length == starts.length) {
+                starts = Arrays.copyOf(starts, length * 2);
+                ends = Arrays.copyOf(ends, length * 2);
+                isClipped = Arrays.copyOf(isClipped, length * 2);
+                clippedOrigins = Arrays.copyOf(clippedOrigins, length * 2);
+            }
+
+            starts[length] = start;
+            ends[length] = end;
+            isClipped[length] = clipped;
+            clippedOrigins[length] = clippedOriginsCount;
+            length++;
+        }
+    }
+
+    private final NbtCursor cursor;
+    private final ClipPredicate predicate;
+    private final int dataVersion;
+    private final OriginTrie originTrie;
+    private final double[] origins;
+    private final ListRange[] lists = new ListRange[4];
+    private int listsCount;
+    private boolean hasYPos;
+    private boolean hasUpgradeIndices;
+
+    private ClippedFilter(byte[] data, ClipPredicate predicate, int dataVersion) {
+        this.cursor = new NbtCursor(data);
+        this.predicate = predicate;
+        this.dataVersion = dataVersion;
+        this.originTrie = predicate.getOriginTrie(dataVersion);
+        this.origins = new double[originTrie != null ? originTrie.originsCount : 0];
+    }
+
+    /**
+     * Remove the clipped sections and entities of the chunk
+     * @param data The uncompressed NBT data of the chunk
+     * @param predicate The predicate of the clipped sections and entities
+     * @return The NBT data without the clipped sections and entities, else the same data if nothing was removed
+     * @throws IOException If the data is not a valid NBT compound tag
+     */
+    public static byte[] filter(byte[] data, ClipPredicate predicate) throws IOException {
+        try {
+            Integer dataVersion = readDataVersion(data);
+            if(dataVersion == null)
+                return data;
+
+            ClippedFilter filter = new ClippedFilter(data, predicate, dataVersion);
+            filter.cursor.enterRoot();
+            filter.scanChunk();
+            return filter.write();
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Unexpected end of the chunk data", ex);
+        }
+    }
+
+    /**
+     * Read the DataVersion of the root compound. It's usually the first tag, so the rest of the chunk isn't scanned
+     */
+    private static Integer readDataVersion(byte[] data) throws IOException {
+        NbtCursor cursor = new NbtCursor(data);
+        cursor.enterRoot();
+
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            if(type == TAG_INT && cursor.isName("DataVersion"))
+                return cursor.readInt();
+
+            cursor.skipString();
+            cursor.skip(type);
+        }
+
+        return null;
+    }
+
+    private void scanChunk() throws IOException {
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            if(type == TAG_INT && cursor.isName("yPos")) {
+                hasYPos = true;
+                cursor.pos += 4;
+            } else if(type == TAG_COMPOUND && cursor.isName("Level"))
+                scanChunk();
+            else if(type == TAG_COMPOUND && cursor.isName("UpgradeData"))
+                scanUpgradeData();
+            else if(type == TAG_LIST && (cursor.isName("sections") || cursor.isName("Sections")))
+                scanList(true);
+            else if(type == TAG_LIST && originTrie != null && (cursor.isName("Entities") || cursor.isName("block_entities") || cursor.isName("TileEntities")))
+                scanList(false);
+            else {
+                cursor.skipString();
+                cursor.skip(type);
+            }
+        }
+    }
+
+    private void scanUpgradeData() throws IOException {
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            if(type == TAG_COMPOUND && cursor.isName("Indices")) {
+                int indicesStart = cursor.pos;
+                cursor.skip(TAG_COMPOUND);
+                //An empty compound only holds the end tag
+                if(cursor.pos - indicesStart > 1)
+                    hasUpgradeIndices = true;
+            } else {
+                cursor.skipString();
+                cursor.skip(type);
+            }
+        }
+    }
+
+    private void scanList(boolean isSections) throws IOException {
+        int elementType = cursor.readByte();
+        ListRange list = new ListRange(isSections, cursor.pos);
+        int length = cursor.readInt();
+
+        if(elementType != TAG_COMPOUND || listsCount == lists.length) {
+            for(int i = 0; i < length; i++)
+                cursor.skip(elementType);
+            return;
+        }
+
+        for(int i = 0; i < length; i++) {
+            int start = cursor.pos;
+            if(isSections) {
+                Integer sectionY = scanSection();
+                list.add(start, cursor.pos, sectionY != null && predicate.isSectionClipped(dataVersion, sectionY), 0);
+            } else {
+                Arrays.fill(origins, Double.NaN);
+                scanOrigins(originTrie.root);
+
+                //The entity is only clipped if it has an origin and all of its origins are out of bounds
+                int present = 0;
+                int clipped = 0;
+                for(double origin : origins) {
+                    if(Double.isNaN(origin))
+                        continue;
+                    present++;
+                    if(predicate.isOriginClipped(dataVersion, origin))
+                        clipped++;
+                }
+
+                list.add(start, cursor.pos, present > 0 && clipped == present, clipped);
+            }
+        }
+
+        lists[listsCount++] = list;
+    }
+
+    private Integer scanSection() throws IOException {
+        Integer sectionY = null;
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            if(type == TAG_BYTE && cursor.isName("Y"))
+                sectionY = cursor.readByte();
+            else {
+                cursor.skipString();
+                cursor.skip(type);
+            }
+        }
+
+        return sectionY;
+    }
+
+    /**
+     * Scan the compound for the origin tags of the node of the origin trie
+     */
+    private void scanOrigins(OriginTrie.Node node) throws IOException {
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            OriginTrie.Node child = node.children.get(cursor.readString());
+            if(child == null) {
+                cursor.skip(type);
+                continue;
+            }
+
+            if(type == TAG_COMPOUND && !child.children.isEmpty()) {
+                scanOrigins(child);
+                continue;
+            }
+
+            double y = Double.NaN;
+            switch (type) {
+                case TAG_INT -> y = cursor.readInt();
+                case TAG_DOUBLE -> y = Double.longBitsToDouble(cursor.readLong());
+                case TAG_LIST -> {
+                    //The Y of a list is its second element
+                    int elementType = cursor.readByte();
+                    int length = cursor.readInt();
+                    for(int i = 0; i < length; i++) {
+                        if(i == 1 && elementType == TAG_INT)
+                            y = cursor.readInt();
+                        else if(i == 1 && elementType == TAG_DOUBLE)
+                            y = Double.longBitsToDouble(cursor.readLong());
+                        else
+                            cursor.skip(elementType);
+                    }
+                }
+                default -> cursor.skip(type);
+            }
+
+            if(child.originOrder >= 0 && Double.isNaN(origins[child.originOrder]))
+                origins[child.originOrder] = y;
+        }
+    }
+
+    /**
+     * Copy the data without the clipped elements, and patch the lengths of their lists
+     */
+    private byte[] write() {
+        byte[] data = cursor.data;
+        //Without a yPos, or with upgrade indices, the sections decide the bottom of the chunk, so they are all kept
+        boolean canClipSections = hasYPos && !hasUpgradeIndices;
+
+        int clippedSections = 0;
+        int clippedEntities = 0;
+        boolean hasClipped = false;
+        for(int l = 0; l < listsCount; l++) {
+            ListRange list = lists[l];
+            if(list.isSections && !canClipSections)
+                continue;
+
+            for(int i = 0; i < list.length; i++) {
+                if(!list.isClipped[i])
+                    continue;
+
+                hasClipped = true;
+                if(list.isSections)
+                    clippedSections++;
+                else
+                    clippedEntities += list.clippedOrigins[i];
+            }
+        }
+
+        if(!hasClipped)
+            return data;
+
+        //The lists are scanned in the order of the data, so they can be copied in one pass
+        ByteArrayOutputStream filtered = new ByteArrayOutputStream(data.length);
+        int copied = 0;
+        for(int l = 0; l < listsCount; l++) {
+            ListRange list = lists[l];
+            if(list.isSections && !canClipSections)
+                continue;
+
+            int kept = 0;
+            for(int i = 0; i < list.length; i++) {
+                if(!list.isClipped[i])
+                    kept++;
+            }
+
+            filtered.write(data, copied, list.lengthPos - copied);
+            filtered.write(kept >> 24);
+            filtered.write(kept >> 16);
+            filtered.write(kept >> 8);
+            filtered.write(kept);
+            copied = list.lengthPos + 4;
+
+            for(int i = 0; i < list.length; i++) {
+                if(!list.isClipped[i])
+                    continue;
+
+                filtered.write(data, copied, list.starts[i] - copied);
+                copied = list.ends[i];
+            }
+        }
+
+        filtered.write(data, copied, data.length - copied);
+        predicate.recordClipped(clippedSections, clippedEntities);
+        return filtered.toByteArray();
+    }
+
+    /**
+     * The paths of the origin tags of the entities, compiled into a key trie
+     */
+    public static class OriginTrie {
+        private static class Node {
+            private final Map<String, Node> children = new HashMap<>();
+            private int originOrder = -1;
+        }
+
+        private final Node root = new Node();
+        private final int originsCount;
+
+        private OriginTrie(int originsCount) {
+            this.originsCount = originsCount;
+        }
+
+        /**
+         * Compile the paths of the origin tags
+         * @param originPaths The paths of the origin tags, in the order they decide the world slice of the entity
+         * @return The origin trie, else null if a path contains a wildcard
+         */
+        public static OriginTrie compile(List<String[]> originPaths) {
+            OriginTrie trie = new OriginTrie(originPaths.size());
+            for(int o = 0; o < originPaths.size(); o++) {
+                Node node = trie.root;
+                for(String key : originPaths.get(o)) {
+                    if(key.equals("*"))
+                        return null;
+                    node = node.children.computeIfAbsent(key, k -> new Node());
+                }
+
+                if(node.originOrder < 0)
+                    node.originOrder = o;
+            }
+
+            return trie;
+        }
+    }
+}
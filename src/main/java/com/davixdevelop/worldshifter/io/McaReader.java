@@ -0,0 +1,111 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class McaReader implements AutoCloseable {
+    public static final int SECTOR_SIZE = 4096;
+
+    /**
+     * Flag in the compression type, that marks the chunk data is stored in an external .mcc file
+     */
+    public static final int EXTERNAL_CHUNK_FLAG = 0x80;
+
+    private final File regionFile;
+    private final RandomAccessFile raf;
+    private final int[] locations = new int[1024];
+
+    /**
+     * Open a region file for reading the raw chunk sectors. Only the location header is read
+     * @param regionFile The path to the region file
+     * @throws IOException If the region file could not be opened
+     */
+    public McaReader(File regionFile) throws IOException {
+        this.regionFile = regionFile;
+        raf = new RandomAccessFile(regionFile, "r");
+
+        if(raf.length() >= SECTOR_SIZE) {
+            byte[] header = new byte[SECTOR_SIZE];
+            raf.readFully(header);
+            ByteBuffer.wrap(header).asIntBuffer().get(locations);
+        }
+    }
+
+    public File getRegionFile() {
+        return regionFile;
+    }
+
+    public boolean hasChunk(int index) {
+        return locations[index] != 0;
+    }
+
+    /**
+     * @param index The index of the chunk in the region
+     * @return The offset of the first sector of the chunk
+     */
+    public int getSectorOffset(int index) {
+        return locations[index] >>> 8;
+    }
+
+    /**
+     * @param index The index of the chunk in the region
+     * @return The amount of sectors the chunk occupies
+     */
+    public int getSectorCount(int index) {
+        return locations[index] & 0xFF;
+    }
+
+    /**
+     * Read the raw, still compressed data of the chunk
+     * @param index The index of the chunk in the region
+     * @return The raw chunk, else null if there is no chunk at the index
+     * @throws IOException If the chunk sectors could not be read
+     */
+    public RawChunk readChunk(int index) throws IOException {
+        if(!hasChunk(index))
+            return null;
+
+        raf.seek((long) getSectorOffset(index) * SECTOR_SIZE);
+        int length = raf.readInt();
+        int compressionType = raf.readUnsignedByte();
+
+        if((compressionType & EXTERNAL_CHUNK_FLAG) != 0) {
+            return new RawChunk(compressionType & ~EXTERNAL_CHUNK_FLAG, Files.readAllBytes(getExternalChunkFile(index).toPath()));
+        }
+
+        if(length <= 1 || length > getSectorCount(index) * SECTOR_SIZE)
+            throw new IOException("Invalid chunk length " + length + " at index " + index);
+
+        //Read into a pooled buffer, which is returned to the pool once the chunk is decompressed
+        byte[] data = BufferPool.RAW_CHUNKS.acquire(length - 1);
+        raf.readFully(data, 0, length - 1);
+
+        return new RawChunk(compressionType, data, length - 1, true);
+    }
+
+    /**
+     * Get the external .mcc file of an oversized chunk, which is stored next to the region file
+     * @param index The index of the chunk in the region
+     * @return The path to the external chunk file
+     * @throws IOException If the region file name doesn't contain the region coordinates
+     */
+    private File getExternalChunkFile(int index) throws IOException {
+        String[] parts = regionFile.getName().split("\\.");
+        if(parts.length < 4)
+            throw new IOException("Could not get the region coordinates from " + regionFile.getName());
+
+        int chunkX = Integer.parseInt(parts[1]) * 32 + (index & 31);
+        int chunkZ = Integer.parseInt(parts[2]) * 32 + (index >> 5);
+
+        return Paths.get(regionFile.getParent(), "c." + chunkX + "." + chunkZ + ".mcc").toFile();
+    }
+
+    @Override
+    public void close() throws IOException {
+        raf.close();
+    }
+}
@@ -0,0 +1,214 @@
+package com.davixdevelop.worldshifter.io;
+
+import com.davixdevelop.worldshifter.utils.Utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+import static com.davixdevelop.worldshifter.io.McaReader.EXTERNAL_CHUNK_FLAG;
+import static com.davixdevelop.worldshifter.io.McaReader.SECTOR_SIZE;
+
+public class McaWriter implements AutoCloseable {
+    /**
+     * The suffix of the region files that are being written
+     */
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private static final byte[] PADDING = new byte[SECTOR_SIZE];
+
+    private final File regionFile;
+    private final File tempFile;
+    private final RandomAccessFile raf;
+    private final int[] locations = new int[1024];
+    private final int[] timestamps = new int[1024];
+    private int nextSector = 2;
+    private boolean isFailed = false;
+
+    //The hash of the chunk sectors, updated as they are written, and of the whole file once it's closed
+    private final CRC32C crc = new CRC32C();
+    private final byte[] chunkHeader = new byte[5];
+    private long hash = -1;
+
+    //The external chunk files written to their temp files, and the ones of the previous region file, that are no longer used
+    private final List<File> externalFiles = new ArrayList<>();
+    private final List<File> staleExternalFiles = new ArrayList<>();
+
+    /**
+     * Create a new region file and write the raw chunk sectors to it. The chunks are appended
+     * one after another into a temp file, which replaces the region file once the writer is closed and the header
+     * is written, so that a stopped run never leaves a half written region file behind. The external chunk files are
+     * written the same way, and replaced right before the region file. If a chunk could not be written, the temp files
+     * are deleted on close, and the region file is left as it was
+     * @param regionFile The path to the region file. An existing file is overwritten
+     * @throws IOException If the region file could not be created
+     */
+    public McaWriter(File regionFile) throws IOException {
+        this.regionFile = regionFile;
+        tempFile = new File(regionFile.getPath() + TEMP_SUFFIX);
+        raf = new RandomAccessFile(tempFile, "rw");
+        raf.setLength(0);
+        raf.write(new byte[SECTOR_SIZE * 2]);
+    }
+
+    public File getRegionFile() {
+        return regionFile;
+    }
+
+    /**
+     * Append the compressed chunk data to the region file
+     * @param chunkX The absolute x position of the chunk
+     * @param chunkZ The absolute z position of the chunk
+     * @param rawChunk The compressed chunk data
+     * @throws IOException If the chunk could not be written
+     */
+    public synchronized void write(int chunkX, int chunkZ, RawChunk rawChunk) throws IOException {
+        try {
+            writeChunk(chunkX, chunkZ, rawChunk);
+        } catch (IOException ex) {
+            //The temp file may hold a partially written chunk
+            isFailed = true;
+            throw ex;
+        }
+    }
+
+    private void writeChunk(int chunkX, int chunkZ, RawChunk rawChunk) throws IOException {
+        int index = (chunkX & 31) + (chunkZ & 31) * 32;
+        byte[] data = rawChunk.getData();
+        int length = rawChunk.getLength();
+        int compressionType = rawChunk.getCompressionType();
+
+        //Chunk length, compression type and the data
+        int sectorCount = (4 + 1 + length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+        boolean isExternal = sectorCount > 255;
+
+        File externalFile = Paths.get(regionFile.getParent(), "c." + chunkX + "." + chunkZ + ".mcc").toFile();
+        raf.seek((long) nextSector * SECTOR_SIZE);
+        if(isExternal) {
+            //Store the oversized chunk in a .mcc file, and only the compression type in the region file
+            externalFiles.add(externalFile);
+            try(OutputStream os = new FileOutputStream(externalFile.getPath() + TEMP_SUFFIX)) {
+                os.write(data, 0, length);
+            }
+
+            sectorCount = 1;
+            writeSectors(1, compressionType | EXTERNAL_CHUNK_FLAG, data, 0, SECTOR_SIZE - 5);
+        } else {
+            //The chunk was oversized in the previous region file
+            if(externalFile.isFile())
+                staleExternalFiles.add(externalFile);
+
+            //Pad the chunk to the sector size
+            writeSectors(length + 1, compressionType, data, length, sectorCount * SECTOR_SIZE - (4 + 1 + length));
+        }
+
+        locations[index] = (nextSector << 8) | sectorCount;
+        timestamps[index] = (int) (System.currentTimeMillis() / 1000L);
+        nextSector += sectorCount;
+    }
+
+    /**
+     * Write the chunk length, the compression type, the data and the padding of a chunk, and add them to the hash
+     */
+    private void writeSectors(int chunkLength, int compressionType, byte[] data, int length, int padding) throws IOException {
+        chunkHeader[0] = (byte) (chunkLength >> 24);
+        chunkHeader[1] = (byte) (chunkLength >> 16);
+        chunkHeader[2] = (byte) (chunkLength >> 8);
+        chunkHeader[3] = (byte) chunkLength;
+        chunkHeader[4] = (byte) compressionType;
+        raf.write(chunkHeader);
+        crc.update(chunkHeader);
+
+        raf.write(data, 0, length);
+        crc.update(data, 0, length);
+
+        if(padding > 0) {
+            raf.write(PADDING, 0, padding);
+            crc.update(PADDING, 0, padding);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if(isFailed) {
+            abort();
+            throw new IOException("Not all chunks could be written, so " + regionFile.getName() + " was not replaced");
+        }
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(SECTOR_SIZE * 2);
+            header.asIntBuffer().put(locations).put(timestamps);
+            raf.seek(0);
+            raf.write(header.array());
+            crc.update(header.array());
+            hash = crc.getValue();
+        } finally {
+            raf.close();
+        }
+
+        for(File externalFile : externalFiles) {
+            Utils.moveAtomically(new File(externalFile.getPath() + TEMP_SUFFIX), externalFile);
+        }
+
+        Utils.moveAtomically(tempFile, regionFile);
+
+        for(File externalFile : staleExternalFiles) {
+            externalFile.delete();
+        }
+    }
+
+    /**
+     * @return The hash of the region file, as computed by {@link #hash(File)}, else -1 if the writer is not closed yet
+     */
+    public synchronized long getHash() {
+        return hash;
+    }
+
+    /**
+     * Hash a region file, the same way the writer hashes it while writing it. The chunk sectors are hashed first
+     * and the header last, as the header is only written once all the chunks are
+     * @param regionFile The region file
+     * @return The CRC32C of the region file
+     * @throws IOException If the region file could not be read
+     */
+    public static long hash(File regionFile) throws IOException {
+        CRC32C crc = new CRC32C();
+        byte[] buffer = new byte[64 * 1024];
+        try(FileInputStream is = new FileInputStream(regionFile)) {
+            byte[] header = is.readNBytes(SECTOR_SIZE * 2);
+
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                crc.update(buffer, 0, read);
+            }
+
+            crc.update(header);
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * Close the writer and delete the temp files, without replacing the region file
+     */
+    public synchronized void abort() {
+        try {
+            raf.close();
+        } catch (IOException ignored) {
+            //The temp file is deleted anyway
+        }
+
+        tempFile.delete();
+        for(File externalFile : externalFiles) {
+            new File(externalFile.getPath() + TEMP_SUFFIX).delete();
+        }
+    }
+}
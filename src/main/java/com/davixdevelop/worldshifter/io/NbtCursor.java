@@ -0,0 +1,132 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A read position in uncompressed NBT data, that reads and skips tags without building a tag tree
+ */
+class NbtCursor {
+    static final int TAG_END = 0;
+    static final int TAG_BYTE = 1;
+    static final int TAG_SHORT = 2;
+    static final int TAG_INT = 3;
+    static final int TAG_LONG = 4;
+    static final int TAG_FLOAT = 5;
+    static final int TAG_DOUBLE = 6;
+    static final int TAG_BYTE_ARRAY = 7;
+    static final int TAG_STRING = 8;
+    static final int TAG_LIST = 9;
+    static final int TAG_COMPOUND = 10;
+    static final int TAG_INT_ARRAY = 11;
+    static final int TAG_LONG_ARRAY = 12;
+
+    final byte[] data;
+    int pos;
+
+    NbtCursor(byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Move past the type and name of the root tag, which must be a compound tag
+     * @throws IOException If the root tag is not a compound tag
+     */
+    void enterRoot() throws IOException {
+        if (readByte() != TAG_COMPOUND)
+            throw new IOException("Chunk root tag is not a compound tag");
+
+        skipString();
+    }
+
+    /**
+     * Skip the payload of a tag
+     * @param type The type of the tag
+     */
+    void skip(int type) throws IOException {
+        switch (type) {
+            case TAG_BYTE -> pos += 1;
+            case TAG_SHORT -> pos += 2;
+            case TAG_INT, TAG_FLOAT -> pos += 4;
+            case TAG_LONG, TAG_DOUBLE -> pos += 8;
+            case TAG_BYTE_ARRAY -> pos += readInt();
+            case TAG_STRING -> skipString();
+            case TAG_LIST -> {
+                int elementType = readByte();
+                int length = readInt();
+                switch (elementType) {
+                    case TAG_END -> { }
+                    case TAG_BYTE -> pos += length;
+                    case TAG_SHORT -> pos += length * 2;
+                    case TAG_INT, TAG_FLOAT -> pos += length * 4;
+                    case TAG_LONG, TAG_DOUBLE -> pos += length * 8;
+                    default -> {
+                        for (int i = 0; i < length; i++)
+                            skip(elementType);
+                    }
+                }
+            }
+            case TAG_COMPOUND -> {
+                int childType;
+                while ((childType = readByte()) != TAG_END) {
+                    skipString();
+                    skip(childType);
+                }
+            }
+            case TAG_INT_ARRAY -> pos += readInt() * 4;
+            case TAG_LONG_ARRAY -> pos += readInt() * 8;
+            default -> throw new IOException("Unknown tag type " + type + " at " + (pos - 1));
+        }
+
+        if (pos > data.length)
+            throw new IOException("Unexpected end of the NBT data");
+    }
+
+    /**
+     * Check if the name at the position equals the ASCII name, and move past it if it does
+     */
+    boolean isName(String name) {
+        int length = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+        if (length != name.length())
+            return false;
+
+        for (int i = 0; i < length; i++) {
+            if (data[pos + 2 + i] != name.charAt(i))
+                return false;
+        }
+
+        pos += 2 + length;
+        return true;
+    }
+
+    String readString() {
+        int length = readUnsignedShort();
+        String value = new String(data, pos, length, StandardCharsets.UTF_8);
+        pos += length;
+        return value;
+    }
+
+    void skipString() {
+        pos += readUnsignedShort();
+    }
+
+    int readByte() {
+        return data[pos++];
+    }
+
+    int readUnsignedShort() {
+        int value = ((data[pos] & 0xFF) << 8) | (data[pos + 1] & 0xFF);
+        pos += 2;
+        return value;
+    }
+
+    int readInt() {
+        int value = ((data[pos] & 0xFF) << 24) | ((data[pos + 1] & 0xFF) << 16) | ((data[pos + 2] & 0xFF) << 8) | (data[pos + 3] & 0xFF);
+        pos += 4;
+        return value;
+    }
+
+    long readLong() {
+        return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+    }
+}
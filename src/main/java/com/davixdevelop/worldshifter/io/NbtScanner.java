@@ -0,0 +1,129 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.io.IOException;
+
+import static com.davixdevelop.worldshifter.io.NbtCursor.*;
+
+/**
+ * Scans the uncompressed NBT data of a chunk for the tags the planner needs, without building a tag tree.
+ * Only the DataVersion, yPos, the Y of the sections and the Y of the entities and block entities are read,
+ * every other tag is skipped by its length
+ */
+public class NbtScanner {
+    private final NbtCursor cursor;
+    private final ChunkSummary summary;
+
+    private NbtScanner(byte[] data, ChunkSummary summary) {
+        this.cursor = new NbtCursor(data);
+        this.summary = summary;
+    }
+
+    /**
+     * Scan the chunk into the summary
+     * @param data The uncompressed NBT data of the chunk
+     * @param summary The summary to fill. It's reset before the scan
+     * @throws IOException If the data is not a valid NBT compound tag
+     */
+    public static void scan(byte[] data, ChunkSummary summary) throws IOException {
+        summary.reset();
+        NbtScanner scanner = new NbtScanner(data, summary);
+        try {
+            scanner.cursor.enterRoot();
+            scanner.scanChunk();
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Unexpected end of the chunk data", ex);
+        }
+    }
+
+    /**
+     * Scan the root compound of the chunk, or the Level compound of the chunks before 1.18
+     */
+    private void scanChunk() throws IOException {
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            String name = cursor.readString();
+            switch (name) {
+                case "DataVersion" -> {
+                    if (type == TAG_INT)
+                        summary.setDataVersion(cursor.readInt());
+                    else
+                        cursor.skip(type);
+                }
+                case "yPos" -> {
+                    if (type == TAG_INT)
+                        summary.setYPos(cursor.readInt());
+                    else
+                        cursor.skip(type);
+                }
+                case "Level" -> {
+                    if (type == TAG_COMPOUND)
+                        scanChunk();
+                    else
+                        cursor.skip(type);
+                }
+                case "sections", "Sections" -> scanCompoundList(type, this::scanSection);
+                case "Entities", "block_entities", "TileEntities" -> scanCompoundList(type, this::scanEntity);
+                default -> cursor.skip(type);
+            }
+        }
+    }
+
+    private void scanSection() throws IOException {
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            if (type == TAG_BYTE && cursor.isName("Y"))
+                summary.addSectionY(cursor.readByte());
+            else {
+                cursor.skipString();
+                cursor.skip(type);
+            }
+        }
+    }
+
+    /**
+     * Scan an entity or a block entity for its origin Y. Entities store it in the Pos list, block entities in the y tag
+     */
+    private void scanEntity() throws IOException {
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            if (type == TAG_INT && cursor.isName("y"))
+                summary.addEntityY(cursor.readInt());
+            else if (type == TAG_LIST && cursor.isName("Pos")) {
+                int elementType = cursor.readByte();
+                int length = cursor.readInt();
+                if (elementType == TAG_DOUBLE && length > 1) {
+                    cursor.pos += 8;
+                    summary.addEntityY(Double.longBitsToDouble(cursor.readLong()));
+                    cursor.pos += (length - 2) * 8;
+                } else {
+                    for (int i = 0; i < length; i++)
+                        cursor.skip(elementType);
+                }
+            } else {
+                cursor.skipString();
+                cursor.skip(type);
+            }
+        }
+    }
+
+    private void scanCompoundList(int type, CompoundScanner scanner) throws IOException {
+        if (type != TAG_LIST) {
+            cursor.skip(type);
+            return;
+        }
+
+        int elementType = cursor.readByte();
+        int length = cursor.readInt();
+        for (int i = 0; i < length; i++) {
+            if (elementType == TAG_COMPOUND)
+                scanner.scan();
+            else
+                cursor.skip(elementType);
+        }
+    }
+
+    @FunctionalInterface
+    private interface CompoundScanner {
+        void scan() throws IOException;
+    }
+}
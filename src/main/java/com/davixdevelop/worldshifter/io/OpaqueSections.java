@@ -0,0 +1,203 @@
+package com.davixdevelop.worldshifter.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static com.davixdevelop.worldshifter.io.NbtCursor.*;
+
+/**
+ * Keeps the sections of a chunk as opaque byte ranges of its uncompressed NBT data. The shift never changes the
+ * content of a section, only its Y and the world slice it ends up in, so the block states, biomes and light arrays
+ * don't need to be parsed into tags and serialized again. Before parsing, each section is replaced with a stub,
+ * that only holds its Y and the index of its byte range. The stubs are routed by the shift like regular sections,
+ * and after serializing a world slice chunk, each stub is replaced back with the bytes of its source section,
+ * with only the Y rewritten
+ */
+public class OpaqueSections {
+    /**
+     * The tag of the stub, that holds the index of the source section
+     */
+    private static final String MARKER = "WorldShifterSection";
+    private static final byte[] MARKER_BYTES = MARKER.getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] source;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] yOffsets;
+    private final byte[] strippedData;
+    private final int sectionsLength;
+
+    private OpaqueSections(byte[] source, int[] starts, int[] ends, int[] yOffsets, byte[] strippedData) {
+        this.source = source;
+        this.starts = starts;
+        this.ends = ends;
+        this.yOffsets = yOffsets;
+        this.strippedData = strippedData;
+
+        int sectionsLength = 0;
+        for (int i = 0; i < starts.length; i++) {
+            sectionsLength += ends[i] - starts[i];
+        }
+        this.sectionsLength = sectionsLength;
+    }
+
+    /**
+     * Replace the sections of the chunk with stubs
+     * @param data The uncompressed NBT data of the chunk
+     * @return The opaque sections, else null if the chunk has no sections or a section has no Y
+     * @throws IOException If the data is not a valid NBT compound tag
+     */
+    public static OpaqueSections strip(byte[] data) throws IOException {
+        try {
+            NbtCursor cursor = new NbtCursor(data);
+            cursor.enterRoot();
+            if (!findSections(cursor))
+                return null;
+
+            if (cursor.readByte() != TAG_COMPOUND)
+                return null;
+
+            int length = cursor.readInt();
+            if (length <= 0)
+                return null;
+
+            int[] starts = new int[length];
+            int[] ends = new int[length];
+            int[] yOffsets = new int[length];
+
+            ByteArrayOutputStream stripped = new ByteArrayOutputStream(data.length / 4);
+            stripped.write(data, 0, cursor.pos);
+
+            for (int i = 0; i < length; i++) {
+                starts[i] = cursor.pos;
+                yOffsets[i] = -1;
+
+                int type;
+                while ((type = cursor.readByte()) != TAG_END) {
+                    if (type == TAG_BYTE && cursor.isName("Y")) {
+                        yOffsets[i] = cursor.pos;
+                        cursor.pos++;
+                    } else {
+                        cursor.skipString();
+                        cursor.skip(type);
+                    }
+                }
+
+                ends[i] = cursor.pos;
+                if (yOffsets[i] < 0)
+                    return null;
+
+                writeStub(stripped, data[yOffsets[i]], i);
+            }
+
+            stripped.write(data, cursor.pos, data.length - cursor.pos);
+            return new OpaqueSections(data, starts, ends, yOffsets, stripped.toByteArray());
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Unexpected end of the chunk data", ex);
+        }
+    }
+
+    /**
+     * @return The NBT data of the chunk, with the sections replaced by stubs
+     */
+    public byte[] getStrippedData() {
+        return strippedData;
+    }
+
+    /**
+     * Replace the stubs of the serialized world slice chunk with the bytes of their source sections
+     * @param data The uncompressed NBT data of the world slice chunk
+     * @return The NBT data with the source sections
+     * @throws IOException If a section of the chunk is not a stub of this chunk
+     */
+    public byte[] splice(byte[] data) throws IOException {
+        try {
+            NbtCursor cursor = new NbtCursor(data);
+            cursor.enterRoot();
+            if (!findSections(cursor))
+                return data;
+
+            int elementType = cursor.readByte();
+            int length = cursor.readInt();
+            if (elementType != TAG_COMPOUND || length == 0)
+                return data;
+
+            //Each source section is spliced at most once into a world slice chunk
+            ByteArrayOutputStream spliced = new ByteArrayOutputStream(data.length + sectionsLength);
+            spliced.write(data, 0, cursor.pos);
+
+            for (int i = 0; i < length; i++) {
+                int sectionY = Integer.MIN_VALUE;
+                int sectionIndex = -1;
+
+                int type;
+                while ((type = cursor.readByte()) != TAG_END) {
+                    if (type == TAG_BYTE && cursor.isName("Y"))
+                        sectionY = cursor.readByte();
+                    else if (type == TAG_INT && cursor.isName(MARKER))
+                        sectionIndex = cursor.readInt();
+                    else {
+                        cursor.skipString();
+                        cursor.skip(type);
+                    }
+                }
+
+                if (sectionIndex < 0 || sectionIndex >= starts.length || sectionY == Integer.MIN_VALUE)
+                    throw new IOException("Section " + i + " of the chunk is not an opaque section stub");
+
+                int start = starts[sectionIndex];
+                spliced.write(source, start, yOffsets[sectionIndex] - start);
+                spliced.write(sectionY);
+                spliced.write(source, yOffsets[sectionIndex] + 1, ends[sectionIndex] - yOffsets[sectionIndex] - 1);
+            }
+
+            spliced.write(data, cursor.pos, data.length - cursor.pos);
+            return spliced.toByteArray();
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("Unexpected end of the chunk data", ex);
+        }
+    }
+
+    /**
+     * Move the cursor to the element type of the sections list, in the root compound or the Level compound before 1.18
+     * @return True, if the sections list was found
+     */
+    private static boolean findSections(NbtCursor cursor) throws IOException {
+        int type;
+        while ((type = cursor.readByte()) != TAG_END) {
+            if (type == TAG_LIST && (cursor.isName("sections") || cursor.isName("Sections")))
+                return true;
+
+            if (type == TAG_COMPOUND && cursor.isName("Level")) {
+                if (findSections(cursor))
+                    return true;
+                continue;
+            }
+
+            cursor.skipString();
+            cursor.skip(type);
+        }
+
+        return false;
+    }
+
+    private static void writeStub(ByteArrayOutputStream stub, byte sectionY, int sectionIndex) {
+        stub.write(TAG_BYTE);
+        stub.write(0);
+        stub.write(1);
+        stub.write('Y');
+        stub.write(sectionY);
+
+        stub.write(TAG_INT);
+        stub.write(MARKER_BYTES.length >> 8);
+        stub.write(MARKER_BYTES.length);
+        stub.write(MARKER_BYTES, 0, MARKER_BYTES.length);
+        stub.write(sectionIndex >> 24);
+        stub.write(sectionIndex >> 16);
+        stub.write(sectionIndex >> 8);
+        stub.write(sectionIndex);
+
+        stub.write(TAG_END);
+    }
+}
@@ -0,0 +1,60 @@
+package com.davixdevelop.worldshifter.io;
+
+public class RawChunk {
+    private final int compressionType;
+    private final byte[] data;
+    private final int length;
+    private final boolean isPooled;
+
+    /**
+     * Create a raw chunk, as it's stored in the sectors of a region file
+     * @param compressionType The compression type id of the chunk data, ex. 2 for zlib
+     * @param data The compressed chunk data
+     */
+    public RawChunk(int compressionType, byte[] data) {
+        this(compressionType, data, data.length, false);
+    }
+
+    /**
+     * Create a raw chunk, whose data is only a part of the buffer
+     * @param compressionType The compression type id of the chunk data, ex. 2 for zlib
+     * @param data The buffer, that starts with the compressed chunk data
+     * @param length The length of the compressed chunk data
+     * @param isPooled If the buffer was taken from the raw chunks buffer pool, and should be returned to it once the chunk is released
+     */
+    public RawChunk(int compressionType, byte[] data, int length, boolean isPooled) {
+        this.compressionType = compressionType;
+        this.data = data;
+        this.length = length;
+        this.isPooled = isPooled;
+    }
+
+    /**
+     * @return The compression type id of the chunk data
+     */
+    public int getCompressionType() {
+        return compressionType;
+    }
+
+    /**
+     * @return The buffer with the compressed chunk data. The buffer can be longer then the data
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return The length of the compressed chunk data
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Return the buffer to the pool, if it was taken from it. The raw chunk must no longer be used afterwards
+     */
+    public void release() {
+        if(isPooled)
+            BufferPool.RAW_CHUNKS.release(data);
+    }
+}
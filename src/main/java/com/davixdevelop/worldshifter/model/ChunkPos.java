@@ -1,6 +1,10 @@
 package com.davixdevelop.worldshifter.model;
 
 public class ChunkPos implements Comparable<ChunkPos> {
+    /**
+     * The amount of chunks in a region
+     */
+    public static final int REGION_CHUNKS = 1024;
 
     private final int x;
     private final int z;
@@ -18,6 +22,23 @@ public class ChunkPos implements Comparable<ChunkPos> {
         return z;
     }
 
+    /**
+     * @return The index of the chunk in its region
+     */
+    public int getLocalIndex() {
+        return getLocalIndex(x, z);
+    }
+
+    /**
+     * Get the index of a chunk in its region, the same as the index of the chunk in the region file header
+     * @param chunkX The X position of the chunk
+     * @param chunkZ The Z position of the chunk
+     * @return The local index, from 0 to 1023
+     */
+    public static int getLocalIndex(int chunkX, int chunkZ) {
+        return (chunkX & 31) + (chunkZ & 31) * 32;
+    }
+
     @Override
     public String toString() {
         return x + "," + z;
@@ -42,6 +63,6 @@ public class ChunkPos implements Comparable<ChunkPos> {
 
     @Override
     public int hashCode() {
-        return 31 * x * z;
+        return 31 * x + z;
     }
 }
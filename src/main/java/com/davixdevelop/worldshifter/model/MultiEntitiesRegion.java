@@ -1,19 +1,28 @@
 package com.davixdevelop.worldshifter.model;
 
-import com.davixdevelop.worldshifter.Main;
+import com.davixdevelop.worldshifter.events.ChunkShiftEvent;
+import com.davixdevelop.worldshifter.events.RegionShiftEvent;
 import com.davixdevelop.worldshifter.utils.EntityUtils;
 import com.davixdevelop.worldshifter.utils.LogUtils;
+import com.davixdevelop.worldshifter.utils.RunStats;
+import com.davixdevelop.worldshifter.utils.Utils;
 import io.github.ensgijs.nbt.mca.EntitiesChunk;
 import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
 import io.github.ensgijs.nbt.tag.CompoundTag;
 import io.github.ensgijs.nbt.tag.ListTag;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MultiEntitiesRegion extends MultiRegion<EntitiesChunk> {
+    /**
+     * Tags that are left out of the skeleton chunks, as they are re-added by the shift
+     */
+    private static final Set<String> SKELETON_EXCLUDED_TAGS = Set.of("Entities");
+
     private final AtomicInteger removedEntities;
 
     public MultiEntitiesRegion(File sourceRegionFile, Integer targetWorldMin, Integer targetWorldMax, int offsetY, File outputFolder, boolean isMultiWorld, AtomicInteger removedEntities) {
@@ -23,9 +32,9 @@ public class MultiEntitiesRegion extends MultiRegion<EntitiesChunk> {
 
     @Override
     public void shiftRegion() throws Exception {
-        int dataVersion = 0;
-        WorldHeight targetWorldHeight = null;
-        ChunkPos chunkPos = null;
+        RegionShiftEvent event = new RegionShiftEvent();
+        event.begin();
+        int previousIndex = -1;
 
         try(RandomAccessMcaFile<EntitiesChunk> entitiesMCA = new RandomAccessMcaFile<>(EntitiesChunk.class, sourceRegionFile, "r")) {
             entitiesMCA.touch();
@@ -34,87 +43,98 @@ public class MultiEntitiesRegion extends MultiRegion<EntitiesChunk> {
                 EntitiesChunk chunk;
 
                 try {
-                    if(!entitiesMCA.hasChunk(index)) {
-                        emptyChunks.add(index);
+                    if(!entitiesMCA.hasChunk(index))
                         continue;
-                    }
 
+                    long readStart = System.nanoTime();
                     chunk = entitiesMCA.read(index);
+                    RunStats.record(RunStats.Stage.READ, readStart);
                 }catch (Exception ex) {
-                    LogUtils.logError("Error while reading next chunk at index:" + index + " " + ((chunkPos != null) ? "(Previous was " + chunkPos.toString() +  ")" : ""), sourceRegionFile, ex);
+                    LogUtils.logError("Error while reading next chunk at index:" + index + " " + ((previousIndex >= 0) ? "(Previous was index:" + previousIndex +  ")" : ""), sourceRegionFile, ex);
+                    markFailed();
                     continue;
                 }
 
-                if(chunk == null) {
-                    emptyChunks.add(index);
+                if(chunk == null)
                     continue;
-                }
 
-                chunkPos = new ChunkPos(chunk.getChunkX(), chunk.getChunkZ());
+                previousIndex = index;
 
-                if (dataVersion != chunk.getDataVersion() || targetWorldHeight == null) {
-                    dataVersion =  chunk.getDataVersion();
-                    targetWorldHeight = Main.WORLDS_HEIGHTS.get().get(dataVersion);
-
-                    if (dataVersion >= 2860 && targetWorldMin != null && targetWorldMax != null && targetWorldMin >= -2032 && targetWorldMax <= 2032) {
-                        targetWorldHeight = new WorldHeight(targetWorldMin, targetWorldMax);
-                    }
-                }
+                long transformStart = System.nanoTime();
+                shiftChunk(chunk);
+                RunStats.record(RunStats.Stage.TRANSFORM, transformStart);
 
-                ListTag<CompoundTag> entities = chunk.getEntitiesTag();
-                if(entities != null && !entities.isEmpty()) {
-                    Map<Integer, ListTag<CompoundTag>> entitiesPerWorldIndex = EntityUtils.offsetEntities(entities, offsetY, dataVersion, targetWorldHeight, removedEntities, isMultiWorld);
-
-                    for(Integer worldIndex : entitiesPerWorldIndex.keySet()) {
-                        ListTag<CompoundTag> ent = entitiesPerWorldIndex.get(worldIndex);
-
-                        EntitiesChunk entitiesChunk = getChunk(new ChunkPos(chunk.getChunkX(), chunk.getChunkZ()), worldIndex);
-                        if(entitiesChunk != null)
-                            entitiesChunk.setEntitiesTag(ent);
-                    }
-                }
+                if(isStreamingFlush())
+                    flushChunks(index);
             }
 
             //FLush the region to the output
             flushRegions();
         }
-    }
 
-    @Override
-    public RandomAccessMcaFile<EntitiesChunk> readMca(File regionFile) throws IOException {
-        RandomAccessMcaFile<EntitiesChunk> regionMCA = new RandomAccessMcaFile<>(EntitiesChunk.class, regionFile, "rw");
-        regionMCA.touch();
-        return regionMCA;
+        if(event.shouldCommit()) {
+            event.regionFile = sourceRegionFile.getPath();
+            event.regionType = subFolder;
+            event.worldSliceCount = getWorldSlicesCount();
+            event.commit();
+        }
     }
 
     @Override
-    public void clearMca(RandomAccessMcaFile<EntitiesChunk> regionMCA) throws IOException {
-        ChunkPos chunkPos = null;
-
-        for (int index = 0; index < 1024; index++) {
-            EntitiesChunk chunk = null;
+    public void shiftChunk(EntitiesChunk chunk) {
+        ChunkShiftEvent event = new ChunkShiftEvent();
+        event.begin();
+        SHIFTED_CHUNKS.increment();
+        int chunkIndex = ChunkPos.getLocalIndex(chunk.getChunkX(), chunk.getChunkZ());
+        int dataVersion = chunk.getDataVersion();
+        WorldHeight targetWorldHeight = getTargetWorldHeight(dataVersion);
+        int minWorldIndex = -1;
+        int maxWorldIndex = -1;
+
+        ListTag<CompoundTag> entities = chunk.getEntitiesTag();
+        if(entities != null && !entities.isEmpty()) {
+            TreeMap<Integer, ListTag<CompoundTag>> entitiesPerWorldIndex = EntityUtils.offsetEntities(entities, offsetY, dataVersion, targetWorldHeight, removedEntities, isMultiWorld);
+            if(!entitiesPerWorldIndex.isEmpty()) {
+                minWorldIndex = entitiesPerWorldIndex.firstKey();
+                maxWorldIndex = entitiesPerWorldIndex.lastKey();
+            }
 
-            try {
-                if(emptyChunks.contains(index) || !regionMCA.hasChunk(index)) {
-                    emptyChunks.add(index);
-                    continue;
-                }
+            for(Integer worldIndex : entitiesPerWorldIndex.keySet()) {
+                ListTag<CompoundTag> ent = entitiesPerWorldIndex.get(worldIndex);
 
-                chunk = regionMCA.read(index);
-            }catch (Exception ex) {
-                LogUtils.logError("Error while reading next chunk at index:" + index + " " + ((chunkPos != null) ? "(Previous was " + chunkPos.toString() +  ")" : "") + "\n File: world-shifted/temp/entities/" + sourceRegionFile.getName() , ex);
-                continue;
+                EntitiesChunk entitiesChunk = getChunk(chunkIndex, worldIndex, chunk);
+                if(entitiesChunk != null)
+                    entitiesChunk.setEntitiesTag(ent);
             }
+        }
 
-            if(chunk == null) {
-                emptyChunks.add(index);
-                continue;
-            }
+        if(event.shouldCommit()) {
+            event.regionFile = sourceRegionFile.getPath();
+            event.chunkIndex = chunkIndex;
+            event.dataVersion = dataVersion;
+            event.minWorldIndex = minWorldIndex;
+            event.maxWorldIndex = maxWorldIndex;
+            event.entityCount = entities != null ? entities.size() : 0;
+            event.commit();
+        }
+    }
 
-            chunkPos = new ChunkPos(chunk.getChunkX(), chunk.getChunkZ());
+    @Override
+    public void recordClipped(int sections, int entities) {
+        removedEntities.addAndGet(entities);
+    }
 
-            chunk.setEntitiesTag(ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
-            regionMCA.write(chunk);
-        }
+    @Override
+    public EntitiesChunk createChunk(CompoundTag data) {
+        return new EntitiesChunk(data);
+    }
+
+    @Override
+    public EntitiesChunk createSkeletonChunk(EntitiesChunk sourceChunk) {
+        //Copy everything but the entities, so that the entities don't get copied twice
+        EntitiesChunk chunk = new EntitiesChunk(Utils.copyCompoundTag(sourceChunk.getHandle(), SKELETON_EXCLUDED_TAGS));
+        chunk.setEntitiesTag(ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+
+        return chunk;
     }
 }
@@ -1,19 +1,39 @@
 package com.davixdevelop.worldshifter.model;
 
+import com.davixdevelop.worldshifter.Main;
+import com.davixdevelop.worldshifter.io.ChunkCodec;
+import com.davixdevelop.worldshifter.io.ClipPredicate;
+import com.davixdevelop.worldshifter.io.ClippedFilter;
+import com.davixdevelop.worldshifter.io.McaWriter;
+import com.davixdevelop.worldshifter.io.RawChunk;
+import com.davixdevelop.worldshifter.utils.EntityUtils;
+import com.davixdevelop.worldshifter.events.RegionFlushEvent;
 import com.davixdevelop.worldshifter.utils.LogUtils;
-import com.davixdevelop.worldshifter.utils.Utils;
+import com.davixdevelop.worldshifter.utils.RunStats;
 import io.github.ensgijs.nbt.mca.ChunkBase;
-import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
+import io.github.ensgijs.nbt.tag.CompoundTag;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_18_0;
+
+public abstract class MultiRegion<C extends ChunkBase> implements ClipPredicate {
+    /**
+     * The amount of source chunks shifted by all regions, used to measure the throughput
+     */
+    public static final LongAdder SHIFTED_CHUNKS = new LongAdder();
 
-public abstract class MultiRegion<C extends ChunkBase> {
     public final File sourceRegionFile;
     public final File outputFolder;
     public final String subFolder;
@@ -23,9 +43,14 @@ public abstract class MultiRegion<C extends ChunkBase> {
     protected final int offsetY;
 
     private final Map<Integer, Region<C>> regions;
-    private File tempClearRegionFile;
+    private final Map<Integer, WorldHeight> targetWorldHeights = new ConcurrentHashMap<>();
+    private final WorldHeight customTargetWorldHeight;
+    private final Map<Integer, McaWriter> mcaWriters = new TreeMap<>();
+    private boolean isStreamingFlush = false;
+    private volatile boolean isFailed = false;
+    private final Map<Integer, Long> outputHashes = new ConcurrentHashMap<>();
 
-    public final Set<Integer> emptyChunks = new TreeSet<>();
+    private final Map<Integer, Optional<ClippedFilter.OriginTrie>> originTries = new ConcurrentHashMap<>();
 
     /**
      * Create multi region files from a single region file
@@ -46,61 +71,152 @@ public abstract class MultiRegion<C extends ChunkBase> {
         this.targetWorldMin = targetWorldMin;
         this.targetWorldMax = targetWorldMax;
         this.offsetY = offsetY;
+        customTargetWorldHeight = (targetWorldMin != null && targetWorldMax != null) ? new WorldHeight(targetWorldMin, targetWorldMax) : null;
     }
 
     /**
-     * Get the *cleared chunk of the world index
-     * @param pos The position of the chunk
+     * Get the skeleton chunk of the world index. The skeleton is built in memory from the already decoded source chunk
+     * the first time it's requested. Synchronized, as the chunks of a region can be shifted in parallel
+     * @param index The local index of the chunk in the region
      * @param worldIndex The index of the world slice
-     * @return The *cleared chunk to write to, else null
-     */
-    public C getChunk(ChunkPos pos, int worldIndex) {
-        if(!regions.containsKey(worldIndex)) {
-            File newRegionFile = getRegionFileForIndex(worldIndex);
-            newRegionFile.getParentFile().mkdirs();
-
-            // If temp clear region file is not yet created, create it in the temp folder in the output folder
-            if(tempClearRegionFile == null && isMultiWorld) {
-                tempClearRegionFile = Paths.get(outputFolder.getPath(),"temp", subFolder, sourceRegionFile.getName()).toFile();
-                tempClearRegionFile.getParentFile().mkdirs();
-
-                try {
-                    Utils.copyFile(sourceRegionFile, tempClearRegionFile);
-                    try(RandomAccessMcaFile<C> tempClearRegion = readMca(tempClearRegionFile)) {
-                        clearMca(tempClearRegion);
-                        tempClearRegion.flush();
-                    }
-                } catch (Exception ex) {
-                    LogUtils.logError("Creating the temp " + subFolder + " file " + sourceRegionFile.getName() + " failed", ex);
-                    return null;
-                }
-            }
+     * @param sourceChunk The decoded source chunk, which must not yet be shifted
+     * @return The skeleton chunk to write to, else null
+     */
+    public synchronized C getChunk(int index, int worldIndex, C sourceChunk) {
+        Region<C> region = regions.get(worldIndex);
+        if(region == null) {
+            region = new Region<>(getRegionFileForIndex(worldIndex));
+            regions.put(worldIndex, region);
+        }
 
-            try {
-                Utils.copyFile(isMultiWorld ? tempClearRegionFile : sourceRegionFile, newRegionFile);
+        C chunk = region.getChunkAt(index);
+        if(chunk != null)
+            return chunk;
 
-                if(!isMultiWorld) {
-                    try(RandomAccessMcaFile<C> clearRegion = readMca(newRegionFile)) {
-                        clearMca(clearRegion);
-                        clearRegion.flush();
-                    }
-                }
+        try {
+            chunk = createSkeletonChunk(sourceChunk);
+        }catch (Exception ex) {
+            LogUtils.logError("Error while creating chunk at index:" + index, ex);
+            markFailed();
+            return null;
+        }
 
-            }catch (Exception ex) {
-                LogUtils.logError("Copying the source " + subFolder + " file " + sourceRegionFile.getName() + " failed", ex);
-                return null;
+        if(chunk != null)
+            region.putChunk(index, chunk);
+
+        return chunk;
+    }
+
+    /**
+     * Remove the finished chunks at the local index from all world slices, so that they can be written
+     * @param index The local index of the chunk in the region
+     * @return A map where the key is the world index and the value is the chunk of the world slice
+     */
+    public synchronized Map<Integer, C> takeChunks(int index) {
+        Map<Integer, C> chunks = new TreeMap<>();
+        for(Map.Entry<Integer, Region<C>> region : regions.entrySet()) {
+            C chunk = region.getValue().removeChunk(index);
+            if(chunk != null)
+                chunks.put(region.getKey(), chunk);
+        }
+
+        return chunks;
+    }
+
+    /**
+     * Get the target world height for the data version. If a custom target height is specified and the
+     * data version supports it, the custom height is used
+     * @param dataVersion The data version of the chunk
+     * @return The target world height
+     */
+    public WorldHeight getTargetWorldHeight(int dataVersion) {
+        return targetWorldHeights.computeIfAbsent(dataVersion, version -> {
+            if (version >= JAVA_1_18_0.id() && customTargetWorldHeight != null && targetWorldMin >= -2032 && targetWorldMax <= 2032) {
+                return customTargetWorldHeight;
             }
 
+            return Main.WORLDS_HEIGHTS.get().get(version);
+        });
+    }
+
+    /**
+     * @return The predicate of the sections and entities, that are clipped by the shift, else null if multi world
+     * is enabled, as then nothing is clipped
+     */
+    public ClipPredicate getClipPredicate() {
+        return isMultiWorld ? null : this;
+    }
+
+    @Override
+    public boolean isSectionClipped(int dataVersion, int sectionY) {
+        return false;
+    }
+
+    @Override
+    public boolean isOriginClipped(int dataVersion, double originY) {
+        return getTargetWorldHeight(dataVersion).getWorldIndexFromY(originY + offsetY) != 0;
+    }
+
+    @Override
+    public ClippedFilter.OriginTrie getOriginTrie(int dataVersion) {
+        return originTries.computeIfAbsent(dataVersion, version ->
+                Optional.ofNullable(ClippedFilter.OriginTrie.compile(EntityUtils.Y_REWRITERS.get().get(version).getOriginPaths()))).orElse(null);
+    }
+
+    /**
+     * Write the chunks to the world slices region files as soon as their source chunk is shifted,
+     * instead of holding all of them in memory until the region is flushed
+     * @param streamingFlush If the chunks should be written as soon as they are shifted
+     */
+    public void setStreamingFlush(boolean streamingFlush) {
+        isStreamingFlush = streamingFlush;
+    }
+
+    public boolean isStreamingFlush() {
+        return isStreamingFlush;
+    }
+
+    /**
+     * Write the finished chunks at the local index to the world slices region files right away
+     * @param index The local index of the shifted source chunk
+     */
+    public void flushChunks(int index) {
+        long flushStart = System.nanoTime();
+        Map<Integer, C> chunks = takeChunks(index);
+        for(int worldIndex : chunks.keySet()) {
+            RegionFlushEvent event = new RegionFlushEvent();
+            event.begin();
             try {
-                Region<C> newRegion = new Region<>(readMca(newRegionFile));
-                regions.put(worldIndex, newRegion);
+                writeChunk(getMcaWriter(worldIndex), chunks.get(worldIndex));
             }catch (Exception ex) {
-                LogUtils.logError("Error while reading mca file `" + newRegionFile.getPath() + "`", ex);
-                return null;
+                LogUtils.logError("Error while writing chunk at index:" + index, getRegionFileForIndex(worldIndex), ex);
+                markFailed();
+            }
+
+            if(event.shouldCommit()) {
+                event.regionFile = getRegionFileForIndex(worldIndex).getPath();
+                event.worldIndex = worldIndex;
+                event.chunkIndex = index;
+                event.chunkCount = 1;
+                event.commit();
             }
         }
 
-        return regions.get(worldIndex).getChunk(pos);
+        RunStats.record(RunStats.Stage.FLUSH, flushStart);
+    }
+
+    /**
+     * Mark that a chunk of the region could not be read, shifted or written, so that the region is not recorded as completed
+     */
+    public void markFailed() {
+        isFailed = true;
+    }
+
+    /**
+     * @return True, if a chunk of the region could not be read, shifted or written
+     */
+    public boolean isFailed() {
+        return isFailed;
     }
 
     public File getRegionFileForIndex(int worldIndex) {
@@ -116,50 +232,206 @@ public abstract class MultiRegion<C extends ChunkBase> {
     public abstract void shiftRegion() throws Exception;
 
     /**
-     * Read the mca file and load it
-     * @param regionFile The path to the region file
-     * @return The random access mca file of the region file
-     * @throws IOException If there was an error reading the region file
+     * Shift and slice a single source chunk into the chunks of the world slices
+     * @param chunk The decoded source chunk
+     * @throws Exception If an exception happened while shifting the chunk
+     */
+    public abstract void shiftChunk(C chunk) throws Exception;
+
+    /**
+     * Create a chunk from its decoded NBT data
+     * @param data The root tag of the chunk
+     * @return The chunk
      */
-    public abstract RandomAccessMcaFile<C> readMca(File regionFile) throws IOException;
+    public abstract C createChunk(CompoundTag data);
 
     /**
-     * Read a mca file, clear the chunk content and return it
+     * Create an empty copy of the source chunk, that retains everything but the shifted content of the chunk
      *
-     * @param regionMCA The path to the region file
-     * @return The random access mca file of the region file
-     * @throws IOException If there was an error while reading the MCA file
+     * @param sourceChunk The decoded source chunk
+     * @return The skeleton chunk
      */
-    public abstract void clearMca(RandomAccessMcaFile<C> regionMCA) throws IOException;
+    public abstract C createSkeletonChunk(C sourceChunk);
 
     /**
      * Write the regions chunks and flush their MCA files
      */
     public void flushRegions() {
         for(int worldIndex : regions.keySet()) {
-            Region<C> region = regions.get(worldIndex);
-
-            try(RandomAccessMcaFile<C> mcaFile = region.getMcaFile()) {
-                Map<ChunkPos, C> chunks = region.getChunks();
-                for(ChunkPos pos : chunks.keySet()) {
-                    mcaFile.write(chunks.get(pos));
-                }
-
-                /*try{
-                    mcaFile.optimizeFile();
-                    //if(bytesSaved != 0)
-                    //    LogUtils.log("Optimized sub-region file, saved: " + (bytesSaved/1000) + "KB \nfor file: world-shifted/" + "world" + worldIndex + "/" + subFolder + "/" + sourceRegionFile.getName());
-                }catch (Exception ignored) {}*/
-                mcaFile.flush();
-            }catch (Exception ex ) {
-                LogUtils.logError("Error while writing file", getRegionFileForIndex(worldIndex), ex);
+            flushRegion(worldIndex);
+        }
+    }
+
+    /**
+     * Write the regions chunks and flush their MCA files, with each world slice region file
+     * being encoded and written in parallel on the pool
+     * @param pool The pool to flush the region files on. If null, the regions are flushed sequentially
+     */
+    public void flushRegions(ForkJoinPool pool) {
+        if(pool == null || regions.size() < 2) {
+            flushRegions();
+            return;
+        }
+
+        List<Callable<Void>> flushTasks = new ArrayList<>();
+        for(int worldIndex : regions.keySet()) {
+            flushTasks.add(() -> {
+                flushRegion(worldIndex);
+                return null;
+            });
+        }
+
+        pool.invokeAll(flushTasks);
+    }
+
+    /**
+     * Write the chunks of the world index region and flush its MCA file
+     * @param worldIndex The index of the world slice
+     */
+    private void flushRegion(int worldIndex) {
+        long flushStart = System.nanoTime();
+        RegionFlushEvent event = new RegionFlushEvent();
+        event.begin();
+        Region<C> region = regions.get(worldIndex);
+        int chunkCount = 0;
+
+        McaWriter mcaWriter = null;
+        try {
+            mcaWriter = getMcaWriter(worldIndex);
+            for(int index = region.nextChunkIndex(0); index >= 0; index = region.nextChunkIndex(index + 1)) {
+                writeChunk(mcaWriter, region.getChunkAt(index));
+                chunkCount++;
             }
+
+            mcaWriter.close();
+            recordOutputHash(worldIndex, mcaWriter.getHash());
+        }catch (Exception ex ) {
+            LogUtils.logError("Error while writing file", region.getRegionFile(), ex);
+            markFailed();
+            //Keep the previous region file, instead of replacing it with one that misses chunks
+            if(mcaWriter != null)
+                mcaWriter.abort();
+        }
+
+        RunStats.record(RunStats.Stage.FLUSH, flushStart);
+
+        if(event.shouldCommit()) {
+            event.regionFile = region.getRegionFile().getPath();
+            event.worldIndex = worldIndex;
+            event.chunkIndex = -1;
+            event.chunkCount = chunkCount;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return The amount of world slices the region was sliced into so far
+     */
+    public int getWorldSlicesCount() {
+        return regions.size();
+    }
+
+    /**
+     * @return The size in bytes of the world slices region files written so far
+     */
+    public long getOutputBytes() {
+        long outputBytes = 0;
+        for(int worldIndex : regions.keySet()) {
+            outputBytes += getRegionFileForIndex(worldIndex).length();
+        }
+
+        return outputBytes;
+    }
+
+    /**
+     * @return The world slices region files written so far, in the order of their world index
+     */
+    public List<File> getOutputFiles() {
+        List<File> outputFiles = new ArrayList<>();
+        for(int worldIndex : regions.keySet()) {
+            File regionFile = getRegionFileForIndex(worldIndex);
+            if(regionFile.isFile())
+                outputFiles.add(regionFile);
         }
+
+        return outputFiles;
+    }
+
+    /**
+     * Record the hash of a world slice region file, computed while it was written
+     * @param worldIndex The index of the world slice
+     * @param hash The hash of the region file
+     */
+    public void recordOutputHash(int worldIndex, long hash) {
+        outputHashes.put(worldIndex, hash);
     }
 
-    public void deleteTempRegionFile() {
-        if(tempClearRegionFile != null) {
-            tempClearRegionFile.delete();
+    /**
+     * @return The hashes of the world slices region files written so far, in the same order as {@link #getOutputFiles()}.
+     * A hash is null, if the region file was not written by this region
+     */
+    public List<Long> getOutputHashes() {
+        List<Long> hashes = new ArrayList<>();
+        for(int worldIndex : regions.keySet()) {
+            if(getRegionFileForIndex(worldIndex).isFile())
+                hashes.add(outputHashes.get(worldIndex));
         }
+
+        return hashes;
+    }
+
+    /**
+     * Serialize and compress the chunk with the output compression, and append it to the region file
+     * @param mcaWriter The writer of the world index region file
+     * @param chunk The chunk of the world slice
+     * @throws IOException If the chunk could not be encoded or written
+     */
+    private void writeChunk(McaWriter mcaWriter, C chunk) throws IOException {
+        long serializeStart = System.nanoTime();
+        byte[] data = ChunkCodec.serialize(chunk.updateHandle());
+        RunStats.record(RunStats.Stage.SERIALIZE, serializeStart);
+
+        long compressStart = System.nanoTime();
+        RawChunk rawChunk = ChunkCodec.compress(data);
+        RunStats.record(RunStats.Stage.COMPRESS, compressStart);
+
+        long writeStart = System.nanoTime();
+        try {
+            mcaWriter.write(chunk.getChunkX(), chunk.getChunkZ(), rawChunk);
+        } finally {
+            rawChunk.release();
+        }
+        RunStats.record(RunStats.Stage.WRITE, writeStart);
+    }
+
+    /**
+     * Abort the writers of the world slices region files, that the region opened, when the region could not be shifted.
+     * Their temp files are deleted, and the previous region files are kept
+     */
+    public synchronized void abortWriters() {
+        for(McaWriter mcaWriter : mcaWriters.values()) {
+            mcaWriter.abort();
+        }
+
+        mcaWriters.clear();
+    }
+
+    /**
+     * Get the opened writer of the world index region file, or open it if it's not yet opened
+     * @param worldIndex The index of the world slice
+     * @return The writer of the world index region file
+     * @throws IOException If the region file could not be opened
+     */
+    private synchronized McaWriter getMcaWriter(int worldIndex) throws IOException {
+        McaWriter mcaWriter = mcaWriters.get(worldIndex);
+        if(mcaWriter == null) {
+            File regionFile = getRegionFileForIndex(worldIndex);
+            regionFile.getParentFile().mkdirs();
+
+            mcaWriter = new McaWriter(regionFile);
+            mcaWriters.put(worldIndex, mcaWriter);
+        }
+
+        return mcaWriter;
     }
 }
@@ -1,676 +1,597 @@
 package com.davixdevelop.worldshifter.model;
 
-import com.davixdevelop.worldshifter.Main;
+import com.davixdevelop.worldshifter.events.ChunkShiftEvent;
+import com.davixdevelop.worldshifter.events.RegionShiftEvent;
+import com.davixdevelop.worldshifter.tasks.ShiftChunksTask;
 import com.davixdevelop.worldshifter.utils.EntityUtils;
+import com.davixdevelop.worldshifter.utils.HeightmapCodec;
 import com.davixdevelop.worldshifter.utils.LogUtils;
+import com.davixdevelop.worldshifter.utils.RunStats;
 import com.davixdevelop.worldshifter.utils.Utils;
-import io.github.ensgijs.nbt.mca.SectionBase;
 import io.github.ensgijs.nbt.mca.TerrainChunk;
-import io.github.ensgijs.nbt.mca.TerrainSection;
 import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
 import io.github.ensgijs.nbt.tag.*;
 
 import java.io.File;
-import java.io.IOException;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_18_0;
 import static io.github.ensgijs.nbt.mca.DataVersion.JAVA_1_18_21W43A;
 
 public class MultiTerrainRegion extends MultiRegion<TerrainChunk> {
+    /**
+     * Tags that are left out of the skeleton chunks, as they are re-added by the shift
+     */
+    private static final Set<String> SKELETON_EXCLUDED_TAGS = Set.of("sections", "Sections", "Entities", "TileEntities", "block_entities");
+
     private final int sectionOffsetY;
     private final AtomicInteger excludedSections;
     private final AtomicInteger removedEntities;
+    private final ForkJoinPool chunkPool;
+    private final Map<Integer, SectionRoutingPlan> routingPlans = new ConcurrentHashMap<>();
 
-    public MultiTerrainRegion(File sourceRegionFile, Integer targetWorldMin, Integer targetWorldMax, int offsetY, int sectionOffsetY, File outputFolder, boolean isMultiWorld, AtomicInteger emptySections, AtomicInteger removedEntities) {
+    /**
+     * Create a multi terrain region
+     * @param chunkPool The work-stealing pool to process the chunks of the region in parallel. If null the chunks are processed sequentially
+     */
+    public MultiTerrainRegion(File sourceRegionFile, Integer targetWorldMin, Integer targetWorldMax, int offsetY, int sectionOffsetY, File outputFolder, boolean isMultiWorld, AtomicInteger emptySections, AtomicInteger removedEntities, ForkJoinPool chunkPool) {
         super(sourceRegionFile, outputFolder, "region", isMultiWorld, targetWorldMin, targetWorldMax, offsetY);
         this.sectionOffsetY = sectionOffsetY;
         this.excludedSections = emptySections;
         this.removedEntities = removedEntities;
+        this.chunkPool = chunkPool;
     }
 
     @Override
     public void shiftRegion() throws Exception {
-        int dataVersion = 0;
-        WorldHeight targetWorldHeight = null;
+        RegionShiftEvent event = new RegionShiftEvent();
+        event.begin();
+
+        if(chunkPool != null) {
+            //Fan out the chunks of the region over the work-stealing pool
+            chunkPool.invoke(new ShiftChunksTask(this, 0, 1024));
+        } else
+            shiftChunks(0, 1024);
+
+        //Flush the world slices region files
+        flushRegions(chunkPool);
+
+        if(event.shouldCommit()) {
+            event.regionFile = sourceRegionFile.getPath();
+            event.regionType = subFolder;
+            event.worldSliceCount = getWorldSlicesCount();
+            event.commit();
+        }
+    }
 
+    /**
+     * Shift and slice the chunks in the range of chunk indices. Each call opens its own read handle
+     * to the source region file, so that ranges can be processed concurrently
+     * @param fromIndex The first chunk index (inclusive)
+     * @param toIndex The last chunk index (exclusive)
+     * @throws Exception If an exception happened while shifting the chunks
+     */
+    public void shiftChunks(int fromIndex, int toIndex) throws Exception {
         try (RandomAccessMcaFile<TerrainChunk> regionMCA = new RandomAccessMcaFile<>(TerrainChunk.class, sourceRegionFile, "r")) {
             regionMCA.touch();
-            ChunkPos chunkPos = null;
+            int previousIndex = -1;
 
-            for (int index = 0; index < 1024; index++) {
+            for (int index = fromIndex; index < toIndex; index++) {
                 TerrainChunk chunk = null;
 
                 try {
-                    if (!regionMCA.hasChunk(index)) {
-                        emptyChunks.add(index);
+                    if (!regionMCA.hasChunk(index))
                         continue;
-                    }
 
+                    long readStart = System.nanoTime();
                     chunk = regionMCA.read(index);
+                    RunStats.record(RunStats.Stage.READ, readStart);
                 } catch (Exception ex) {
-                    LogUtils.logError("Error while reading next chunk at index:" + index + " " + ((chunkPos != null) ? "(Previous was " + chunkPos.toString() +  ")" : ""), sourceRegionFile, ex);
+                    LogUtils.logError("Error while reading next chunk at index:" + index + " " + ((previousIndex >= 0) ? "(Previous was index:" + previousIndex +  ")" : ""), sourceRegionFile, ex);
+                    markFailed();
                     continue;
                 }
 
-                if (chunk == null) {
-                    emptyChunks.add(index);
+                if (chunk == null)
                     continue;
-                }
 
-                chunkPos = new ChunkPos(chunk.getChunkX(), chunk.getChunkZ());
+                previousIndex = index;
 
-                if (dataVersion != chunk.getDataVersion() || targetWorldHeight == null) {
-                    dataVersion = chunk.getDataVersion();
-                    targetWorldHeight = Main.WORLDS_HEIGHTS.get().get(dataVersion);
-
-                    if (dataVersion >= JAVA_1_18_0.id() && targetWorldMin != null && targetWorldMax != null && targetWorldMin >= -2032 && targetWorldMax <= 2032) {
-                        targetWorldHeight = new WorldHeight(targetWorldMin, targetWorldMax);
-                    }
-                }
-
-
-
-                Integer minChunkWorldIndex = null;
-                Integer maxChunkWorldIndex = null;
-
-                ListTag<CompoundTag> entities = chunk.getEntities();
-                TreeMap<Integer, ListTag<CompoundTag>> entitiesPerWorldIndex = new TreeMap<>();
-
-                if (entities != null && !entities.isEmpty()) {
-                    entitiesPerWorldIndex = EntityUtils.offsetEntities(entities, offsetY, dataVersion, targetWorldHeight, removedEntities, isMultiWorld);
-
-                    if(entitiesPerWorldIndex.isEmpty()) {
-                        minChunkWorldIndex = entitiesPerWorldIndex.firstKey();
-                        maxChunkWorldIndex = entitiesPerWorldIndex.lastKey();
-                    }
-                }
-
-                ListTag<CompoundTag> tileEntities = chunk.getTileEntities();
-                TreeMap<Integer, ListTag<CompoundTag>> tileEntitiesPerWorldIndex = new TreeMap<>();
-
-                if (tileEntities != null && !tileEntities.isEmpty()) {
-                     tileEntitiesPerWorldIndex = EntityUtils.offsetEntities(tileEntities, offsetY, dataVersion, targetWorldHeight, removedEntities, isMultiWorld);
-
-                     if(!tileEntitiesPerWorldIndex.isEmpty()) {
-                         if (minChunkWorldIndex == null || minChunkWorldIndex > tileEntitiesPerWorldIndex.firstKey())
-                             minChunkWorldIndex = tileEntitiesPerWorldIndex.firstKey();
-                         if (maxChunkWorldIndex == null || maxChunkWorldIndex < tileEntitiesPerWorldIndex.lastKey())
-                             maxChunkWorldIndex = tileEntitiesPerWorldIndex.lastKey();
-                     }
+                long transformStart = System.nanoTime();
+                try {
+                    shiftChunk(chunk);
+                } catch (Exception ex) {
+                    //Only drop this chunk, and its partially shifted world slices chunks, instead of the rest of the range
+                    LogUtils.logError("Error while shifting chunk at index:" + index, sourceRegionFile, ex);
+                    markFailed();
+                    takeChunks(index);
+                    continue;
                 }
+                RunStats.record(RunStats.Stage.TRANSFORM, transformStart);
 
-                TreeMap<Integer, TreeMap<Integer, TerrainSection>> terrainSectionsPerWorld = new TreeMap<>();
+                if(isStreamingFlush())
+                    flushChunks(index);
+            }
+        }
+    }
 
-                int minSectionY = chunk.getMinSectionY();
-                int maxSectionY = chunk.getMaxSectionY(); //inclusive
+    @Override
+    public void shiftChunk(TerrainChunk chunk) throws Exception {
+        ChunkShiftEvent event = new ChunkShiftEvent();
+        event.begin();
+        SHIFTED_CHUNKS.increment();
+        int chunkIndex = ChunkPos.getLocalIndex(chunk.getChunkX(), chunk.getChunkZ());
+        int dataVersion = chunk.getDataVersion();
+        SectionRoutingPlan routingPlan = getRoutingPlan(dataVersion);
+        WorldHeight targetWorldHeight = routingPlan.getTargetWorldHeight();
+
+        Integer minChunkWorldIndex = null;
+        Integer maxChunkWorldIndex = null;
+
+        ListTag<CompoundTag> entities = chunk.getEntities();
+        TreeMap<Integer, ListTag<CompoundTag>> entitiesPerWorldIndex = new TreeMap<>();
+
+        if (entities != null && !entities.isEmpty()) {
+            entitiesPerWorldIndex = EntityUtils.offsetEntities(entities, offsetY, dataVersion, targetWorldHeight, removedEntities, isMultiWorld);
+
+            if(entitiesPerWorldIndex.isEmpty()) {
+                minChunkWorldIndex = entitiesPerWorldIndex.firstKey();
+                maxChunkWorldIndex = entitiesPerWorldIndex.lastKey();
+            }
+        }
 
-                //Offset sections
-                if (chunk.hasSections()) {
-                    for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
-                        TerrainSection terrainSection = chunk.getSection(sectionY);
-                        int newSectionY = sectionY + sectionOffsetY;
-                        int worldIndex = targetWorldHeight.getWorldIndexFromSection(newSectionY);
+        ListTag<CompoundTag> tileEntities = chunk.getTileEntities();
+        TreeMap<Integer, ListTag<CompoundTag>> tileEntitiesPerWorldIndex = new TreeMap<>();
 
-                        //Check if it lies into the world or if multi world is enabled
-                        if (isMultiWorld || worldIndex == 0) {
-                            //Make the section pos fit into the world height if world index differs from 0
-                            if (worldIndex != 0)
-                                newSectionY = targetWorldHeight.calcSectionOffset(worldIndex, newSectionY);
+        if (tileEntities != null && !tileEntities.isEmpty()) {
+             tileEntitiesPerWorldIndex = EntityUtils.offsetEntities(tileEntities, offsetY, dataVersion, targetWorldHeight, removedEntities, isMultiWorld);
 
-                            terrainSectionsPerWorld.computeIfAbsent(worldIndex, ind -> new TreeMap<>())
-                                    .put(newSectionY, terrainSection);
-                        } else
-                            excludedSections.incrementAndGet();
-                    }
+             if(!tileEntitiesPerWorldIndex.isEmpty()) {
+                 if (minChunkWorldIndex == null || minChunkWorldIndex > tileEntitiesPerWorldIndex.firstKey())
+                     minChunkWorldIndex = tileEntitiesPerWorldIndex.firstKey();
+                 if (maxChunkWorldIndex == null || maxChunkWorldIndex < tileEntitiesPerWorldIndex.lastKey())
+                     maxChunkWorldIndex = tileEntitiesPerWorldIndex.lastKey();
+             }
+        }
 
-                    if(!terrainSectionsPerWorld.isEmpty()) {
-                        if (minChunkWorldIndex == null || minChunkWorldIndex > terrainSectionsPerWorld.firstKey())
-                            minChunkWorldIndex = terrainSectionsPerWorld.firstKey();
-                        if (maxChunkWorldIndex == null || maxChunkWorldIndex < terrainSectionsPerWorld.lastKey())
-                            maxChunkWorldIndex = terrainSectionsPerWorld.lastKey();
-                    }
+        int minSectionY = chunk.getMinSectionY();
+        int maxSectionY = chunk.getMaxSectionY(); //inclusive
+
+        //Offset sections. The sections are routed to the world slices by the routing plan,
+        //so only the range of the world indices they end up in is needed here
+        boolean hasRoutedSections = chunk.hasSections() && routingPlan.hasIncluded(minSectionY, maxSectionY);
+        if (chunk.hasSections()) {
+            for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                //Check if it lies into the world or if multi world is enabled
+                if (!routingPlan.isIncluded(sectionY))
+                    excludedSections.incrementAndGet();
+            }
 
-                }
+            if(hasRoutedSections) {
+                if (minChunkWorldIndex == null || minChunkWorldIndex > routingPlan.getMinWorldIndex(minSectionY))
+                    minChunkWorldIndex = routingPlan.getMinWorldIndex(minSectionY);
+                if (maxChunkWorldIndex == null || maxChunkWorldIndex < routingPlan.getMaxWorldIndex(maxSectionY))
+                    maxChunkWorldIndex = routingPlan.getMaxWorldIndex(maxSectionY);
+            }
 
-                CompoundTag blendingData = chunk.getBlendingData();
-                CompoundTag upgradeData = chunk.getUpgradeData();
+        }
 
-                Integer blendingMinSection = null;
-                Integer blendingMaxSection = null;
-                if(blendingData != null) {
-                    blendingMinSection = blendingData.getInt("min_section");
-                    blendingMaxSection = blendingData.getInt("max_section");
-                }
+        CompoundTag blendingData = chunk.getBlendingData();
+        CompoundTag upgradeData = chunk.getUpgradeData();
 
-                if(blendingMinSection == null)
-                    blendingMinSection = minSectionY;
+        Integer blendingMinSection = null;
+        Integer blendingMaxSection = null;
+        if(blendingData != null) {
+            blendingMinSection = blendingData.getInt("min_section");
+            blendingMaxSection = blendingData.getInt("max_section");
+        }
 
-                boolean isLegacyClassic = blendingData == null && dataVersion < JAVA_1_18_21W43A.id();
+        if(blendingMinSection == null)
+            blendingMinSection = minSectionY;
 
-                //Offset legacy heightmap
-                IntArrayTag legacyHeightMap = chunk.getLegacyHeightMap();
-                //Array to store the offset heights map per world index
-                //When multi world is disabled, this array is clipped to the target world height
-                int[] offsetLegacyHeightMap = new int[256];
+        boolean isLegacyClassic = blendingData == null && dataVersion < JAVA_1_18_21W43A.id();
 
-                if(legacyHeightMap != null) {
-                    int[] heights = legacyHeightMap.getValue();
-                    if(Arrays.stream(heights).min().isPresent()) {
+        HeightmapCodec heightmapCodec = HeightmapCodec.get();
 
-                        if (isMultiWorld) {
-                            //Offset the legacy heightmap
-                            offsetLegacyHeightMap = Arrays.stream(heights).flatMap(h -> IntStream.of(h + offsetY)).toArray();
+        //Offset legacy heightmap
+        //The legacy heightmap is shifted, and clipped to the target world height when multi world is disabled, per world index
+        IntArrayTag legacyHeightMap = chunk.getLegacyHeightMap();
+        if(legacyHeightMap != null && heightmapCodec.scan(legacyHeightMap.getValue())) {
+            int minOffsetHeight = heightmapCodec.getMin() + offsetY;
+            int maxOffsetHeight = heightmapCodec.getMax() + offsetY;
+            if(!isMultiWorld) {
+                //Clipping keeps the order of the heights, so the min and max heights can be clipped on their own
+                minOffsetHeight = HeightmapCodec.sliceHeight(minOffsetHeight, targetWorldHeight, 0, false);
+                maxOffsetHeight = HeightmapCodec.sliceHeight(maxOffsetHeight, targetWorldHeight, 0, false);
+            }
 
-                        } else {
-                            WorldHeight finalTargetWorldHeight = targetWorldHeight;
-                            //Offset and clip the legacy height map to the target world height
-                            offsetLegacyHeightMap = Arrays.stream(heights).flatMap(h -> IntStream.of(Math.min(Math.max(h + offsetY, finalTargetWorldHeight.getMinHeight()), finalTargetWorldHeight.getMaxHeight() - 1))).toArray();
-                        }
+            int minOffsetHeightMapWorldIndex = targetWorldHeight.getWorldIndexFromY(minOffsetHeight);
+            int maxOffsetHeightMapWorldIndex = targetWorldHeight.getWorldIndexFromY(maxOffsetHeight);
 
-                        OptionalInt min = Arrays.stream(offsetLegacyHeightMap).min();
-                        if(min.isPresent()) {
-                            int minOffsetHeightMapWorldIndex = targetWorldHeight.getWorldIndexFromY(min.getAsInt());
-                            int maxOffsetHeightMapWorldIndex = targetWorldHeight.getWorldIndexFromY(Arrays.stream(offsetLegacyHeightMap).max().getAsInt());
+            if(minChunkWorldIndex == null || minChunkWorldIndex > minOffsetHeightMapWorldIndex)
+                minChunkWorldIndex = minOffsetHeightMapWorldIndex;
+            if(maxChunkWorldIndex == null || maxChunkWorldIndex < maxOffsetHeightMapWorldIndex)
+                maxChunkWorldIndex = maxOffsetHeightMapWorldIndex;
+        }
 
-                            if(minChunkWorldIndex == null || minChunkWorldIndex > minOffsetHeightMapWorldIndex)
-                                minChunkWorldIndex = minOffsetHeightMapWorldIndex;
-                            if(maxChunkWorldIndex == null || maxChunkWorldIndex < maxOffsetHeightMapWorldIndex)
-                                maxChunkWorldIndex = maxOffsetHeightMapWorldIndex;
-                        }
-                    }
-                }
+        CompoundTag heightMapsTag = chunk.getHeightMaps();
+        //The keys of the heightmaps, that aren't excluded
+        List<String> heightMaps = new ArrayList<>();
+        int sourceMinHeight = chunk.getChunkY() * 16;
+        if(heightMapsTag != null) {
+            for(String key : heightMapsTag.keySet()) {
+                //If a height is bellow the min source world height, exclude the height map
+                if(!heightmapCodec.scan(heightMapsTag.getLongArrayTag(key).getValue(), 9, sourceMinHeight))
+                    continue;
 
-                CompoundTag heightMapsTag = chunk.getHeightMaps();
-                TreeMap<String, int[]> heightMaps = new TreeMap<>();
-                if(heightMapsTag != null) {
-                    int chunkYPosBlock = chunk.getChunkY() * 16;
-
-                    for(String key : heightMapsTag.keySet()) {
-                        LongArrayTag tag = heightMapsTag.getLongArrayTag(key);
-                        int[] decoded = Utils.decodeDataLongArray(tag.getValue(), 9);
-
-                        int[] heights = new int[256];
-                        Integer min = null;
-                        Integer max = null;
-                        boolean isEmpty = false;
-                        for(int i = 0; i < 256; i++) {
-                            final int h = chunkYPosBlock - 1 + decoded[i];
-
-                            //If a height is bellow the min source world height, exclude the height map
-                            if(h < chunkYPosBlock) {
-                                isEmpty = true;
-                                break;
-                            }
-
-                            if(min == null) {
-                                min = h;
-                                max = h;
-                            } else {
-                                if(h < min)
-                                    min = h;
-                                else if(h > max)
-                                    max = h;
-                            }
-                            heights[i] = h;
-                        }
+                int min = targetWorldHeight.getWorldIndexFromY(heightmapCodec.getMin() + offsetY);
+                int max = targetWorldHeight.getWorldIndexFromY(heightmapCodec.getMax() + offsetY);
 
-                        if(isEmpty)
-                            continue;
+                if(minChunkWorldIndex == null || minChunkWorldIndex > min)
+                    minChunkWorldIndex = min;
 
-                        min = targetWorldHeight.getWorldIndexFromY(min + offsetY);
-                        max = targetWorldHeight.getWorldIndexFromY(max + offsetY);
+                else if(maxChunkWorldIndex == null || maxChunkWorldIndex < max)
+                    maxChunkWorldIndex = max;
 
-                        if(minChunkWorldIndex == null || minChunkWorldIndex > min)
-                            minChunkWorldIndex = min;
+                heightMaps.add(key);
+            }
+        }
 
-                        else if(maxChunkWorldIndex == null || maxChunkWorldIndex < max)
-                            maxChunkWorldIndex = max;
+        ListTag<ListTag<?>> postProcessing = chunk.getPostProcessing();
+        if(postProcessing != null && !postProcessing.isEmpty() && routingPlan.hasIncluded(chunk.getChunkY(), chunk.getChunkY() + postProcessing.size() - 1)) {
+            if (minChunkWorldIndex == null || minChunkWorldIndex > routingPlan.getMinWorldIndex(chunk.getChunkY()))
+                minChunkWorldIndex = routingPlan.getMinWorldIndex(chunk.getChunkY());
 
-                        heightMaps.put(key, heights);
-                    }
-                }
+            if (maxChunkWorldIndex == null || maxChunkWorldIndex < routingPlan.getMaxWorldIndex(chunk.getChunkY() + postProcessing.size() - 1))
+                maxChunkWorldIndex = routingPlan.getMaxWorldIndex(chunk.getChunkY() + postProcessing.size() - 1);
+        }
 
-                TreeMap<Integer, TreeMap<Integer, ListTag<?>>> postProcessingPerWorldIndex = new TreeMap<>();
-                ListTag<ListTag<?>> postProcessing = chunk.getPostProcessing();
-                if(postProcessing != null && !postProcessing.isEmpty()) {
-                    postProcessingPerWorldIndex = offsetToBeTickedFormat(postProcessing, chunk.getChunkY(), targetWorldHeight);
+        ListTag<ListTag<?>> toBeTicked = chunk.getToBeTicked();
+        if(toBeTicked != null && !toBeTicked.isEmpty() && routingPlan.hasIncluded(chunk.getChunkY(), chunk.getChunkY() + toBeTicked.size() - 1)) {
+            if (minChunkWorldIndex == null || minChunkWorldIndex > routingPlan.getMinWorldIndex(chunk.getChunkY()))
+                minChunkWorldIndex = routingPlan.getMinWorldIndex(chunk.getChunkY());
 
-                    if(!postProcessingPerWorldIndex.isEmpty()) {
-                        if (minChunkWorldIndex == null || minChunkWorldIndex > postProcessingPerWorldIndex.firstKey())
-                            minChunkWorldIndex = postProcessingPerWorldIndex.firstKey();
+            if (maxChunkWorldIndex == null || maxChunkWorldIndex < routingPlan.getMaxWorldIndex(chunk.getChunkY() + toBeTicked.size() - 1))
+                maxChunkWorldIndex = routingPlan.getMaxWorldIndex(chunk.getChunkY() + toBeTicked.size() - 1);
+        }
 
-                        if (maxChunkWorldIndex == null || maxChunkWorldIndex < postProcessingPerWorldIndex.lastKey())
-                            maxChunkWorldIndex = postProcessingPerWorldIndex.lastKey();
-                    }
-                }
+        ListTag<ListTag<?>> liquidsToBeTicked = chunk.getLiquidsToBeTicked();
+        if(liquidsToBeTicked != null && !liquidsToBeTicked.isEmpty() && routingPlan.hasIncluded(chunk.getChunkY(), chunk.getChunkY() + liquidsToBeTicked.size() - 1)) {
+            if (minChunkWorldIndex == null || minChunkWorldIndex > routingPlan.getMinWorldIndex(chunk.getChunkY()))
+                minChunkWorldIndex = routingPlan.getMinWorldIndex(chunk.getChunkY());
 
-                TreeMap<Integer, TreeMap<Integer, ListTag<?>>> toBeTickedPerWorldIndex = new TreeMap<>();
-                ListTag<ListTag<?>> toBeTicked = chunk.getToBeTicked();
-                if(toBeTicked != null && !toBeTicked.isEmpty()) {
-                    toBeTickedPerWorldIndex = offsetToBeTickedFormat(toBeTicked, chunk.getChunkY(), targetWorldHeight);
+            if (maxChunkWorldIndex == null || maxChunkWorldIndex < routingPlan.getMaxWorldIndex(chunk.getChunkY() + liquidsToBeTicked.size() - 1))
+                maxChunkWorldIndex = routingPlan.getMaxWorldIndex(chunk.getChunkY() + liquidsToBeTicked.size() - 1);
+        }
 
-                    if(!toBeTickedPerWorldIndex.isEmpty()) {
-                        if (minChunkWorldIndex == null || minChunkWorldIndex > toBeTickedPerWorldIndex.firstKey())
-                            minChunkWorldIndex = toBeTickedPerWorldIndex.firstKey();
+        ListTag<CompoundTag> tileTicks = chunk.getTileTicks();
+        TreeMap<Integer, ListTag<CompoundTag>> tileTicksPerWorldIndex = new TreeMap<>();
+        if(tileTicks != null && !tileTicks.isEmpty()) {
+            tileTicksPerWorldIndex = offsetTileTickFormat(tileTicks, targetWorldHeight);
 
-                        if (maxChunkWorldIndex == null || maxChunkWorldIndex < toBeTickedPerWorldIndex.lastKey())
-                            maxChunkWorldIndex = toBeTickedPerWorldIndex.lastKey();
-                    }
-                }
+            if(!tileTicksPerWorldIndex.isEmpty()) {
+                if (minChunkWorldIndex == null || minChunkWorldIndex > tileTicksPerWorldIndex.firstKey())
+                    minChunkWorldIndex = tileTicksPerWorldIndex.firstKey();
 
-                TreeMap<Integer, TreeMap<Integer, ListTag<?>>> liquidsToBeTickedPerWorldIndex = new TreeMap<>();
-                ListTag<ListTag<?>> liquidsToBeTicked = chunk.getLiquidsToBeTicked();
-                if(liquidsToBeTicked != null && !liquidsToBeTicked.isEmpty()) {
-                    liquidsToBeTickedPerWorldIndex = offsetToBeTickedFormat(liquidsToBeTicked, chunk.getChunkY(), targetWorldHeight);
+                if (maxChunkWorldIndex == null || maxChunkWorldIndex < tileTicksPerWorldIndex.lastKey())
+                    maxChunkWorldIndex = tileTicksPerWorldIndex.lastKey();
+            }
+        }
 
-                    if(!liquidsToBeTickedPerWorldIndex.isEmpty()) {
-                        if (minChunkWorldIndex == null || minChunkWorldIndex > liquidsToBeTickedPerWorldIndex.firstKey())
-                            minChunkWorldIndex = liquidsToBeTickedPerWorldIndex.firstKey();
+        ListTag<CompoundTag> liquidTicks = chunk.getLiquidTicks();
+        TreeMap<Integer, ListTag<CompoundTag>> liquidTicksPerWorldIndex = new TreeMap<>();
+        if(liquidTicks != null && !liquidTicks.isEmpty()) {
+            liquidTicksPerWorldIndex = offsetTileTickFormat(liquidTicks, targetWorldHeight);
 
-                        if (maxChunkWorldIndex == null || maxChunkWorldIndex < liquidsToBeTickedPerWorldIndex.lastKey())
-                            maxChunkWorldIndex = liquidsToBeTickedPerWorldIndex.lastKey();
-                    }
-                }
+            if(!liquidTicksPerWorldIndex.isEmpty()) {
+                if (minChunkWorldIndex == null || minChunkWorldIndex > liquidTicksPerWorldIndex.firstKey())
+                    minChunkWorldIndex = liquidTicksPerWorldIndex.firstKey();
 
-                ListTag<CompoundTag> tileTicks = chunk.getTileTicks();
-                TreeMap<Integer, ListTag<CompoundTag>> tileTicksPerWorldIndex = new TreeMap<>();
-                if(tileTicks != null && !tileTicks.isEmpty()) {
-                    tileTicksPerWorldIndex = offsetTileTickFormat(tileTicks, targetWorldHeight);
+                if (maxChunkWorldIndex == null || maxChunkWorldIndex < liquidTicksPerWorldIndex.lastKey())
+                    maxChunkWorldIndex = liquidTicksPerWorldIndex.lastKey();
+            }
+        }
 
-                    if(!tileTicksPerWorldIndex.isEmpty()) {
-                        if (minChunkWorldIndex == null || minChunkWorldIndex > tileTicksPerWorldIndex.firstKey())
-                            minChunkWorldIndex = tileTicksPerWorldIndex.firstKey();
 
-                        if (maxChunkWorldIndex == null || maxChunkWorldIndex < tileTicksPerWorldIndex.lastKey())
-                            maxChunkWorldIndex = tileTicksPerWorldIndex.lastKey();
-                    }
-                }
+        if(minChunkWorldIndex == null || maxChunkWorldIndex == null) {
+            commitChunkEvent(event, chunk, chunkIndex, -1, -1);
+            return;
+        }
 
-                ListTag<CompoundTag> liquidTicks = chunk.getLiquidTicks();
-                TreeMap<Integer, ListTag<CompoundTag>> liquidTicksPerWorldIndex = new TreeMap<>();
-                if(liquidTicks != null && !liquidTicks.isEmpty()) {
-                    liquidTicksPerWorldIndex = offsetTileTickFormat(liquidTicks, targetWorldHeight);
+        if(!isMultiWorld) {
+            //If multi world is disabled, always choose the world index 0
+            //This is so that each chunk in each region in the target corresponds to the same world index
+            minChunkWorldIndex = 0;
+            maxChunkWorldIndex = 0;
+        }
 
-                    if(!liquidTicksPerWorldIndex.isEmpty()) {
-                        if (minChunkWorldIndex == null || minChunkWorldIndex > liquidTicksPerWorldIndex.firstKey())
-                            minChunkWorldIndex = liquidTicksPerWorldIndex.firstKey();
+        for(int worldIndex = minChunkWorldIndex; worldIndex <= maxChunkWorldIndex; worldIndex++) {
+            TerrainChunk indexChunk = getChunk(chunkIndex, worldIndex, chunk);
 
-                        if (maxChunkWorldIndex == null || maxChunkWorldIndex < liquidTicksPerWorldIndex.lastKey())
-                            maxChunkWorldIndex = liquidTicksPerWorldIndex.lastKey();
-                    }
-                }
+            if(indexChunk == null)
+                continue;
 
+            if(entitiesPerWorldIndex.containsKey(worldIndex)) {
+                ListTag<CompoundTag> ent = entitiesPerWorldIndex.get(worldIndex);
+                indexChunk.setEntities(ent);
+            }
 
-                if(minChunkWorldIndex == null || maxChunkWorldIndex == null)
-                    continue;
+            if(tileEntitiesPerWorldIndex.containsKey(worldIndex)) {
+                ListTag<CompoundTag> tent = tileEntitiesPerWorldIndex.get(worldIndex);
+                indexChunk.setTileEntities(tent);
+            }
 
-                if(!isMultiWorld) {
-                    //If multi world is disabled, always choose the world index 0
-                    //This is so that each chunk in each region in the target corresponds to the same world index
-                    minChunkWorldIndex = 0;
-                    maxChunkWorldIndex = 0;
+            //The routed sections span all the world indices from the min to the max world index of the sections
+            if(hasRoutedSections && worldIndex >= routingPlan.getMinWorldIndex(minSectionY) && worldIndex <= routingPlan.getMaxWorldIndex(maxSectionY)) {
+                for (int sectionY = minSectionY; sectionY <= maxSectionY; sectionY++) {
+                    if(routingPlan.isIncluded(sectionY) && routingPlan.getWorldIndex(sectionY) == worldIndex)
+                        indexChunk.setSection(routingPlan.getTargetSectionY(sectionY), chunk.getSection(sectionY));
                 }
 
-                for(int worldIndex = minChunkWorldIndex; worldIndex <= maxChunkWorldIndex; worldIndex++) {
-                    TerrainChunk indexChunk = getChunk(chunkPos, worldIndex);
-
-                    if(indexChunk == null)
-                        continue;
-
-                    if(entitiesPerWorldIndex.containsKey(worldIndex)) {
-                        ListTag<CompoundTag> ent = entitiesPerWorldIndex.get(worldIndex);
-                        indexChunk.setEntities(ent);
-                    }
-
-                    if(tileEntitiesPerWorldIndex.containsKey(worldIndex)) {
-                        ListTag<CompoundTag> tent = tileEntitiesPerWorldIndex.get(worldIndex);
-                        indexChunk.setTileEntities(tent);
-                    }
+                if (upgradeData != null && upgradeData.containsKey("Indices")) {
+                    CompoundTag indexUpgradeData = indexChunk.getUpgradeData();
 
-                    if(terrainSectionsPerWorld.containsKey(worldIndex)) {
-                        TreeMap<Integer, TerrainSection> sections = terrainSectionsPerWorld.get(worldIndex);
+                    CompoundTag indices = indexUpgradeData.getCompoundTag("Indices");
+                    CompoundTag newIndices = new CompoundTag();
 
-                        //int indexTerrainMinSectionY = sections.firstKey();
+                    for (String key : indices.keySet()) {
+                        int indY = Integer.parseInt(key);
 
-                        for (Integer y : sections.keySet()) {
-                            indexChunk.setSection(y, sections.get(y));
+                        int sourceSectionY = (blendingMinSection != null ? blendingMinSection : minSectionY) + indY;
+                        //Only treat key of indice as absolute section y if blending data is not present
+                        // and the version is less than 1.18
+                        if (isLegacyClassic) {
+                            sourceSectionY = indY;
                         }
 
-                        if (upgradeData != null && upgradeData.containsKey("Indices")) {
-                            CompoundTag indexUpgradeData = indexChunk.getUpgradeData();
-
-                            CompoundTag indices = indexUpgradeData.getCompoundTag("Indices");
-                            CompoundTag newIndices = new CompoundTag();
-
-                            for (String key : indices.keySet()) {
-                                int indY = Integer.parseInt(key);
+                        //Only include indices that fit into the current world index
+                        // and multi world is enabled or current world index is 0
+                        if(routingPlan.isIncluded(sourceSectionY) && routingPlan.getWorldIndex(sourceSectionY) == worldIndex) {
 
-                                int newSectionY = ((blendingMinSection != null ? blendingMinSection : minSectionY) + indY) + sectionOffsetY;
-                                //Only treat key of indice as absolute section y if blending data is not present
-                                // and the version is less than 1.18
-                                if (isLegacyClassic) {
-                                    newSectionY = indY + sectionOffsetY;
-                                }
+                            //The section pos fit into the world height of the world index
+                            int newSectionY = routingPlan.getTargetSectionY(sourceSectionY);
 
-                                int newWorldIndex = targetWorldHeight.getWorldIndexFromSection(newSectionY);
 
-                                //Only include indices that fit into the current world index
-                                // and multi world is enabled or current world index is 0
-                                if(newWorldIndex == worldIndex && (isMultiWorld || worldIndex == 0)) {
+                            //int newIndY = (isLegacyClassic) ? newSectionY : newSectionY - indexTerrainMinSectionY;
+                            int newIndY = (isLegacyClassic) ? newSectionY : newSectionY - targetWorldHeight.getFirstSection();
 
-                                    //Make the section pos fit into the world height if world index differs from 0
-                                    if (worldIndex != 0)
-                                        newSectionY = targetWorldHeight.calcSectionOffset(worldIndex, newSectionY);
-
-
-                                    //int newIndY = (isLegacyClassic) ? newSectionY : newSectionY - indexTerrainMinSectionY;
-                                    int newIndY = (isLegacyClassic) ? newSectionY : newSectionY - targetWorldHeight.getFirstSection();
-
-                                    //Add the new indices at the new key using the old indice value
-                                    newIndices.putIntArray(String.valueOf(newIndY), indices.getIntArray(key));
-                                }
-                            }
-
-                            //Re-add the new indices
-                            indexUpgradeData.put("Indices", newIndices);
-                            indexChunk.setUpgradeData(indexUpgradeData);
-                        }
-                    } else {
-                        //If the current world index has no sections, but the source chunk has
-                        // upgrade data, make sure to reset them
-
-                        if(upgradeData != null && upgradeData.containsKey("Indices")) {
-                            CompoundTag indexUpgradeData = indexChunk.getUpgradeData();
-                            indexUpgradeData.clear();
-                            indexChunk.setUpgradeData(indexUpgradeData);
-                        }
-                    }
-
-                    if (blendingData != null) {
-                        CompoundTag indexBlendingData = indexChunk.getBlendingData();
-                        int indexBlendingMaxSection = blendingMaxSection + sectionOffsetY;
-                        int indexBlendingMinSection = blendingMinSection + sectionOffsetY;
-
-
-                        int indexBlendMaxWI = targetWorldHeight.getWorldIndexFromSection(indexBlendingMaxSection);
-                        int indexBlendMinWI = targetWorldHeight.getWorldIndexFromSection(indexBlendingMinSection);
-
-                        //Only set the blending data, if the current world index fits into
-                        //the blending  data min anx max world index
-                        if(worldIndex >= indexBlendMinWI && worldIndex <= indexBlendMaxWI) {
-                            if (indexBlendMaxWI == worldIndex) {
-                                if (worldIndex != 0)
-                                    indexBlendingMaxSection = targetWorldHeight.calcSectionOffset(indexBlendMaxWI, indexBlendingMaxSection);
-                            } else if (indexBlendMaxWI > worldIndex) {
-                                indexBlendingMaxSection = targetWorldHeight.getLastSection() + 1;
-                            }
-
-                            if (indexBlendMinWI == worldIndex) {
-                                if (worldIndex != 0)
-                                    indexBlendingMinSection = targetWorldHeight.calcSectionOffset(indexBlendMinWI, indexBlendingMinSection);
-                            } else if (indexBlendMinWI < worldIndex) {
-                                indexBlendingMinSection = targetWorldHeight.getFirstSection();
-                            }
-
-                            if (indexBlendingData.containsKey("max_section"))
-                                indexBlendingData.putInt("max_section", indexBlendingMaxSection);
-
-                            if (indexBlendingData.containsKey("min_section"))
-                                indexBlendingData.putInt("min_section", indexBlendingMinSection);
-
-                        }else //else clear it
-                            indexBlendingData.clear();
-                    }
-
-                    if(legacyHeightMap != null) {
-                        IntArrayTag indexLegacyHeightMap = indexChunk.getLegacyHeightMap();
-                        int[] indexLegacyHeight = indexLegacyHeightMap.getValue();
-
-                        for(int i = 0; i < offsetLegacyHeightMap.length; i++) {
-                            int h = offsetLegacyHeightMap[i];
-                            int hWorldIndex = targetWorldHeight.getWorldIndexFromY(h);
-                            indexLegacyHeight[i] = isMultiWorld ? ( hWorldIndex == worldIndex ? targetWorldHeight.calcBlockOffset(worldIndex, h) :
-                                    (hWorldIndex < worldIndex ? targetWorldHeight.getMinHeight() : targetWorldHeight.getMaxHeight() - 1)) : h;
+                            //Add the new indices at the new key using the old indice value
+                            newIndices.putIntArray(String.valueOf(newIndY), indices.getIntArray(key));
                         }
-
-                        indexLegacyHeightMap.setValue(indexLegacyHeight);
-                        indexChunk.setLegacyHeightMap(indexLegacyHeightMap);
                     }
 
-                    if(heightMapsTag != null) {
-                        int bits_per_value = 32 - Integer.numberOfLeadingZeros(targetWorldHeight.getWorldHeight() - 1);
-                        int chunkYPosBlock = targetWorldHeight.getMinHeight();
-
-                        CompoundTag indexHeightMaps = indexChunk.getHeightMaps();
-                        int[] decoded = new int[256];
-                        for (String key : heightMaps.keySet()) {
-                            int[] heights = heightMaps.get(key);
-                            for (int i = 0; i < heights.length; i++) {
-                                int h = heights[i] + offsetY;
-                                int hWorldIndex = targetWorldHeight.getWorldIndexFromY(h);
-                                h =  isMultiWorld ? ( hWorldIndex == worldIndex ? targetWorldHeight.calcBlockOffset(worldIndex, h) :
-                                        (hWorldIndex < worldIndex ? chunkYPosBlock : targetWorldHeight.getMaxHeight() - 1)) :
-                                        Math.min(Math.max(h, chunkYPosBlock), targetWorldHeight.getMaxHeight() - 1);
-                                decoded[i] = h  - chunkYPosBlock + 1;
-                            }
-
-
-                            long[] encoded = Utils.encodeDataLongArray(decoded, bits_per_value);
-                            indexHeightMaps.putLongArray(key, encoded);
-                        }
-
-                        indexChunk.setHeightMaps(indexHeightMaps);
-
-                    }
+                    //Re-add the new indices
+                    indexUpgradeData.put("Indices", newIndices);
+                    indexChunk.setUpgradeData(indexUpgradeData);
+                }
+            } else {
+                //If the current world index has no sections, but the source chunk has
+                // upgrade data, make sure to reset them
+
+                if(upgradeData != null && upgradeData.containsKey("Indices")) {
+                    CompoundTag indexUpgradeData = indexChunk.getUpgradeData();
+                    indexUpgradeData.clear();
+                    indexChunk.setUpgradeData(indexUpgradeData);
+                }
+            }
 
-                    if(postProcessing != null || !postProcessing.isEmpty()) {
-                        ListTag<ListTag<?>> indexPostProcessing = indexChunk.getPostProcessing();
+            if (blendingData != null) {
+                CompoundTag indexBlendingData = indexChunk.getBlendingData();
+                int indexBlendingMaxSection = blendingMaxSection + sectionOffsetY;
+                int indexBlendingMinSection = blendingMinSection + sectionOffsetY;
 
-                        if(postProcessingPerWorldIndex.containsKey(worldIndex)) {
-                            TreeMap<Integer, ListTag<?>> newPostProc = postProcessingPerWorldIndex.get(worldIndex);
 
-                            //Create empty section, to use fill it up to the actual min new section
-                            ListTag<?> empty = postProcessing.getFirst().clone();
-                            empty.clear();
-                            //Fill the index post-processing up the new post-processing last segment
-                            updateToBeTickedFormat(indexPostProcessing, newPostProc, empty);
-                            indexChunk.setPostProcessing(indexPostProcessing);
-                        }
-                    }
+                int indexBlendMaxWI = routingPlan.getWorldIndex(blendingMaxSection);
+                int indexBlendMinWI = routingPlan.getWorldIndex(blendingMinSection);
 
-                    if(toBeTicked != null && !toBeTicked.isEmpty() && toBeTickedPerWorldIndex.containsKey(worldIndex)) {
-                        ListTag<ListTag<?>> indexToBeTicked = indexChunk.getToBeTicked();
-                        TreeMap<Integer, ListTag<?>> newToBeTicked = toBeTickedPerWorldIndex.get(worldIndex);
-
-                        //Create empty section, to use fill it up to the actual min new section
-                        ListTag<?> empty = toBeTicked.getFirst().clone();
-                        empty.clear();
-                        //Fill the index to be ticked up to the new to be ticked last segment
-                        updateToBeTickedFormat(indexToBeTicked, newToBeTicked, empty);
-                        indexChunk.setToBeTicked(indexToBeTicked);
+                //Only set the blending data, if the current world index fits into
+                //the blending  data min anx max world index
+                if(worldIndex >= indexBlendMinWI && worldIndex <= indexBlendMaxWI) {
+                    if (indexBlendMaxWI == worldIndex) {
+                        indexBlendingMaxSection = routingPlan.getTargetSectionY(blendingMaxSection);
+                    } else if (indexBlendMaxWI > worldIndex) {
+                        indexBlendingMaxSection = targetWorldHeight.getLastSection() + 1;
                     }
 
-                    if(liquidsToBeTicked != null && !liquidsToBeTicked.isEmpty() && liquidsToBeTickedPerWorldIndex.containsKey(worldIndex)) {
-                        ListTag<ListTag<?>> indexLiquidsToBeTicked = indexChunk.getLiquidsToBeTicked();
-                        TreeMap<Integer, ListTag<?>> newLiquidsToBeTicked = liquidsToBeTickedPerWorldIndex.get(worldIndex);
-
-                        //Create empty section, to use fill it up to the actual min new section
-                        ListTag<?> empty = liquidsToBeTicked.getFirst().clone();
-                        empty.clear();
-                        //Fill the index liquids to be ticked up to the new liquids to be ticked last segment
-                        updateToBeTickedFormat(indexLiquidsToBeTicked, newLiquidsToBeTicked, empty);
-                        indexChunk.setLiquidsToBeTicked(indexLiquidsToBeTicked);
+                    if (indexBlendMinWI == worldIndex) {
+                        indexBlendingMinSection = routingPlan.getTargetSectionY(blendingMinSection);
+                    } else if (indexBlendMinWI < worldIndex) {
+                        indexBlendingMinSection = targetWorldHeight.getFirstSection();
                     }
 
-                    if(tileTicks != null && !tileTicks.isEmpty() && tileTicksPerWorldIndex.containsKey(worldIndex))
-                        indexChunk.setTileTicks(tileTicksPerWorldIndex.get(worldIndex));
+                    if (indexBlendingData.containsKey("max_section"))
+                        indexBlendingData.putInt("max_section", indexBlendingMaxSection);
 
-                    if(liquidTicks != null && !liquidTicks.isEmpty() && liquidTicksPerWorldIndex.containsKey(worldIndex)) {
-                        indexChunk.setLiquidTicks(liquidTicksPerWorldIndex.get(worldIndex));
-                    }
+                    if (indexBlendingData.containsKey("min_section"))
+                        indexBlendingData.putInt("min_section", indexBlendingMinSection);
 
-                    CompoundTag indexChunkHandle = indexChunk.getHandle();
-                    indexChunkHandle.putInt("yPos", targetWorldHeight.getFirstSection());
-                    Field yPosField = indexChunk.getClass().getSuperclass().getDeclaredField("yPos");
-                    yPosField.setAccessible(true);
-                    yPosField.setInt(indexChunk, targetWorldHeight.getFirstSection());
-                    yPosField.setAccessible(false);
-                }
+                }else //else clear it
+                    indexBlendingData.clear();
             }
 
-            //Flush the world slices region files
-            flushRegions();
-        }
-    }
-
-    @Override
-    public RandomAccessMcaFile<TerrainChunk> readMca(File regionFile) throws IOException {
-        RandomAccessMcaFile<TerrainChunk> regionMCA = new RandomAccessMcaFile<>(TerrainChunk.class, regionFile, "rw");
-        regionMCA.touch();
-        return regionMCA;
-    }
-
-    @Override
-    public void clearMca(RandomAccessMcaFile<TerrainChunk> regionMCA) throws IOException {
-        ChunkPos chunkPos = null;
-        int dataVersion = 0;
-        WorldHeight targetWorldHeight = null;
+            if(legacyHeightMap != null) {
+                IntArrayTag indexLegacyHeightMap = indexChunk.getLegacyHeightMap();
+                int[] indexLegacyHeight = indexLegacyHeightMap.getValue();
 
-        for (int index = 0; index < 1024; index++) {
-            TerrainChunk chunk = null;
+                heightmapCodec.slice(legacyHeightMap.getValue(), offsetY, targetWorldHeight, worldIndex, isMultiWorld, indexLegacyHeight);
 
-            try {
-                if (emptyChunks.contains(index) || !regionMCA.hasChunk(index)) {
-                    emptyChunks.add(index);
-                    continue;
-                }
-
-                chunk = regionMCA.read(index);
-            } catch (Exception ex) {
-                LogUtils.logError("Error while reading next chunk at index:" + index + " " + ((chunkPos != null) ? "(Previous was " + chunkPos.toString() +  ")" : "") + "\n File: world-shifted/temp/region/" + sourceRegionFile.getName() , ex);
-                continue;
+                indexLegacyHeightMap.setValue(indexLegacyHeight);
+                indexChunk.setLegacyHeightMap(indexLegacyHeightMap);
             }
 
-            if (chunk == null) {
-                emptyChunks.add(index);
-                continue;
-            }
-
-            chunkPos = new ChunkPos(chunk.getChunkX(), chunk.getChunkZ());
-
+            if(heightMapsTag != null) {
+                CompoundTag indexHeightMaps = indexChunk.getHeightMaps();
+                for (String key : heightMaps) {
+                    //Repack in place into the skeleton copy of the heightmap, if it has the length of the target bit width
+                    LongArrayTag indexHeightMap = indexHeightMaps.getLongArrayTag(key);
+                    long[] encoded = heightmapCodec.repack(heightMapsTag.getLongArrayTag(key).getValue(), 9, sourceMinHeight, offsetY, targetWorldHeight, worldIndex, isMultiWorld,
+                            indexHeightMap != null ? indexHeightMap.getValue() : null);
+                    indexHeightMaps.putLongArray(key, encoded);
+                }
 
-            if (dataVersion != chunk.getDataVersion() || targetWorldHeight == null) {
-                dataVersion = chunk.getDataVersion();
-                targetWorldHeight = Main.WORLDS_HEIGHTS.get().get(dataVersion);
+                indexChunk.setHeightMaps(indexHeightMaps);
 
-                if (dataVersion >= JAVA_1_18_0.id() && targetWorldMin != null && targetWorldMax != null && targetWorldMin >= -2032 && targetWorldMax <= 2032) {
-                    targetWorldHeight = new WorldHeight(targetWorldMin, targetWorldMax);
-                }
             }
 
-            chunk.setTileEntities(ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
-            chunk.setEntities(ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
-            ListTag<ListTag<?>> postProcessing = chunk.getPostProcessing();
             if(postProcessing != null && !postProcessing.isEmpty()) {
-                //Clear the post-processing
-                postProcessing.clear();
-                chunk.setPostProcessing(postProcessing);
+                ListTag<ListTag<?>> indexPostProcessing = indexChunk.getPostProcessing();
+                routeToBeTickedFormat(postProcessing, chunk.getChunkY(), worldIndex, routingPlan, indexPostProcessing);
+                indexChunk.setPostProcessing(indexPostProcessing);
             }
 
-            ListTag<ListTag<?>> toBeTicked = chunk.getToBeTicked();
             if(toBeTicked != null && !toBeTicked.isEmpty()) {
-                //Clear the to be ticked
-                toBeTicked.clear();
-                chunk.setToBeTicked(toBeTicked);
+                ListTag<ListTag<?>> indexToBeTicked = indexChunk.getToBeTicked();
+                routeToBeTickedFormat(toBeTicked, chunk.getChunkY(), worldIndex, routingPlan, indexToBeTicked);
+                indexChunk.setToBeTicked(indexToBeTicked);
             }
 
-            ListTag<ListTag<?>> liquidsToBeTicked = chunk.getLiquidsToBeTicked();
             if(liquidsToBeTicked != null && !liquidsToBeTicked.isEmpty()) {
-                //Clear the liquids to be ticked
-                liquidsToBeTicked.clear();
-                chunk.setLiquidsToBeTicked(liquidsToBeTicked);
+                ListTag<ListTag<?>> indexLiquidsToBeTicked = indexChunk.getLiquidsToBeTicked();
+                routeToBeTickedFormat(liquidsToBeTicked, chunk.getChunkY(), worldIndex, routingPlan, indexLiquidsToBeTicked);
+                indexChunk.setLiquidsToBeTicked(indexLiquidsToBeTicked);
             }
 
-            ListTag<CompoundTag> tileTicks = chunk.getTileTicks();
-            if(tileTicks != null && !tileTicks.isEmpty()) {
-                //Clear the tile ticks
-                tileTicks.clear();
-                chunk.setTileTicks(tileTicks);
-            }
+            if(tileTicks != null && !tileTicks.isEmpty() && tileTicksPerWorldIndex.containsKey(worldIndex))
+                indexChunk.setTileTicks(tileTicksPerWorldIndex.get(worldIndex));
 
-            ListTag<CompoundTag> liquidTicks = chunk.getLiquidTicks();
-            if(liquidTicks != null && !liquidTicks.isEmpty()) {
-                //Clear the liquid ticks
-                liquidTicks.clear();
-                chunk.setLiquidTicks(liquidTicks);
+            if(liquidTicks != null && !liquidTicks.isEmpty() && liquidTicksPerWorldIndex.containsKey(worldIndex)) {
+                indexChunk.setLiquidTicks(liquidTicksPerWorldIndex.get(worldIndex));
             }
 
-            int minY = chunk.getMinSectionY();
-            int maxY = chunk.getMaxSectionY(); //inclusive
+            CompoundTag indexChunkHandle = indexChunk.getHandle();
+            indexChunkHandle.putInt("yPos", targetWorldHeight.getFirstSection());
+            Field yPosField = indexChunk.getClass().getSuperclass().getDeclaredField("yPos");
+            yPosField.setAccessible(true);
+            yPosField.setInt(indexChunk, targetWorldHeight.getFirstSection());
+            yPosField.setAccessible(false);
+        }
 
+        commitChunkEvent(event, chunk, chunkIndex, minChunkWorldIndex, maxChunkWorldIndex);
+    }
 
-            if (minY != SectionBase.NO_SECTION_Y_SENTINEL && maxY != SectionBase.NO_SECTION_Y_SENTINEL) {
+    private void commitChunkEvent(ChunkShiftEvent event, TerrainChunk chunk, int chunkIndex, int minWorldIndex, int maxWorldIndex) {
+        if(!event.shouldCommit())
+            return;
+
+        ListTag<CompoundTag> entities = chunk.getEntities();
+        ListTag<CompoundTag> tileEntities = chunk.getTileEntities();
+
+        event.regionFile = sourceRegionFile.getPath();
+        event.chunkIndex = chunkIndex;
+        event.dataVersion = chunk.getDataVersion();
+        event.minWorldIndex = minWorldIndex;
+        event.maxWorldIndex = maxWorldIndex;
+        event.sectionCount = chunk.hasSections() ? chunk.getMaxSectionY() - chunk.getMinSectionY() + 1 : 0;
+        event.entityCount = (entities != null ? entities.size() : 0) + (tileEntities != null ? tileEntities.size() : 0);
+        event.commit();
+    }
 
-                for (int sectionY = minY; sectionY <= maxY; sectionY++) {
-                    chunk.setSection(sectionY, null);
-                }
-            }
+    @Override
+    public boolean isSectionClipped(int dataVersion, int sectionY) {
+        return !getRoutingPlan(dataVersion).isIncluded(sectionY);
+    }
+
+    @Override
+    public void recordClipped(int sections, int entities) {
+        excludedSections.addAndGet(sections);
+        removedEntities.addAndGet(entities);
+    }
+
+    @Override
+    public TerrainChunk createChunk(CompoundTag data) {
+        return new TerrainChunk(data);
+    }
+
+    @Override
+    public TerrainChunk createSkeletonChunk(TerrainChunk sourceChunk) {
+        //Copy everything but the sections and entities, so that the sections don't get decoded again
+        TerrainChunk chunk = new TerrainChunk(Utils.copyCompoundTag(sourceChunk.getHandle(), SKELETON_EXCLUDED_TAGS));
+
+        chunk.setTileEntities(ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+        chunk.setEntities(ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+
+        ListTag<ListTag<?>> postProcessing = chunk.getPostProcessing();
+        if(postProcessing != null && !postProcessing.isEmpty()) {
+            //Clear the post-processing
+            postProcessing.clear();
+            chunk.setPostProcessing(postProcessing);
+        }
+
+        ListTag<ListTag<?>> toBeTicked = chunk.getToBeTicked();
+        if(toBeTicked != null && !toBeTicked.isEmpty()) {
+            //Clear the to be ticked
+            toBeTicked.clear();
+            chunk.setToBeTicked(toBeTicked);
+        }
+
+        ListTag<ListTag<?>> liquidsToBeTicked = chunk.getLiquidsToBeTicked();
+        if(liquidsToBeTicked != null && !liquidsToBeTicked.isEmpty()) {
+            //Clear the liquids to be ticked
+            liquidsToBeTicked.clear();
+            chunk.setLiquidsToBeTicked(liquidsToBeTicked);
+        }
 
-            regionMCA.write(chunk);
+        ListTag<CompoundTag> tileTicks = chunk.getTileTicks();
+        if(tileTicks != null && !tileTicks.isEmpty()) {
+            //Clear the tile ticks
+            tileTicks.clear();
+            chunk.setTileTicks(tileTicks);
         }
+
+        ListTag<CompoundTag> liquidTicks = chunk.getLiquidTicks();
+        if(liquidTicks != null && !liquidTicks.isEmpty()) {
+            //Clear the liquid ticks
+            liquidTicks.clear();
+            chunk.setLiquidTicks(liquidTicks);
+        }
+
+        return chunk;
     }
 
     /**
-     * Sort the to be ticked format list tags to the target world indexes in the form of a map after shifting
-     * @param toBeTicked The to be tocked format list tag to be sorted
+     * Get the section routing plan for the data version
+     * @param dataVersion The data version of the chunk
+     * @return The routing plan of the target world height of the data version
+     */
+    private SectionRoutingPlan getRoutingPlan(int dataVersion) {
+        return routingPlans.computeIfAbsent(dataVersion, version -> SectionRoutingPlan.of(getTargetWorldHeight(version), sectionOffsetY, isMultiWorld));
+    }
+
+    /**
+     * Add the to be ticked format sections, that are shifted to the world index, to the to be ticked format of the world slice chunk,
+     * so that if the sections are at the offset from the chunk y pos, the sections before them are empty sections
+     * @param toBeTicked The source to be ticked format list tag
      * @param chunkYPos The bottom y section of the chunk
-     * @param targetWorldHeight The target world height
-     * @return A map where the key is the world index and the value are a map of to be ticked format list tags per index from the bottom y section of the chunk
+     * @param worldIndex The index of the world slice
+     * @param routingPlan The section routing plan
+     * @param indexToBeTicked The to be ticked format of the world slice chunk. **Must be empty**
      */
-    private TreeMap<Integer, TreeMap<Integer, ListTag<?>>> offsetToBeTickedFormat(ListTag<ListTag<?>> toBeTicked, int chunkYPos, WorldHeight targetWorldHeight) {
-        TreeMap<Integer, TreeMap<Integer, ListTag<?>>> toBeTickedPerWorldIndex = new TreeMap<>();
+    private void routeToBeTickedFormat(ListTag<ListTag<?>> toBeTicked, int chunkYPos, int worldIndex, SectionRoutingPlan routingPlan, ListTag<ListTag<?>> indexToBeTicked) {
+        ListTag<?> emptySection = null;
 
         for(int i = 0; i < toBeTicked.size(); i++) {
-            int newSectionPos = chunkYPos + i + sectionOffsetY;
-            int newSectionPosWorldIndex = targetWorldHeight.getWorldIndexFromSection(newSectionPos);
+            int sourceSectionY = chunkYPos + i;
             //Only include to be ticked section if multi world is enabled or the world index is 0
-            if(isMultiWorld || newSectionPosWorldIndex == 0) {
-                TreeMap<Integer, ListTag<?>> indexToBeTicked = toBeTickedPerWorldIndex.computeIfAbsent(newSectionPosWorldIndex, ind -> new TreeMap<>());
+            if(!routingPlan.isIncluded(sourceSectionY) || routingPlan.getWorldIndex(sourceSectionY) != worldIndex)
+                continue;
 
-                //Make the section pos fit into the world height if world index differs from 0
-                if(newSectionPosWorldIndex != 0)
-                    newSectionPos = targetWorldHeight.calcSectionOffset(newSectionPosWorldIndex, newSectionPos);
+            //Calculate the index (from bottom of chunk to top) position within the world slice for the new section pos
+            int index = routingPlan.getTargetSectionY(sourceSectionY) - routingPlan.getTargetWorldHeight().getFirstSection();
 
-                //Calculate the index (from bottom of chunk to top) position within the world slice for the new section pos
-                indexToBeTicked.put( newSectionPos - targetWorldHeight.getFirstSection(), toBeTicked.get(i));
+            //Fill up with empty sections, so that the section is at the correct offset from the bottom of the chunk
+            while (indexToBeTicked.size() < index) {
+                if(emptySection == null) {
+                    emptySection = toBeTicked.getFirst().clone();
+                    emptySection.clear();
+                }
+                indexToBeTicked.add(emptySection.clone());
             }
-        }
-
-        return toBeTickedPerWorldIndex;
-    }
 
-    /**
-     * Update the to be ticked format with the new to be ticked format segments, so that if the new to be ticked format sections are
-     * at the offset from the chunky y pos, these pre offset section contain empty sections
-     * @param toBeTickedFormat The to be ticked format to be updated. **Must be empty**
-     * @param newToBeTicked A tree map that contains the new segments at the proper index from the bottom of the chunk. The key is the index, while the value is the to be ticked format
-     * @param emptySection An empty to be ticked section to use as filler
-     */
-    private void updateToBeTickedFormat(ListTag<ListTag<?>> toBeTickedFormat, TreeMap<Integer, ListTag<?>> newToBeTicked, ListTag<?> emptySection) {
-        //Fill the index to be ticked format up the new to be ticked format last segment
-        for(int i = 0; i <= newToBeTicked.lastKey(); i++) {
-            //If the indice is less then the new to be ticked format first segment
-            //add an empty segment. This makes sure the actual new to be ticked format segments are at the
-            //correct offset from the bottom of the chunk
-            if(i < newToBeTicked.firstKey())
-                toBeTickedFormat.add(emptySection.clone());
-            else
-                toBeTickedFormat.add(newToBeTicked.get(i));
+            indexToBeTicked.add(toBeTicked.get(i));
         }
     }
 
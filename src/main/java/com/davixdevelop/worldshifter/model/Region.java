@@ -1,55 +1,68 @@
 package com.davixdevelop.worldshifter.model;
 
-import com.davixdevelop.worldshifter.utils.LogUtils;
 import io.github.ensgijs.nbt.mca.ChunkBase;
-import io.github.ensgijs.nbt.mca.io.RandomAccessMcaFile;
 
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeMap;
-import java.util.TreeSet;
+import java.io.File;
+import java.util.BitSet;
 
 public class Region<C extends ChunkBase> {
-    private final RandomAccessMcaFile<C> mcaFile;
-    private final Map<ChunkPos, C> chunks;
-    private final Set<ChunkPos> emptyChunks;
+    private final File regionFile;
+    private final ChunkBase[] chunks;
+    private final BitSet presentChunks;
 
-    private Boolean isEmpty = false;
-
-    public Region(RandomAccessMcaFile<C> mcaFile) {
-        this.mcaFile = mcaFile;
-        chunks = new TreeMap<>();
-        emptyChunks = new TreeSet<>();
-    }
-
-    public RandomAccessMcaFile<C> getMcaFile() {
-        return mcaFile;
+    /**
+     * Create an output region, that holds the chunks in memory until they are written. The chunks are
+     * stored in a dense array, indexed by their local index in the region
+     * @param regionFile The path to the output region file
+     */
+    public Region(File regionFile) {
+        this.regionFile = regionFile;
+        chunks = new ChunkBase[ChunkPos.REGION_CHUNKS];
+        presentChunks = new BitSet(ChunkPos.REGION_CHUNKS);
     }
 
-    public Map<ChunkPos, C> getChunks() {
-        return chunks;
+    public File getRegionFile() {
+        return regionFile;
     }
 
-    public C getChunk(ChunkPos pos) {
-        return chunks.computeIfAbsent(pos, p -> {
-            try {
-                return mcaFile.readAbsolute(p.getX(), p.getZ());
-            }catch (Exception ex) {
-                LogUtils.logError("Error while reading chunk at [" + p.getX() + "," + p.getZ() + "]", ex);
-                return null;
-            }
-        });
+    /**
+     * Get the local index of the next chunk in the region
+     * @param fromIndex The local index to start from (inclusive)
+     * @return The local index of the next chunk, else -1 if there are no more chunks
+     */
+    public int nextChunkIndex(int fromIndex) {
+        return presentChunks.nextSetBit(fromIndex);
     }
 
-    public void markChunkEmpty(ChunkPos pos) {
-        emptyChunks.add(pos);
+    /**
+     * Get the chunk at the local index
+     * @param index The local index of the chunk
+     * @return The chunk, else null if there is no chunk at the index
+     */
+    @SuppressWarnings("unchecked")
+    public C getChunkAt(int index) {
+        return (C) chunks[index];
     }
 
-    public Boolean isEmpty() {
-        return isEmpty;
+    /**
+     * Put the chunk at the local index
+     * @param index The local index of the chunk
+     * @param chunk The chunk
+     */
+    public void putChunk(int index, C chunk) {
+        chunks[index] = chunk;
+        presentChunks.set(index);
     }
 
-    public void setEmpty(Boolean empty) {
-        isEmpty = empty;
+    /**
+     * Remove the chunk at the local index from the region
+     * @param index The local index of the chunk
+     * @return The removed chunk, else null if there was no chunk at the index
+     */
+    public C removeChunk(int index) {
+        C chunk = getChunkAt(index);
+        chunks[index] = null;
+        presentChunks.clear(index);
+        return chunk;
     }
 }
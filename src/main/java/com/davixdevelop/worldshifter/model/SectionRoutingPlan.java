@@ -0,0 +1,125 @@
+package com.davixdevelop.worldshifter.model;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable routing table, that maps the source section Y to the world index and the section Y in the world slice
+ * it's shifted to. The table is the same for all chunks, that share the target world height, so it's computed once
+ * and shared by all regions
+ */
+public final class SectionRoutingPlan {
+    /**
+     * The min source section Y (inclusive) covered by the table. Sections outside the table are routed on the fly
+     */
+    public static final int MIN_SOURCE_SECTION = -128;
+
+    /**
+     * The max source section Y (inclusive) covered by the table
+     */
+    public static final int MAX_SOURCE_SECTION = 127;
+
+    private static final Map<PlanKey, SectionRoutingPlan> PLANS = new ConcurrentHashMap<>();
+
+    private final WorldHeight targetWorldHeight;
+    private final int sectionOffsetY;
+    private final boolean isMultiWorld;
+    private final int[] worldIndices;
+    private final int[] targetSections;
+
+    private SectionRoutingPlan(WorldHeight targetWorldHeight, int sectionOffsetY, boolean isMultiWorld) {
+        this.targetWorldHeight = targetWorldHeight;
+        this.sectionOffsetY = sectionOffsetY;
+        this.isMultiWorld = isMultiWorld;
+
+        worldIndices = new int[MAX_SOURCE_SECTION - MIN_SOURCE_SECTION + 1];
+        targetSections = new int[worldIndices.length];
+        for(int sectionY = MIN_SOURCE_SECTION; sectionY <= MAX_SOURCE_SECTION; sectionY++) {
+            int newSectionY = sectionY + sectionOffsetY;
+            int worldIndex = targetWorldHeight.getWorldIndexFromSection(newSectionY);
+
+            worldIndices[sectionY - MIN_SOURCE_SECTION] = worldIndex;
+            targetSections[sectionY - MIN_SOURCE_SECTION] = targetWorldHeight.calcSectionOffset(worldIndex, newSectionY);
+        }
+    }
+
+    /**
+     * Get the routing plan of the target world height, or compute it if it's not yet cached
+     * @param targetWorldHeight The target world height
+     * @param sectionOffsetY The offset in sections
+     * @param isMultiWorld If multi world is enabled
+     * @return The routing plan
+     */
+    public static SectionRoutingPlan of(WorldHeight targetWorldHeight, int sectionOffsetY, boolean isMultiWorld) {
+        return PLANS.computeIfAbsent(new PlanKey(targetWorldHeight.getMinHeight(), targetWorldHeight.getMaxHeight(), sectionOffsetY, isMultiWorld),
+                key -> new SectionRoutingPlan(targetWorldHeight, sectionOffsetY, isMultiWorld));
+    }
+
+    public WorldHeight getTargetWorldHeight() {
+        return targetWorldHeight;
+    }
+
+    /**
+     * @param sourceSectionY The Y of the section in the source chunk
+     * @return The world index the section is shifted to
+     */
+    public int getWorldIndex(int sourceSectionY) {
+        if(sourceSectionY < MIN_SOURCE_SECTION || sourceSectionY > MAX_SOURCE_SECTION)
+            return targetWorldHeight.getWorldIndexFromSection(sourceSectionY + sectionOffsetY);
+
+        return worldIndices[sourceSectionY - MIN_SOURCE_SECTION];
+    }
+
+    /**
+     * @param sourceSectionY The Y of the section in the source chunk
+     * @return The Y of the section in the world slice it's shifted to
+     */
+    public int getTargetSectionY(int sourceSectionY) {
+        if(sourceSectionY < MIN_SOURCE_SECTION || sourceSectionY > MAX_SOURCE_SECTION) {
+            int newSectionY = sourceSectionY + sectionOffsetY;
+            return targetWorldHeight.calcSectionOffset(targetWorldHeight.getWorldIndexFromSection(newSectionY), newSectionY);
+        }
+
+        return targetSections[sourceSectionY - MIN_SOURCE_SECTION];
+    }
+
+    /**
+     * @param sourceSectionY The Y of the section in the source chunk
+     * @return True, if the section lies into the target world or multi world is enabled
+     */
+    public boolean isIncluded(int sourceSectionY) {
+        return isMultiWorld || getWorldIndex(sourceSectionY) == 0;
+    }
+
+    /**
+     * @param fromSectionY The first source section Y (inclusive)
+     * @param toSectionY The last source section Y (inclusive)
+     * @return True, if any section in the range is included
+     */
+    public boolean hasIncluded(int fromSectionY, int toSectionY) {
+        if(fromSectionY > toSectionY)
+            return false;
+
+        //The world indices only grow with the section Y
+        return isMultiWorld || (getWorldIndex(fromSectionY) <= 0 && getWorldIndex(toSectionY) >= 0);
+    }
+
+    /**
+     * @param fromSectionY The first source section Y (inclusive), of a range with included sections
+     * @return The min world index, the included sections of the range are shifted to
+     */
+    public int getMinWorldIndex(int fromSectionY) {
+        return isMultiWorld ? getWorldIndex(fromSectionY) : 0;
+    }
+
+    /**
+     * @param toSectionY The last source section Y (inclusive), of a range with included sections
+     * @return The max world index, the included sections of the range are shifted to
+     */
+    public int getMaxWorldIndex(int toSectionY) {
+        return isMultiWorld ? getWorldIndex(toSectionY) : 0;
+    }
+
+    private record PlanKey(int minHeight, int maxHeight, int sectionOffsetY, boolean isMultiWorld) {
+    }
+}
@@ -0,0 +1,244 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.model.MultiRegion;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Controls the amount of region workers at runtime. The controller samples the shifted chunks per second
+ * and the I/O wait of the system in intervals, and hill climbs the amount of workers toward the throughput peak:
+ * it keeps adding (or removing) workers while the throughput improves, reverses once it drops, and keeps
+ * the amount of workers while the throughput stays the same
+ */
+public class AdaptiveWorkerController {
+    /**
+     * The time between two samples in seconds
+     */
+    private static final int SAMPLE_INTERVAL = 5;
+
+    /**
+     * The relative change in throughput, that is treated as an actual change and not as noise
+     */
+    private static final double THROUGHPUT_TOLERANCE = 0.05;
+
+    /**
+     * The share of the I/O wait, above which the disk is treated as saturated and no more workers are added
+     */
+    private static final double IO_WAIT_SATURATION = 0.3;
+
+    private static final Path PROC_STAT = Path.of("/proc/stat");
+
+    private final RegionScheduler regionScheduler;
+    private final int minWorkers;
+    private final int maxWorkers;
+
+    private final ExecutorService workersExecutor = Executors.newCachedThreadPool();
+    private final ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor();
+    private final List<Future<Integer>> workers = new CopyOnWriteArrayList<>();
+    private final AtomicInteger activeWorkers = new AtomicInteger(0);
+    private final AtomicInteger retireRequests = new AtomicInteger(0);
+
+    private Function<AdaptiveWorkerController, MoveRegionsTask> workerFactory;
+
+    private long lastSampleTime;
+    private long lastShiftedChunks;
+    private long[] lastCpuTimes;
+    private double lastThroughput = -1;
+    private int direction = 1;
+
+    /**
+     * Create the controller
+     * @param regionScheduler The scheduler, the workers poll the regions from
+     * @param minWorkers The min amount of workers
+     * @param maxWorkers The max amount of workers
+     */
+    public AdaptiveWorkerController(RegionScheduler regionScheduler, int minWorkers, int maxWorkers) {
+        this.regionScheduler = regionScheduler;
+        this.minWorkers = Math.max(1, minWorkers);
+        this.maxWorkers = Math.max(this.minWorkers, maxWorkers);
+    }
+
+    /**
+     * Start the initial workers and the sampling of the throughput
+     * @param initialWorkers The amount of workers to start with
+     * @param workerFactory Creates a new worker, that retires when the controller requests it
+     */
+    public void start(int initialWorkers, Function<AdaptiveWorkerController, MoveRegionsTask> workerFactory) {
+        this.workerFactory = workerFactory;
+
+        int workersCount = Math.clamp(initialWorkers, minWorkers, maxWorkers);
+        for(int w = 0; w < workersCount; w++) {
+            addWorker();
+        }
+
+        lastSampleTime = System.nanoTime();
+        lastShiftedChunks = MultiRegion.SHIFTED_CHUNKS.sum();
+        lastCpuTimes = readCpuTimes();
+
+        sampler.scheduleAtFixedRate(this::sample, SAMPLE_INTERVAL, SAMPLE_INTERVAL, TimeUnit.SECONDS);
+        LogUtils.log("Adaptive thread count: started with " + workersCount + " workers (min " + minWorkers + ", max " + maxWorkers + ")");
+    }
+
+    /**
+     * Wait for all the workers, including the ones added while waiting, to finish
+     * @return The futures of all the workers
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public List<Future<Integer>> awaitCompletion() throws InterruptedException {
+        int waitedWorkers = 0;
+        while (waitedWorkers < workers.size()) {
+            try {
+                workers.get(waitedWorkers).get();
+            } catch (ExecutionException ignored) {
+                //The failed worker is skipped by the caller
+            }
+            waitedWorkers++;
+        }
+
+        sampler.shutdownNow();
+        workersExecutor.shutdown();
+
+        return new ArrayList<>(workers);
+    }
+
+    /**
+     * Called by the workers before they poll the next region
+     * @return True, if the worker should stop, as the controller shrunk the pool
+     */
+    public boolean shouldRetire() {
+        while (true) {
+            int requests = retireRequests.get();
+            if(requests == 0)
+                return false;
+
+            if(retireRequests.compareAndSet(requests, requests - 1)) {
+                activeWorkers.decrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Called by the workers, once they run out of regions
+     */
+    public void workerFinished() {
+        activeWorkers.decrementAndGet();
+    }
+
+    private void addWorker() {
+        activeWorkers.incrementAndGet();
+        workers.add(workersExecutor.submit(workerFactory.apply(this)));
+    }
+
+    private void sample() {
+        try {
+            if(regionScheduler.isEmpty()) {
+                sampler.shutdown();
+                return;
+            }
+
+            long sampleTime = System.nanoTime();
+            long shiftedChunks = MultiRegion.SHIFTED_CHUNKS.sum();
+            long[] cpuTimes = readCpuTimes();
+
+            double throughput = (shiftedChunks - lastShiftedChunks) / ((sampleTime - lastSampleTime) / 1_000_000_000.0);
+            double ioWait = getIoWait(lastCpuTimes, cpuTimes);
+
+            lastSampleTime = sampleTime;
+            lastShiftedChunks = shiftedChunks;
+            lastCpuTimes = cpuTimes;
+
+            //Wait for the retiring workers, to finish their regions
+            int workersCount = activeWorkers.get() - retireRequests.get();
+            if(retireRequests.get() > 0)
+                return;
+
+            String reason;
+            int step = direction;
+            if(lastThroughput < 0) {
+                reason = "first sample";
+            } else if(throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+                direction = -direction;
+                step = direction;
+                reason = "throughput dropped";
+            } else if(throughput > lastThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+                reason = "throughput improved";
+            } else {
+                //On a plateau, keep the amount of workers, until the throughput changes
+                step = 0;
+                reason = "throughput plateau";
+            }
+
+            if(step > 0 && ioWait >= IO_WAIT_SATURATION) {
+                direction = -1;
+                step = direction;
+                reason = "disk saturated";
+            }
+
+            int targetCount = Math.clamp(workersCount + step, minWorkers, maxWorkers);
+            lastThroughput = throughput;
+
+            LogUtils.log(String.format(Locale.ROOT, "Adaptive thread count: %.1f chunks/s, I/O wait %s, %s, %d -> %d workers",
+                    throughput, ioWait >= 0 ? String.format(Locale.ROOT, "%.0f%%", ioWait * 100) : "n/a", reason, workersCount, targetCount));
+
+            if(targetCount > workersCount)
+                addWorker();
+            else if(targetCount < workersCount)
+                retireRequests.incrementAndGet();
+        } catch (Exception ex) {
+            LogUtils.logError("Error while sampling the throughput", ex);
+        }
+    }
+
+    /**
+     * Read the aggregated CPU times of the system
+     * @return The CPU times in the order of /proc/stat, else null if they are not available on the system
+     */
+    private static long[] readCpuTimes() {
+        try {
+            String cpuLine = Files.readAllLines(PROC_STAT).getFirst();
+            String[] values = cpuLine.trim().split("\\s+");
+            long[] cpuTimes = new long[values.length - 1];
+            for(int v = 1; v < values.length; v++) {
+                cpuTimes[v - 1] = Long.parseLong(values[v]);
+            }
+
+            return cpuTimes;
+        } catch (IOException | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the share of the I/O wait between two CPU times samples
+     * @return The share of the I/O wait from 0 to 1, else -1 if it's not available
+     */
+    private static double getIoWait(long[] previous, long[] current) {
+        //The fifth value is the iowait
+        if(previous == null || current == null || current.length < 5)
+            return -1;
+
+        //Only sum user, nice, system, idle, iowait, irq, softirq and steal, as the guest times are already included in user and nice
+        long total = 0;
+        for(int v = 0; v < Math.min(current.length, 8); v++) {
+            total += current[v] - previous[v];
+        }
+
+        return total > 0 ? (double) (current[4] - previous[4]) / total : -1;
+    }
+}
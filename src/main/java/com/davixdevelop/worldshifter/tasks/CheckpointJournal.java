@@ -0,0 +1,409 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.io.McaReader;
+import com.davixdevelop.worldshifter.io.McaWriter;
+import com.davixdevelop.worldshifter.model.MultiRegion;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+import com.davixdevelop.worldshifter.utils.Utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Journal of the completed regions of a run, so that an interrupted run can be resumed, and a later run only shifts the
+ * regions that changed since. For each region the size, the last modified time and a hash of the header (the chunk
+ * locations and timestamps) of the source region file are recorded, together with the world slices region files it was
+ * written to, their size and a hash of them, which the writers compute while writing them. The journal is replaced atomically by writing a temp file and renaming it,
+ * and is saved at most every few seconds, so a crash only loses the last few completed regions, which are then shifted again
+ */
+public class CheckpointJournal {
+    /**
+     * The name of the journal file in the output folder
+     */
+    public static final String JOURNAL_FILE_NAME = "checkpoint.journal";
+
+    /**
+     * The min time in milliseconds between the saves of the journal
+     */
+    private static final long SAVE_INTERVAL_MS = 5000;
+
+    private final File outputFolder;
+    private final File journalFile;
+    private final String shiftParams;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private long lastSaveTime = 0;
+
+    /**
+     * Create an empty journal
+     * @param outputFolder The path to the output folder
+     * @param shiftParams The parameters of the shift, that the output depends on
+     */
+    public CheckpointJournal(File outputFolder, String shiftParams) {
+        this(outputFolder, JOURNAL_FILE_NAME, shiftParams);
+    }
+
+    /**
+     * Create an empty journal with a custom file name, ex. for each shard
+     * @param outputFolder The path to the output folder
+     * @param journalFileName The name of the journal file in the output folder
+     * @param shiftParams The parameters of the shift, that the output depends on
+     */
+    public CheckpointJournal(File outputFolder, String journalFileName, String shiftParams) {
+        this.outputFolder = outputFolder;
+        this.journalFile = Paths.get(outputFolder.getPath(), journalFileName).toFile();
+        this.shiftParams = shiftParams;
+    }
+
+    /**
+     * @param shard The shard of the run, or null if the run is not sharded
+     * @return The name of the journal file of the shard, ex. checkpoint.shard-0-of-4.journal
+     */
+    public static String getJournalFileName(Shard shard) {
+        return shard != null ? "checkpoint" + shard.getFileSuffix() + ".journal" : JOURNAL_FILE_NAME;
+    }
+
+    /**
+     * Load the completed regions of a previous run
+     * @throws IOException If the journal could not be read, or it was written with different shift parameters
+     */
+    public void load() throws IOException {
+        if(!journalFile.isFile())
+            throw new IOException("No checkpoint journal in " + outputFolder.getPath());
+
+        try(BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+            String params = reader.readLine();
+            if(params == null || !params.equals("params " + shiftParams))
+                throw new IOException("The checkpoint journal was written with different shift parameters");
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = Entry.parse(line);
+                if(entry != null)
+                    entries.put(entry.key(), entry);
+            }
+        }
+    }
+
+    /**
+     * Check if the region was completed by a previous run. The source region file must not have changed since, which is
+     * the case if its size and either its last modified time or its header hash are the same. Minecraft updates the
+     * timestamp of a chunk in the header each time it saves the chunk, so the header hash also detects changed chunks,
+     * when the file was touched or copied. The world slices region files must still exist with the same size
+     * @param regionFile The source region file
+     * @param subFolder The type of the region, ex "region"
+     * @param isVerifyOutput If the world slices region files must also still hash to the recorded hash
+     * @return True if the region can be skipped
+     */
+    public boolean isCompleted(File regionFile, String subFolder, boolean isVerifyOutput) {
+        Entry entry = entries.get(subFolder + "/" + regionFile.getName());
+        if(entry == null || entry.source().size() != regionFile.length())
+            return false;
+
+        if(entry.source().modified() != regionFile.lastModified()) {
+            long headerHash = captureSource(regionFile).headerHash();
+            if(headerHash == -1 || headerHash != entry.source().headerHash())
+                return false;
+        }
+
+        List<File> outputFiles = getOutputFiles(entry);
+        long outputSize = 0;
+        for(File outputFile : outputFiles) {
+            if(!outputFile.isFile())
+                return false;
+
+            outputSize += outputFile.length();
+        }
+
+        if(outputSize != entry.outputSize())
+            return false;
+
+        try {
+            return !isVerifyOutput || hash(outputFiles, null) == entry.outputHash();
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * @param regionFiles The source region files
+     * @param subFolder The type of the regions, ex "region"
+     * @param isVerifyOutput If the world slices region files of the completed regions must also still hash to the recorded hash
+     * @return The region files, that were not completed by a previous run
+     */
+    public File[] filterCompleted(File[] regionFiles, String subFolder, boolean isVerifyOutput) {
+        List<File> pendingFiles = new ArrayList<>();
+        for(File regionFile : regionFiles) {
+            if(!isCompleted(regionFile, subFolder, isVerifyOutput))
+                pendingFiles.add(regionFile);
+        }
+
+        return pendingFiles.toArray(new File[0]);
+    }
+
+    /**
+     * Record the region as completed, once all its world slices region files are written. The world slices region
+     * files of the previous shift of the region, that the region no longer has content in, are deleted
+     * @param region The shifted region
+     * @param source The state of the source region file, captured before the region was shifted
+     */
+    public void markCompleted(MultiRegion<?> region, SourceState source) {
+        File regionFile = region.sourceRegionFile;
+        List<File> outputFiles = region.getOutputFiles();
+        List<Long> outputHashes = region.getOutputHashes();
+        List<String> outputPaths = new ArrayList<>(outputFiles.size());
+        long outputSize = 0;
+        for(File outputFile : outputFiles) {
+            outputPaths.add(outputFolder.toPath().relativize(outputFile.toPath()).toString().replace(File.separatorChar, '/'));
+            outputSize += outputFile.length();
+        }
+
+        Entry entry;
+        try {
+            entry = new Entry(region.subFolder + "/" + regionFile.getName(), source, outputPaths, outputSize, hash(outputFiles, outputHashes));
+        } catch (IOException ex) {
+            LogUtils.logError("Error while hashing the output of the region", regionFile, ex);
+            return;
+        }
+
+        Entry previousEntry = entries.put(entry.key(), entry);
+        if(previousEntry != null) {
+            for(String outputPath : previousEntry.outputPaths()) {
+                if(!outputPaths.contains(outputPath))
+                    Paths.get(outputFolder.getPath(), outputPath).toFile().delete();
+            }
+        }
+
+        saveIfDue();
+    }
+
+    /**
+     * Remove the regions, whose source region file was deleted since the previous run, and delete their world slices region files
+     * @param worldFolder The path to the source world
+     * @return The amount of removed regions
+     */
+    public int removeDeleted(File worldFolder) {
+        int removed = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if(Paths.get(worldFolder.getPath(), entry.key()).toFile().exists())
+                continue;
+
+            for(File outputFile : getOutputFiles(entry)) {
+                outputFile.delete();
+            }
+
+            iterator.remove();
+            removed++;
+        }
+
+        return removed;
+    }
+
+    private List<File> getOutputFiles(Entry entry) {
+        List<File> outputFiles = new ArrayList<>();
+        for(String outputPath : entry.outputPaths()) {
+            outputFiles.add(Paths.get(outputFolder.getPath(), outputPath).toFile());
+        }
+
+        return outputFiles;
+    }
+
+    /**
+     * Capture the state of the source region file, to record it once the region is completed
+     * @param regionFile The source region file
+     * @return The size, last modified time and header hash of the region file. If the header could not be read, its hash is -1
+     */
+    public static SourceState captureSource(File regionFile) {
+        long size = regionFile.length();
+        long modified = regionFile.lastModified();
+        long headerHash = -1;
+        try(RandomAccessFile raf = new RandomAccessFile(regionFile, "r")) {
+            byte[] header = new byte[(int) Math.min(raf.length(), McaReader.SECTOR_SIZE * 2)];
+            raf.readFully(header);
+
+            CRC32C crc = new CRC32C();
+            crc.update(header);
+            headerHash = crc.getValue();
+        } catch (IOException ignored) {
+            //The region is shifted again on the next run
+        }
+
+        return new SourceState(size, modified, headerHash);
+    }
+
+    private void saveIfDue() {
+        synchronized (this) {
+            if(System.currentTimeMillis() - lastSaveTime < SAVE_INTERVAL_MS)
+                return;
+        }
+
+        save();
+    }
+
+    /**
+     * Atomically replace the journal file with the completed regions
+     */
+    public synchronized void save() {
+        lastSaveTime = System.currentTimeMillis();
+        File tempFile = new File(journalFile.getPath() + McaWriter.TEMP_SUFFIX);
+        try {
+            try(PrintWriter writer = new PrintWriter(tempFile)) {
+                writer.println("params " + shiftParams);
+                for(Entry entry : entries.values()) {
+                    writer.println(entry);
+                }
+            }
+
+            Utils.moveAtomically(tempFile, journalFile);
+        } catch (IOException ex) {
+            LogUtils.logError("Error while writing the checkpoint journal", journalFile, ex);
+        }
+    }
+
+    /**
+     * Add the completed regions of another journal of the same output folder, ex. of a shard
+     * @param journal The other journal
+     */
+    public void merge(CheckpointJournal journal) {
+        entries.putAll(journal.entries);
+    }
+
+    /**
+     * @return The type and the file name of the completed regions, ex. region/r.0.0.mca
+     */
+    public Set<String> getRegionKeys() {
+        return entries.keySet();
+    }
+
+    /**
+     * @return The amount of completed regions
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Delete the temp files, left behind by the region and external chunk files that were being written when the previous run was stopped.
+     * With a shard, only the temp files of the regions of the shard are deleted, as the other shards may still be writing theirs
+     * @param outputFolder The path to the output folder
+     * @param shard The shard of the run, or null if the run is not sharded
+     * @return The amount of deleted files
+     */
+    public static int deleteTempFiles(File outputFolder, Shard shard) {
+        int deleted = 0;
+        try(Stream<Path> paths = Files.walk(outputFolder.toPath())) {
+            for(Path path : (Iterable<Path>) paths::iterator) {
+                String fileName = path.getFileName().toString();
+                if(!fileName.endsWith(".mca" + McaWriter.TEMP_SUFFIX) && !fileName.endsWith(".mcc" + McaWriter.TEMP_SUFFIX))
+                    continue;
+
+                if(shard != null && Shard.getShardIndex(getTempRegionFile(fileName), shard.count()) != shard.index())
+                    continue;
+
+                if(path.toFile().delete())
+                    deleted++;
+            }
+        } catch (IOException ex) {
+            LogUtils.logError("Error while deleting the temp files", outputFolder, ex);
+        }
+
+        return deleted;
+    }
+
+    /**
+     * Get the region file, that a temp file belongs to
+     * @param tempFileName The name of the temp file, ex. r.1.-2.mca.tmp or c.40.-50.mcc.tmp
+     * @return The region file, ex. r.1.-2.mca
+     */
+    private static File getTempRegionFile(String tempFileName) {
+        String fileName = tempFileName.substring(0, tempFileName.length() - McaWriter.TEMP_SUFFIX.length());
+        if(fileName.endsWith(".mcc")) {
+            //The external chunk files are named by the absolute chunk coordinates
+            String[] parts = fileName.split("\\.");
+            try {
+                return new File("r." + (Integer.parseInt(parts[1]) >> 5) + "." + (Integer.parseInt(parts[2]) >> 5) + ".mca");
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException ignored) {
+                //Assigned by its name instead
+            }
+        }
+
+        return new File(fileName);
+    }
+
+    /**
+     * Hash the files, by combining the hashes of each file in the order they are given
+     * @param files The region files
+     * @param fileHashes The hashes of the region files computed while they were written, in the same order as the files,
+     *                   else null to read them. The files without a hash are read
+     * @return The combined CRC32C of the files
+     * @throws IOException If a file could not be read
+     */
+    private static long hash(List<File> files, List<Long> fileHashes) throws IOException {
+        CRC32C crc = new CRC32C();
+        ByteBuffer fileHash = ByteBuffer.allocate(Long.BYTES);
+        for(int f = 0; f < files.size(); f++) {
+            Long hash = fileHashes != null ? fileHashes.get(f) : null;
+            fileHash.clear();
+            fileHash.putLong(hash != null && hash != -1 ? hash : McaWriter.hash(files.get(f)));
+            crc.update(fileHash.array());
+        }
+
+        return crc.getValue();
+    }
+
+    /**
+     * The state of a source region file
+     * @param size The size of the region file
+     * @param modified The last modified time of the region file
+     * @param headerHash The hash of the chunk locations and timestamps of the region file
+     */
+    public record SourceState(long size, long modified, long headerHash) {
+    }
+
+    /**
+     * A completed region
+     * @param key The type and the file name of the source region, ex. region/r.0.0.mca
+     * @param source The state of the source region file, when it was shifted
+     * @param outputPaths The world slices region files, relative to the output folder
+     * @param outputSize The total size of the world slices region files
+     * @param outputHash The hash of the world slices region files
+     */
+    private record Entry(String key, SourceState source, List<String> outputPaths, long outputSize, long outputHash) {
+        private static Entry parse(String line) {
+            String[] parts = line.split(" ");
+            if(parts.length != 7)
+                return null;
+
+            try {
+                SourceState source = new SourceState(Long.parseLong(parts[1]), Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+                List<String> outputPaths = parts[4].equals("-") ? List.of() : List.of(parts[4].split(","));
+                return new Entry(parts[0], source, outputPaths, Long.parseLong(parts[5]), Long.parseUnsignedLong(parts[6], 16));
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return key + " " + source.size() + " " + source.modified() + " " + source.headerHash() + " " + (outputPaths.isEmpty() ? "-" : String.join(",", outputPaths)) +
+                    " " + outputSize + " " + Long.toHexString(outputHash);
+        }
+    }
+}
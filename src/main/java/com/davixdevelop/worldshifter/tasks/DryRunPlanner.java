@@ -0,0 +1,254 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.io.ChunkCodec;
+import com.davixdevelop.worldshifter.io.ChunkSummary;
+import com.davixdevelop.worldshifter.io.McaReader;
+import com.davixdevelop.worldshifter.io.NbtScanner;
+import com.davixdevelop.worldshifter.io.RawChunk;
+import com.davixdevelop.worldshifter.model.*;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+import io.github.ensgijs.nbt.mca.ChunkBase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Plans the shift without writing anything. Only the region headers and the DataVersion, yPos, section Y and
+ * entity Y of the chunks are read, with the NBT scanner skipping every other tag. From them the planner counts the
+ * clipped sections and entities and the world slices. A few chunks of each region are also shifted in memory,
+ * to estimate the output size and the runtime of the real run. With sampling, only a percentage of the chunks
+ * of each region is scanned, and the counts are extrapolated to all the chunks of the region
+ */
+public class DryRunPlanner {
+    /**
+     * The amount of chunks of each region, that are fully shifted in memory to estimate the output size and runtime
+     */
+    private static final int CALIBRATION_CHUNKS = 2;
+
+    private final Integer targetWorldMin;
+    private final Integer targetWorldMax;
+    private final int offsetY;
+    private final int sectionOffsetY;
+    private final boolean isMultiWorld;
+    private final File outputFolder;
+    private final int threadCount;
+    private final double samplePercent;
+
+    private final LongAdder chunks = new LongAdder();
+    private final LongAdder sampledChunks = new LongAdder();
+    private final LongAdder inputBytes = new LongAdder();
+    private final DoubleAdder sections = new DoubleAdder();
+    private final DoubleAdder clippedSections = new DoubleAdder();
+    private final DoubleAdder entities = new DoubleAdder();
+    private final DoubleAdder clippedEntities = new DoubleAdder();
+    private final LongAdder outputRegionFiles = new LongAdder();
+    private final Set<Integer> worldIndices = new ConcurrentSkipListSet<>();
+
+    private final LongAdder calibratedChunks = new LongAdder();
+    private final LongAdder calibratedNanos = new LongAdder();
+    private final LongAdder calibratedInputBytes = new LongAdder();
+    private final LongAdder calibratedOutputBytes = new LongAdder();
+
+    private final ThreadLocal<ChunkSummary> summaries = ThreadLocal.withInitial(ChunkSummary::new);
+
+    /**
+     * Create a dry run planner
+     * @param outputFolder The path to the output folder. Nothing is written to it
+     * @param threadCount The amount of threads to scan the regions with, and the real run will use
+     * @param samplePercent The percentage of the chunks of each region to scan, from 0 (exclusive) to 100
+     */
+    public DryRunPlanner(Integer targetWorldMin, Integer targetWorldMax, int offsetY, int sectionOffsetY, boolean isMultiWorld, File outputFolder, int threadCount, double samplePercent) {
+        this.targetWorldMin = targetWorldMin;
+        this.targetWorldMax = targetWorldMax;
+        this.offsetY = offsetY;
+        this.sectionOffsetY = sectionOffsetY;
+        this.isMultiWorld = isMultiWorld;
+        this.outputFolder = outputFolder;
+        this.threadCount = threadCount;
+        this.samplePercent = samplePercent;
+    }
+
+    /**
+     * Plan the shift of the regions in parallel and log the plan
+     * @param scheduledRegions The scheduled regions
+     * @throws InterruptedException If the planning was interrupted
+     */
+    public void plan(List<ScheduledRegion> scheduledRegions) throws InterruptedException {
+        long startTime = System.nanoTime();
+
+        ExecutorService executorService = Executors.newFixedThreadPool(threadCount);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for(ScheduledRegion scheduledRegion : scheduledRegions) {
+            tasks.add(() -> {
+                planRegion(scheduledRegion);
+                return null;
+            });
+        }
+
+        executorService.invokeAll(tasks);
+        executorService.shutdown();
+
+        logPlan(scheduledRegions.size(), System.nanoTime() - startTime);
+    }
+
+    private void planRegion(ScheduledRegion scheduledRegion) {
+        File regionFile = scheduledRegion.getRegionFile();
+        MultiRegion<?> region = scheduledRegion.isEntities() ?
+                new MultiEntitiesRegion(regionFile, targetWorldMin, targetWorldMax, offsetY, outputFolder, isMultiWorld, new AtomicInteger()) :
+                new MultiTerrainRegion(regionFile, targetWorldMin, targetWorldMax, offsetY, sectionOffsetY, outputFolder, isMultiWorld, new AtomicInteger(), new AtomicInteger(), null);
+
+        ChunkSummary summary = summaries.get();
+        Set<Integer> regionWorldIndices = new TreeSet<>();
+        int presentChunks = 0;
+        int regionSampledChunks = 0;
+        long regionSections = 0;
+        long regionClippedSections = 0;
+        long regionEntities = 0;
+        long regionClippedEntities = 0;
+
+        try(McaReader reader = new McaReader(regionFile)) {
+            List<Integer> sampledIndices = new ArrayList<>();
+            for(int index = 0; index < ChunkPos.REGION_CHUNKS; index++) {
+                if(!reader.hasChunk(index))
+                    continue;
+
+                presentChunks++;
+                inputBytes.add((long) reader.getSectorCount(index) * McaReader.SECTOR_SIZE);
+                if(isSampled(regionFile, index))
+                    sampledIndices.add(index);
+            }
+
+            //Always scan at least one chunk of each region
+            if(sampledIndices.isEmpty() && presentChunks > 0) {
+                for(int index = 0; sampledIndices.isEmpty(); index++) {
+                    if(reader.hasChunk(index))
+                        sampledIndices.add(index);
+                }
+            }
+
+            for(int index : sampledIndices) {
+                try {
+                    RawChunk rawChunk = reader.readChunk(index);
+                    if(rawChunk == null)
+                        continue;
+
+                    long chunkStart = System.nanoTime();
+                    int rawLength = rawChunk.getLength();
+                    byte[] data;
+                    try {
+                        data = ChunkCodec.decompress(rawChunk);
+                    } finally {
+                        rawChunk.release();
+                    }
+                    if(regionSampledChunks < CALIBRATION_CHUNKS) {
+                        long outputBytes = calibrate(region, index, data);
+                        calibratedNanos.add(System.nanoTime() - chunkStart);
+                        calibratedChunks.increment();
+                        calibratedInputBytes.add(rawLength);
+                        calibratedOutputBytes.add(outputBytes);
+                    }
+
+                    NbtScanner.scan(data, summary);
+                } catch (Exception ex) {
+                    LogUtils.logError("Error while scanning chunk at index:" + index, regionFile, ex);
+                    continue;
+                }
+
+                regionSampledChunks++;
+                WorldHeight targetWorldHeight = region.getTargetWorldHeight(summary.getDataVersion());
+                SectionRoutingPlan routingPlan = SectionRoutingPlan.of(targetWorldHeight, sectionOffsetY, isMultiWorld);
+
+                for(int s = 0; s < summary.getSectionsCount(); s++) {
+                    int sectionY = summary.getSectionY(s);
+                    regionSections++;
+                    if(routingPlan.isIncluded(sectionY))
+                        regionWorldIndices.add(routingPlan.getWorldIndex(sectionY));
+                    else
+                        regionClippedSections++;
+                }
+
+                for(int e = 0; e < summary.getEntitiesCount(); e++) {
+                    int worldIndex = targetWorldHeight.getWorldIndexFromY(summary.getEntityY(e) + offsetY);
+                    regionEntities++;
+                    if(isMultiWorld || worldIndex == 0)
+                        regionWorldIndices.add(worldIndex);
+                    else
+                        regionClippedEntities++;
+                }
+            }
+        } catch (Exception ex) {
+            LogUtils.logError("Error while reading the header", regionFile, ex);
+            return;
+        }
+
+        //Extrapolate the counts of the sampled chunks to all the chunks of the region
+        double factor = regionSampledChunks > 0 ? (double) presentChunks / regionSampledChunks : 0;
+        chunks.add(presentChunks);
+        sampledChunks.add(regionSampledChunks);
+        sections.add(regionSections * factor);
+        clippedSections.add(regionClippedSections * factor);
+        entities.add(regionEntities * factor);
+        clippedEntities.add(regionClippedEntities * factor);
+        outputRegionFiles.add(regionWorldIndices.size());
+        worldIndices.addAll(regionWorldIndices);
+    }
+
+    /**
+     * Shift the chunk in memory, and serialize and compress the chunks of its world slices, without writing them
+     * @return The size of the compressed chunks of the world slices in bytes
+     */
+    private <C extends ChunkBase> long calibrate(MultiRegion<C> region, int index, byte[] data) throws Exception {
+        region.shiftChunk(region.createChunk(ChunkCodec.parse(data)));
+
+        long outputBytes = 0;
+        for(Map.Entry<Integer, C> chunk : region.takeChunks(index).entrySet()) {
+            RawChunk rawChunk = ChunkCodec.compress(ChunkCodec.serialize(chunk.getValue().updateHandle()));
+            outputBytes += rawChunk.getLength();
+            rawChunk.release();
+        }
+
+        return outputBytes;
+    }
+
+    /**
+     * Pick the chunks to scan, the same ones on each run
+     */
+    private boolean isSampled(File regionFile, int index) {
+        if(samplePercent >= 100)
+            return true;
+
+        long hash = (regionFile.getName().hashCode() * 1024L + index) * 0x9E3779B97F4A7C15L;
+        return Math.floorMod(hash >>> 17, 10_000L) < samplePercent * 100;
+    }
+
+    private void logPlan(int regionsCount, long planNanos) {
+        long chunksCount = chunks.sum();
+        double outputRatio = calibratedInputBytes.sum() > 0 ? (double) calibratedOutputBytes.sum() / calibratedInputBytes.sum() : 1;
+        double nanosPerChunk = calibratedChunks.sum() > 0 ? (double) calibratedNanos.sum() / calibratedChunks.sum() : 0;
+        double runtimeSeconds = nanosPerChunk * chunksCount / threadCount / 1_000_000_000.0;
+
+        LogUtils.log();
+        LogUtils.log("Dry run plan (nothing was written):");
+        LogUtils.log("\tRegion files: " + regionsCount + ", chunks: " + chunksCount + String.format(Locale.ROOT, ", scanned: %d (%.1f%%)", sampledChunks.sum(), chunksCount > 0 ? sampledChunks.sum() * 100.0 / chunksCount : 0));
+        LogUtils.log(String.format(Locale.ROOT, "\tSections: %.0f, clipped: %.0f", sections.sum(), clippedSections.sum()));
+        LogUtils.log(String.format(Locale.ROOT, "\tEntities/block entities: %.0f, clipped: %.0f", entities.sum(), clippedEntities.sum()));
+        LogUtils.log("\tWorld slices: " + worldIndices.size() + (isMultiWorld ? " " + worldIndices : "") + ", output region files: " + outputRegionFiles.sum());
+        LogUtils.log(String.format(Locale.ROOT, "\tEstimated output size: %.1f MB", inputBytes.sum() * outputRatio / 1_048_576.0));
+        LogUtils.log(String.format(Locale.ROOT, "\tEstimated runtime with %d threads: %s", threadCount, formatDuration(runtimeSeconds)));
+        LogUtils.log(String.format(Locale.ROOT, "\tPlanned in %s", formatDuration(planNanos / 1_000_000_000.0)));
+    }
+
+    private static String formatDuration(double seconds) {
+        long totalSeconds = Math.round(seconds);
+        return String.format(Locale.ROOT, "%d:%02d:%02d", totalSeconds / 3600, (totalSeconds / 60) % 60, totalSeconds % 60);
+    }
+}
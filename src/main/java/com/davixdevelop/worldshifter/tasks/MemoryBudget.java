@@ -0,0 +1,54 @@
+package com.davixdevelop.worldshifter.tasks;
+
+/**
+ * A global budget of heap memory, shared by the workers. A worker reserves the estimated memory of a region
+ * before it starts processing it, and waits while there is no headroom left in the budget. The budget only
+ * applies without the pipeline, where the chunks in memory are bounded by the capacity of the pipeline queues instead
+ */
+public class MemoryBudget {
+    /**
+     * The estimated ratio between the heap size of decoded chunks and the size of their compressed sectors
+     */
+    public static final int DECODED_MEMORY_RATIO = 10;
+
+    private final long budgetBytes;
+    private long usedBytes = 0;
+
+    /**
+     * Create a memory budget
+     * @param budgetBytes The max amount of bytes the workers can reserve at once
+     */
+    public MemoryBudget(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Reserve memory from the budget, and wait until there is enough headroom. A reservation bigger than
+     * the whole budget is capped to the budget, so that it's admitted once all the other reservations are released
+     * @param bytes The amount of bytes to reserve
+     * @return The amount of bytes reserved, which must be released afterwards
+     * @throws InterruptedException If the thread was interrupted while waiting
+     */
+    public synchronized long acquire(long bytes) throws InterruptedException {
+        long reservedBytes = Math.min(bytes, budgetBytes);
+        while (usedBytes + reservedBytes > budgetBytes) {
+            wait();
+        }
+
+        usedBytes += reservedBytes;
+        return reservedBytes;
+    }
+
+    /**
+     * Release reserved memory back to the budget
+     * @param bytes The amount of reserved bytes
+     */
+    public synchronized void release(long bytes) {
+        usedBytes -= bytes;
+        notifyAll();
+    }
+
+    public long getBudgetBytes() {
+        return budgetBytes;
+    }
+}
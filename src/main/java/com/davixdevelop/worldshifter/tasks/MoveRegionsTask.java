@@ -1,11 +1,18 @@
 package com.davixdevelop.worldshifter.tasks;
 
+import com.davixdevelop.worldshifter.io.McaReader;
+import com.davixdevelop.worldshifter.model.MultiEntitiesRegion;
+import com.davixdevelop.worldshifter.model.MultiRegion;
 import com.davixdevelop.worldshifter.model.MultiTerrainRegion;
 import com.davixdevelop.worldshifter.utils.LogUtils;
+import com.davixdevelop.worldshifter.utils.RunStats;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class MoveRegionsTask implements Callable<Integer> {
@@ -16,47 +23,135 @@ public class MoveRegionsTask implements Callable<Integer> {
     private final int sectionOffsetY;
     private final boolean isMultiWorld;
     private final File outputFolder;
-    private final int regionFilesCount;
-    private final AtomicInteger counter;
+    private final ProgressReporter progressReporter;
     private final AtomicInteger removedEntities;
 
-    private final ConcurrentLinkedQueue<File> regionQueue;
+    private final RegionScheduler regionScheduler;
+    private final ForkJoinPool chunkPool;
+    private final ShiftPipeline pipeline;
+    private final MemoryBudget memoryBudget;
+    private final AdaptiveWorkerController workerController;
+    private final CheckpointJournal journal;
+    private final Long deadline;
 
-    public MoveRegionsTask(Integer targetWorldMin, Integer targetWorldMax, int offsetY, int sectionOffsetY, boolean isMultiWorld, File outputFolder, int regionFilesCount, AtomicInteger counter, AtomicInteger removedEntities, ConcurrentLinkedQueue<File> regionQueue) {
+    public MoveRegionsTask(Integer targetWorldMin, Integer targetWorldMax, int offsetY, int sectionOffsetY, boolean isMultiWorld, File outputFolder, ProgressReporter progressReporter, AtomicInteger removedEntities, RegionScheduler regionScheduler, ForkJoinPool chunkPool, ShiftPipeline pipeline, MemoryBudget memoryBudget, AdaptiveWorkerController workerController, CheckpointJournal journal, Long deadline) {
         this.targetWorldMin = targetWorldMin;
         this.targetWorldMax = targetWorldMax;
         this.offsetY = offsetY;
         this.sectionOffsetY = sectionOffsetY;
         this.isMultiWorld = isMultiWorld;
         this.outputFolder = outputFolder;
-        this.regionFilesCount = regionFilesCount;
-        this.counter = counter;
+        this.progressReporter = progressReporter;
         this.removedEntities = removedEntities;
-        this.regionQueue = regionQueue;
+        this.regionScheduler = regionScheduler;
+        this.chunkPool = chunkPool;
+        this.pipeline = pipeline;
+        this.memoryBudget = memoryBudget;
+        this.workerController = workerController;
+        this.journal = journal;
+        this.deadline = deadline;
     }
 
     @Override
-    public Integer call() {
+    public Integer call() throws InterruptedException {
         AtomicInteger ignoredSections = new AtomicInteger(0);
-        while (!regionQueue.isEmpty()) {
-            File regionFile = regionQueue.poll();
+        List<CompletableFuture<Void>> pipelineJobs = new ArrayList<>();
+        boolean isRetired = false;
 
-            if (regionFile == null)
+        while (!regionScheduler.isEmpty()) {
+            //Stop between regions, once the max runtime is reached
+            if(deadline != null && System.nanoTime() - deadline >= 0)
                 break;
 
-            int c = counter.incrementAndGet();
-            System.out.println("\rProcessing: " + regionFile.getName() + "(" + ((c * 100) / regionFilesCount) + "%)");
+            //Stop between regions, if the adaptive controller shrunk the amount of workers
+            if(workerController != null && workerController.shouldRetire()) {
+                isRetired = true;
+                break;
+            }
+
+            ScheduledRegion scheduledRegion = regionScheduler.poll();
+
+            if (scheduledRegion == null)
+                break;
+
+            File regionFile = scheduledRegion.getRegionFile();
+
+            MultiRegion<?> region = scheduledRegion.isEntities() ?
+                    new MultiEntitiesRegion(regionFile, targetWorldMin, targetWorldMax, offsetY, outputFolder, isMultiWorld, removedEntities) :
+                    new MultiTerrainRegion(regionFile, targetWorldMin, targetWorldMax, offsetY, sectionOffsetY, outputFolder, isMultiWorld, ignoredSections, removedEntities, chunkPool);
+
+            //Only admit the region once there is headroom in the memory budget. The pipeline writes the chunks as they
+            //are shifted anyway, and the chunks it holds are bounded by its queues, not by the admitted regions
+            long reservedMemory = 0;
+            if(memoryBudget != null && pipeline == null) {
+                region.setStreamingFlush(true);
+                reservedMemory = memoryBudget.acquire(estimateMemory(scheduledRegion));
+            }
+
+            //Capture the source before it's shifted, so that a change while shifting is picked up by the next run
+            CheckpointJournal.SourceState sourceState = journal != null ? CheckpointJournal.captureSource(regionFile) : null;
 
-            MultiTerrainRegion terrainRegion = new MultiTerrainRegion(regionFile, targetWorldMin, targetWorldMax, offsetY, sectionOffsetY, outputFolder, isMultiWorld, ignoredSections, removedEntities);
+            long startTime = System.nanoTime();
+            final long finalReservedMemory = reservedMemory;
             try {
-                terrainRegion.shiftRegion();
+                if(pipeline != null) {
+                    pipelineJobs.add(pipeline.submit(region)
+                            .whenComplete((result, ex) -> {
+                                regionScheduler.recordActual(scheduledRegion, System.nanoTime() - startTime);
+                                if(ex == null && journal != null)
+                                    journal.markCompleted(region, sourceState);
+                                RunStats.recordBytes(regionFile.length(), region.getOutputBytes());
+                                progressReporter.regionFinished(scheduledRegion);
+                                releaseMemory(finalReservedMemory);
+                            })
+                            //The errors of the chunks are already logged, so that the failed region doesn't fail the wait for the rest
+                            .exceptionally(ex -> null));
+                    reservedMemory = 0;
+                } else {
+                    region.shiftRegion();
+                    regionScheduler.recordActual(scheduledRegion, System.nanoTime() - startTime);
+                    //A region with failed chunks is shifted again by the next run
+                    if(!region.isFailed() && journal != null)
+                        journal.markCompleted(region, sourceState);
+                    RunStats.recordBytes(regionFile.length(), region.getOutputBytes());
+                }
+            }catch (InterruptedException ex) {
+                throw ex;
             }catch (Exception ex) {
-                LogUtils.logError("An exception happened while shifting region: " + regionFile.getName(), ex);
+                LogUtils.logError("An exception happened while shifting " + (scheduledRegion.isEntities() ? "entities region: " : "region: ") + regionFile.getName(), ex);
+                //With the streaming flush, the region files of the world slices are already opened while the region is shifted
+                if(pipeline == null)
+                    region.abortWriters();
             }finally {
-                terrainRegion.deleteTempRegionFile();
+                releaseMemory(reservedMemory);
+                if(pipeline == null)
+                    progressReporter.regionFinished(scheduledRegion);
             }
         }
 
+        //Wait for the regions in the pipeline, so that the ignored sections and removed entities are counted
+        CompletableFuture.allOf(pipelineJobs.toArray(new CompletableFuture[0])).join();
+
+        if(workerController != null && !isRetired)
+            workerController.workerFinished();
+
         return ignoredSections.get();
     }
+
+    /**
+     * Estimate the heap memory a region occupies while it's shifted. With the streaming flush, only the chunks
+     * that are being shifted are held in memory, which are at most as big as the largest chunk in the region
+     * @param scheduledRegion The scheduled region
+     * @return The estimated memory in bytes
+     */
+    private long estimateMemory(ScheduledRegion scheduledRegion) {
+        int parallelism = (chunkPool != null && !scheduledRegion.isEntities()) ? chunkPool.getParallelism() : 1;
+        long chunkMemory = (long) scheduledRegion.getLargestChunkSectors() * McaReader.SECTOR_SIZE * MemoryBudget.DECODED_MEMORY_RATIO;
+        return chunkMemory * parallelism;
+    }
+
+    private void releaseMemory(long reservedMemory) {
+        if(memoryBudget != null && reservedMemory > 0)
+            memoryBudget.release(reservedMemory);
+    }
 }
@@ -0,0 +1,98 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.model.MultiRegion;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates the progress of the region workers and renders it as a single updating line on the console.
+ * The workers only add to the counters, while the line is rendered on its own thread in intervals,
+ * so the workers never wait on the console. The ETA is estimated from the bytes of the processed region files
+ */
+public class ProgressReporter {
+    /**
+     * The time between two renders of the progress line in milliseconds
+     */
+    private static final int RENDER_INTERVAL = 500;
+
+    private final int regionsCount;
+    private final long totalBytes;
+    private final AtomicInteger processedRegions = new AtomicInteger();
+    private final LongAdder processedBytes = new LongAdder();
+
+    private final ScheduledExecutorService renderer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "progress-reporter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long startTime;
+
+    /**
+     * Create a progress reporter for the scheduled regions
+     * @param scheduledRegions The scheduled regions
+     */
+    public ProgressReporter(List<ScheduledRegion> scheduledRegions) {
+        regionsCount = scheduledRegions.size();
+        long bytes = 0;
+        for(ScheduledRegion region : scheduledRegions) {
+            bytes += region.getRegionFile().length();
+        }
+        totalBytes = bytes;
+    }
+
+    /**
+     * Start rendering the progress line
+     */
+    public void start() {
+        startTime = System.nanoTime();
+        renderer.scheduleAtFixedRate(this::render, RENDER_INTERVAL, RENDER_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Record a processed region
+     * @param scheduledRegion The processed region
+     */
+    public void regionFinished(ScheduledRegion scheduledRegion) {
+        processedRegions.incrementAndGet();
+        processedBytes.add(scheduledRegion.getRegionFile().length());
+    }
+
+    /**
+     * Stop rendering and render the final progress line
+     */
+    public void stop() {
+        renderer.shutdownNow();
+        render();
+    }
+
+    private void render() {
+        double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+        long bytes = processedBytes.sum();
+        int regions = processedRegions.get();
+
+        StringBuilder line = new StringBuilder();
+        line.append("Processed ").append(regions).append('/').append(regionsCount).append(" regions");
+        line.append(" (").append(totalBytes > 0 ? (bytes * 100) / totalBytes : 100).append("%)");
+        line.append(" | ").append(MultiRegion.SHIFTED_CHUNKS.sum()).append(" chunks");
+        line.append(String.format(Locale.ROOT, " | %.1f MB/s", seconds > 0 ? bytes / 1_048_576.0 / seconds : 0));
+
+        if(bytes > 0 && bytes < totalBytes) {
+            long etaSeconds = (long) ((totalBytes - bytes) * seconds / bytes);
+            line.append(String.format(Locale.ROOT, " | ETA %d:%02d:%02d", etaSeconds / 3600, (etaSeconds / 60) % 60, etaSeconds % 60));
+        }
+
+        long loggedErrors = LogUtils.getLoggedErrors();
+        if(loggedErrors > 0)
+            line.append(" | ").append(loggedErrors).append(" errors");
+
+        LogUtils.logProgress(line.toString());
+    }
+}
@@ -0,0 +1,138 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.io.McaReader;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Schedules the region files in the order of their estimated cost, from the most expensive to the least (LPT scheduling),
+ * so that a big region doesn't end up being processed alone at the end of the run. Terrain and entities region files
+ * share the same queue, so that both kinds of work are interleaved
+ */
+public class RegionScheduler {
+    private final ConcurrentLinkedQueue<ScheduledRegion> regionQueue = new ConcurrentLinkedQueue<>();
+    private final List<ScheduledRegion> scheduledRegions = new ArrayList<>();
+
+    /**
+     * Estimate the cost of the region files and queue them, with the most expensive first. Must be
+     * called before the regions are polled
+     * @param regionFiles The region files to schedule
+     * @param subFolder The type of the regions, ex "region"
+     */
+    public void schedule(File[] regionFiles, String subFolder) {
+        for(File regionFile : regionFiles) {
+            scheduledRegions.add(estimateCost(regionFile, subFolder));
+        }
+
+        scheduledRegions.sort(Comparator.comparingLong(ScheduledRegion::getPredictedCost).reversed());
+        regionQueue.clear();
+        regionQueue.addAll(scheduledRegions);
+    }
+
+    /**
+     * @return The next most expensive region, else null if there are no more regions
+     */
+    public ScheduledRegion poll() {
+        return regionQueue.poll();
+    }
+
+    public boolean isEmpty() {
+        return regionQueue.isEmpty();
+    }
+
+    /**
+     * @return The amount of regions, that were not yet polled
+     */
+    public int remaining() {
+        return regionQueue.size();
+    }
+
+    /**
+     * @return The amount of scheduled regions
+     */
+    public int size() {
+        return scheduledRegions.size();
+    }
+
+    /**
+     * @return The scheduled regions, from the most expensive to the least
+     */
+    public List<ScheduledRegion> getScheduledRegions() {
+        return scheduledRegions;
+    }
+
+    /**
+     * Record the actual cost of a processed region
+     * @param region The processed region
+     * @param nanos The time in nanoseconds it took to process the region
+     */
+    public void recordActual(ScheduledRegion region, long nanos) {
+        region.setActualCost(nanos);
+    }
+
+    /**
+     * Estimate the cost of a region from the amount of sectors its chunks occupy. If the header
+     * can't be read, the file size is used instead
+     * @param regionFile The region file
+     * @param subFolder The type of the region, ex "region"
+     * @return The scheduled region, with the estimated cost in sectors
+     */
+    public static ScheduledRegion estimateCost(File regionFile, String subFolder) {
+        try(McaReader reader = new McaReader(regionFile)) {
+            long sectors = 0;
+            int largestChunkSectors = 0;
+            for(int index = 0; index < 1024; index++) {
+                int chunkSectors = reader.getSectorCount(index);
+                sectors += chunkSectors;
+                largestChunkSectors = Math.max(largestChunkSectors, chunkSectors);
+            }
+
+            return new ScheduledRegion(regionFile, subFolder, sectors, largestChunkSectors);
+        } catch (IOException ex) {
+            long sectors = regionFile.length() / McaReader.SECTOR_SIZE;
+            return new ScheduledRegion(regionFile, subFolder, sectors, (int) Math.min(sectors, 255));
+        }
+    }
+
+    /**
+     * Write the predicted and actual cost of each region to a CSV report. The predicted
+     * cost is scaled from sectors to milliseconds by the ratio of the total actual and predicted cost
+     * @param reportFile The path to the report file, ex. schedule.csv in the output folder
+     */
+    public void writeReport(File reportFile) {
+        long predictedTotal = 0;
+        long actualTotal = 0;
+        for(ScheduledRegion region : scheduledRegions) {
+            if(region.getActualCost() < 0)
+                continue;
+
+            predictedTotal += region.getPredictedCost();
+            actualTotal += region.getActualCost();
+        }
+
+        if(actualTotal == 0)
+            return;
+
+        double nanosPerSector = predictedTotal > 0 ? (double) actualTotal / predictedTotal : 0;
+
+        try(PrintWriter writer = new PrintWriter(reportFile)) {
+            writer.println("type,file,predictedSectors,predictedMs,actualMs");
+            for(ScheduledRegion region : scheduledRegions) {
+                if(region.getActualCost() < 0)
+                    continue;
+
+                writer.println(region.getSubFolder() + "," + region.getRegionFile().getName() + "," + region.getPredictedCost() + "," +
+                        (long) (region.getPredictedCost() * nanosPerSector / 1_000_000) + "," + (region.getActualCost() / 1_000_000));
+            }
+        } catch (IOException ex) {
+            LogUtils.logError("Error while writing the schedule report", reportFile, ex);
+        }
+    }
+}
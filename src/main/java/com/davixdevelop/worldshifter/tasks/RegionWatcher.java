@@ -0,0 +1,153 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Watches the region and entities folders of the source world, and shifts the region files once they stop changing.
+ * A region file is only shifted, when there were no writes to it for the debounce time, as the server keeps writing
+ * to it while saving. The checkpoint journal decides if a region actually changed, so a region is never shifted twice
+ * for the same content, and the output of the deleted region files is removed
+ */
+public class RegionWatcher {
+    /**
+     * The time in milliseconds without writes to a region file, before it's shifted
+     */
+    private static final long DEBOUNCE_MS = 2000;
+
+    private final File worldFolder;
+    private final CheckpointJournal journal;
+    private final Consumer<RegionScheduler> batchRunner;
+
+    //The time of the last change of each changed region file, by its type
+    private final Map<File, Long> changedFiles = new HashMap<>();
+    private final Map<File, String> changedSubFolders = new HashMap<>();
+
+    /**
+     * Create a watcher of the source world
+     * @param worldFolder The path to the source world
+     * @param journal The journal of the completed regions
+     * @param batchRunner Shifts the scheduled regions of a batch, and returns once they are all shifted
+     */
+    public RegionWatcher(File worldFolder, CheckpointJournal journal, Consumer<RegionScheduler> batchRunner) {
+        this.worldFolder = worldFolder;
+        this.journal = journal;
+        this.batchRunner = batchRunner;
+    }
+
+    /**
+     * Watch the source world and shift the changed region files, until the thread is interrupted
+     * @throws IOException If the folders could not be watched
+     */
+    public void watch() throws IOException {
+        try(WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            Map<WatchKey, String> subFolders = new HashMap<>();
+            for(String subFolder : new String[]{"region", "entities"}) {
+                Path folder = worldFolder.toPath().resolve(subFolder);
+                if(folder.toFile().isDirectory())
+                    subFolders.put(folder.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), subFolder);
+            }
+
+            LogUtils.log("Watching " + worldFolder.getPath() + " for changed region files");
+
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.poll(DEBOUNCE_MS / 4, TimeUnit.MILLISECONDS);
+                if(key != null) {
+                    String subFolder = subFolders.get(key);
+                    Path folder = (Path) key.watchable();
+                    for(WatchEvent<?> event : key.pollEvents()) {
+                        if(event.kind() == OVERFLOW) {
+                            //Some events were lost, so check all the region files of the folder
+                            File[] regionFiles = folder.toFile().listFiles(path -> path.getName().endsWith("mca"));
+                            if(regionFiles != null) {
+                                for(File regionFile : regionFiles) {
+                                    markChanged(regionFile, subFolder);
+                                }
+                            }
+                            continue;
+                        }
+
+                        Path path = folder.resolve((Path) event.context());
+                        if(path.getFileName().toString().endsWith("mca"))
+                            markChanged(path.toFile(), subFolder);
+                    }
+                    key.reset();
+                }
+
+                shiftSettled();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void markChanged(File regionFile, String subFolder) {
+        changedFiles.put(regionFile, System.currentTimeMillis());
+        changedSubFolders.put(regionFile, subFolder);
+    }
+
+    /**
+     * Shift the region files, that didn't change for the debounce time, and remove the output of the deleted ones
+     */
+    private void shiftSettled() {
+        long now = System.currentTimeMillis();
+        List<File> regionFiles = new ArrayList<>();
+        List<File> entitiesFiles = new ArrayList<>();
+        boolean isDeleted = false;
+
+        Iterator<Map.Entry<File, Long>> iterator = changedFiles.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<File, Long> entry = iterator.next();
+            if(now - entry.getValue() < DEBOUNCE_MS)
+                continue;
+
+            File regionFile = entry.getKey();
+            String subFolder = changedSubFolders.remove(regionFile);
+            iterator.remove();
+
+            if(!regionFile.isFile())
+                isDeleted = true;
+            else if(!journal.isCompleted(regionFile, subFolder, false))
+                (subFolder.equals("entities") ? entitiesFiles : regionFiles).add(regionFile);
+        }
+
+        if(isDeleted) {
+            int removedCount = journal.removeDeleted(worldFolder);
+            if(removedCount > 0)
+                LogUtils.log("Removed the output of " + removedCount + " deleted regions");
+        }
+
+        if(regionFiles.isEmpty() && entitiesFiles.isEmpty()) {
+            if(isDeleted)
+                journal.save();
+            return;
+        }
+
+        RegionScheduler regionScheduler = new RegionScheduler();
+        regionScheduler.schedule(regionFiles.toArray(new File[0]), "region");
+        regionScheduler.schedule(entitiesFiles.toArray(new File[0]), "entities");
+
+        LogUtils.log("Shifting " + regionScheduler.size() + " changed regions");
+        batchRunner.accept(regionScheduler);
+        journal.save();
+    }
+}
@@ -0,0 +1,56 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import java.io.File;
+
+public class ScheduledRegion {
+    private final File regionFile;
+    private final String subFolder;
+    private final long predictedCost;
+    private final int largestChunkSectors;
+    private volatile long actualCost = -1;
+
+    /**
+     * Create a scheduled region
+     * @param regionFile The region file
+     * @param subFolder The type of the region, ex "region" or "entities"
+     * @param predictedCost The estimated cost of the region in sectors
+     * @param largestChunkSectors The amount of sectors the largest chunk in the region occupies
+     */
+    public ScheduledRegion(File regionFile, String subFolder, long predictedCost, int largestChunkSectors) {
+        this.regionFile = regionFile;
+        this.subFolder = subFolder;
+        this.predictedCost = predictedCost;
+        this.largestChunkSectors = largestChunkSectors;
+    }
+
+    public File getRegionFile() {
+        return regionFile;
+    }
+
+    public String getSubFolder() {
+        return subFolder;
+    }
+
+    public boolean isEntities() {
+        return subFolder.equals("entities");
+    }
+
+    public long getPredictedCost() {
+        return predictedCost;
+    }
+
+    public int getLargestChunkSectors() {
+        return largestChunkSectors;
+    }
+
+    /**
+     * @return The time in nanoseconds it took to process the region, else -1 if it was not yet processed
+     */
+    public long getActualCost() {
+        return actualCost;
+    }
+
+    public void setActualCost(long actualCost) {
+        this.actualCost = actualCost;
+    }
+}
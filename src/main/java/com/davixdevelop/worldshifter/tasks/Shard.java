@@ -0,0 +1,80 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A slice of the region files, that a single process shifts. The region files are partitioned by their coordinates,
+ * so every process assigns the same region files to the same shard, and the entities region file ends up in the
+ * same shard as the terrain region file with the same coordinates
+ * @param index The index of the shard, from 0 to the shard count (exclusive)
+ * @param count The amount of shards
+ */
+public record Shard(int index, int count) {
+    /**
+     * Parse the shard from its index and the shard count, ex. 0/4
+     * @param value The index and the count separated by a `/`
+     * @return The shard
+     * @throws IllegalArgumentException If the value is not in the format of i/n, or the index is not from 0 to n (exclusive)
+     */
+    public static Shard parse(String value) {
+        String[] parts = value.split("/");
+        if(parts.length != 2)
+            throw new IllegalArgumentException("Expected <index>/<count>, got: " + value);
+
+        int index;
+        int count;
+        try {
+            index = Integer.parseInt(parts[0]);
+            count = Integer.parseInt(parts[1]);
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Incorrect shard format, could not parse: " + value);
+        }
+
+        if(count < 1)
+            throw new IllegalArgumentException("Shard count must be bigger then 0");
+        if(index < 0 || index >= count)
+            throw new IllegalArgumentException("Shard index must be from 0 to " + (count - 1));
+
+        return new Shard(index, count);
+    }
+
+    /**
+     * @param regionFile The source region file, ex. r.1.-2.mca
+     * @param count The amount of shards
+     * @return The index of the shard, that the region file is assigned to
+     */
+    public static int getShardIndex(File regionFile, int count) {
+        String[] parts = regionFile.getName().split("\\.");
+        try {
+            int regionX = Integer.parseInt(parts[1]);
+            int regionZ = Integer.parseInt(parts[2]);
+            return Math.floorMod(regionX * 31 + regionZ, count);
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException ex) {
+            //Region files without coordinates are assigned by their name, which hashes the same in every process
+            return Math.floorMod(regionFile.getName().hashCode(), count);
+        }
+    }
+
+    /**
+     * @param regionFiles The source region files
+     * @return The region files, that are assigned to this shard
+     */
+    public File[] filter(File[] regionFiles) {
+        List<File> shardFiles = new ArrayList<>();
+        for(File regionFile : regionFiles) {
+            if(getShardIndex(regionFile, count) == index)
+                shardFiles.add(regionFile);
+        }
+
+        return shardFiles.toArray(new File[0]);
+    }
+
+    /**
+     * @return The suffix of the files, that each shard writes to the output folder, ex. .shard-0-of-4
+     */
+    public String getFileSuffix() {
+        return ".shard-" + index + "-of-" + count;
+    }
+}
@@ -0,0 +1,184 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Verifies and merges the output of the shards of a run. Each shard writes its own checkpoint journal and a summary
+ * with its counters to the output folder. Once the output of all the shards is in the same output folder, the merge
+ * checks that every source region file was completed by the shard it's assigned to and that its output is intact,
+ * combines the counters of the shards and merges their journals into the journal of the output folder, so that the
+ * merged output can be re-shifted with --incremental
+ */
+public class ShardMerger {
+    /**
+     * The max amount of problems, that are listed
+     */
+    private static final int MAX_LISTED_PROBLEMS = 10;
+
+    private final File worldFolder;
+    private final File outputFolder;
+    private final int shardCount;
+    private final List<String> problems = new ArrayList<>();
+
+    /**
+     * Create a merger of the shards
+     * @param worldFolder The path to the source world
+     * @param outputFolder The path to the output folder, with the output of all the shards
+     * @param shardCount The amount of shards
+     */
+    public ShardMerger(File worldFolder, File outputFolder, int shardCount) {
+        this.worldFolder = worldFolder;
+        this.outputFolder = outputFolder;
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Write the summary of a shard to the output folder, for the merge
+     * @param outputFolder The path to the output folder
+     * @param shard The shard
+     * @param shiftParams The parameters of the shift
+     * @param isComplete If the shard shifted all of its regions
+     * @param skippedSections The amount of skipped terrain sections
+     * @param removedEntities The amount of removed out of bounds entities/tile entities
+     */
+    public static void writeSummary(File outputFolder, Shard shard, String shiftParams, boolean isComplete, int skippedSections, int removedEntities) {
+        Properties summary = new Properties();
+        summary.setProperty("params", shiftParams);
+        summary.setProperty("complete", Boolean.toString(isComplete));
+        summary.setProperty("skippedSections", Integer.toString(skippedSections));
+        summary.setProperty("removedEntities", Integer.toString(removedEntities));
+
+        File summaryFile = getSummaryFile(outputFolder, shard);
+        try(Writer writer = new FileWriter(summaryFile)) {
+            summary.store(writer, "WorldShifter shard " + shard.index() + "/" + shard.count());
+        } catch (IOException ex) {
+            LogUtils.logError("Error while writing the shard summary", summaryFile, ex);
+        }
+    }
+
+    private static File getSummaryFile(File outputFolder, Shard shard) {
+        return Paths.get(outputFolder.getPath(), "summary" + shard.getFileSuffix() + ".properties").toFile();
+    }
+
+    /**
+     * Verify the output of the shards, and merge their journals and counters
+     * @return True if the output of all the shards is complete and intact
+     */
+    public boolean merge() {
+        String shiftParams = null;
+        long skippedSections = 0;
+        long removedEntities = 0;
+        List<CheckpointJournal> journals = new ArrayList<>();
+
+        for(int index = 0; index < shardCount; index++) {
+            Shard shard = new Shard(index, shardCount);
+            String shardName = "Shard " + index + "/" + shardCount;
+
+            Properties summary = new Properties();
+            try(Reader reader = new FileReader(getSummaryFile(outputFolder, shard))) {
+                summary.load(reader);
+            } catch (IOException ex) {
+                problems.add(shardName + " has no summary, it did not run or did not finish");
+                journals.add(null);
+                continue;
+            }
+
+            String params = summary.getProperty("params");
+            if(shiftParams == null)
+                shiftParams = params;
+            else if(!shiftParams.equals(params))
+                problems.add(shardName + " was shifted with different parameters (" + params + ")");
+
+            if(!Boolean.parseBoolean(summary.getProperty("complete")))
+                problems.add(shardName + " stopped before all its regions were shifted. Continue it with --resume");
+
+            try {
+                skippedSections += Long.parseLong(summary.getProperty("skippedSections", "0"));
+                removedEntities += Long.parseLong(summary.getProperty("removedEntities", "0"));
+            } catch (NumberFormatException ex) {
+                problems.add(shardName + " has an invalid summary");
+            }
+
+            CheckpointJournal journal = new CheckpointJournal(outputFolder, CheckpointJournal.getJournalFileName(shard), params);
+            try {
+                journal.load();
+                journals.add(journal);
+            } catch (IOException ex) {
+                problems.add(shardName + ": " + ex.getMessage());
+                journals.add(null);
+            }
+        }
+
+        int verifiedRegions = verify("region", journals) + verify("entities", journals);
+
+        if(!problems.isEmpty()) {
+            LogUtils.log("Could not merge the " + shardCount + " shards:");
+            for(int p = 0; p < Math.min(problems.size(), MAX_LISTED_PROBLEMS); p++) {
+                LogUtils.log("\t" + problems.get(p));
+            }
+            if(problems.size() > MAX_LISTED_PROBLEMS)
+                LogUtils.log("\t... and " + (problems.size() - MAX_LISTED_PROBLEMS) + " more");
+            return false;
+        }
+
+        CheckpointJournal mergedJournal = new CheckpointJournal(outputFolder, shiftParams);
+        for(CheckpointJournal journal : journals) {
+            mergedJournal.merge(journal);
+        }
+        mergedJournal.save();
+
+        LogUtils.log("Merged " + shardCount + " shards, verified " + verifiedRegions + " regions");
+
+        if (skippedSections > 0)
+            LogUtils.log("Skipped " + skippedSections + " terrain sections");
+
+        if (removedEntities > 0)
+            LogUtils.log("Skipped " + removedEntities + " out of bounds entities/tile entities");
+
+        return true;
+    }
+
+    /**
+     * Verify that every source region file of the type was completed by the shard it's assigned to, and only by it
+     * @param subFolder The type of the regions, ex "region"
+     * @param journals The journals of the shards, or null for the shards without a journal
+     * @return The amount of verified regions
+     */
+    private int verify(String subFolder, List<CheckpointJournal> journals) {
+        File[] regionFiles = Paths.get(worldFolder.getPath(), subFolder).toFile().listFiles(path -> path.getName().endsWith("mca"));
+        if(regionFiles == null)
+            return 0;
+
+        int verifiedRegions = 0;
+        for(File regionFile : regionFiles) {
+            int index = Shard.getShardIndex(regionFile, shardCount);
+            CheckpointJournal journal = journals.get(index);
+            if(journal == null)
+                continue;
+
+            if(journal.isCompleted(regionFile, subFolder, true))
+                verifiedRegions++;
+            else
+                problems.add(subFolder + "/" + regionFile.getName() + " is missing from shard " + index + "/" + shardCount + ", or its source or output changed");
+
+            String key = subFolder + "/" + regionFile.getName();
+            for(int other = 0; other < journals.size(); other++) {
+                if(other != index && journals.get(other) != null && journals.get(other).getRegionKeys().contains(key))
+                    problems.add(key + " was also shifted by shard " + other + "/" + shardCount);
+            }
+        }
+
+        return verifiedRegions;
+    }
+}
@@ -0,0 +1,46 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.model.MultiTerrainRegion;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+
+import java.util.concurrent.RecursiveAction;
+
+public class ShiftChunksTask extends RecursiveAction {
+    /**
+     * The max amount of chunk indices a task processes, before it splits itself
+     */
+    private static final int CHUNKS_THRESHOLD = 64;
+
+    private final MultiTerrainRegion terrainRegion;
+    private final int fromIndex;
+    private final int toIndex;
+
+    /**
+     * Create a fork-join task, that shifts a range of chunks in a region
+     * @param terrainRegion The terrain region to shift
+     * @param fromIndex The first chunk index (inclusive)
+     * @param toIndex The last chunk index (exclusive)
+     */
+    public ShiftChunksTask(MultiTerrainRegion terrainRegion, int fromIndex, int toIndex) {
+        this.terrainRegion = terrainRegion;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+    }
+
+    @Override
+    protected void compute() {
+        if(toIndex - fromIndex > CHUNKS_THRESHOLD) {
+            int middleIndex = (fromIndex + toIndex) >>> 1;
+            invokeAll(new ShiftChunksTask(terrainRegion, fromIndex, middleIndex),
+                    new ShiftChunksTask(terrainRegion, middleIndex, toIndex));
+            return;
+        }
+
+        try {
+            terrainRegion.shiftChunks(fromIndex, toIndex);
+        } catch (Exception ex) {
+            LogUtils.logError("An exception happened while shifting chunks " + fromIndex + "-" + (toIndex - 1), terrainRegion.sourceRegionFile, ex);
+            terrainRegion.markFailed();
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.davixdevelop.worldshifter.tasks;
+
+import com.davixdevelop.worldshifter.io.ChunkCodec;
+import com.davixdevelop.worldshifter.io.ClipPredicate;
+import com.davixdevelop.worldshifter.io.ClippedFilter;
+import com.davixdevelop.worldshifter.io.McaReader;
+import com.davixdevelop.worldshifter.io.McaWriter;
+import com.davixdevelop.worldshifter.io.OpaqueSections;
+import com.davixdevelop.worldshifter.io.RawChunk;
+import com.davixdevelop.worldshifter.model.ChunkPos;
+import com.davixdevelop.worldshifter.model.MultiRegion;
+import com.davixdevelop.worldshifter.model.MultiTerrainRegion;
+import com.davixdevelop.worldshifter.utils.LogUtils;
+import com.davixdevelop.worldshifter.utils.RunStats;
+import io.github.ensgijs.nbt.mca.ChunkBase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Staged pipeline, that shifts regions in the stages of: raw sector read, decompress and parse, shift transform,
+ * serialize and compress and write. The stages are connected by bounded queues, so that a slow stage
+ * blocks the stages before it. The read stage runs on the threads that submit the regions.
+ */
+public class ShiftPipeline implements AutoCloseable {
+    /**
+     * The max amount of chunks waiting in the queue of each stage
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    private final BlockingQueue<ChunkItem> parseQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<ChunkItem> transformQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<ChunkItem> compressQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final BlockingQueue<ChunkItem> writeQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private final ExecutorService stagesExecutor;
+    private final boolean isSectionPassthrough;
+
+    /**
+     * Create the pipeline and start the threads of its stages
+     * @param parseThreads The amount of threads that decompress and parse the chunks
+     * @param transformThreads The amount of threads that shift the chunks
+     * @param compressThreads The amount of threads that serialize and compress the chunks
+     * @param writeThreads The amount of threads that write the chunks
+     * @param isSectionPassthrough If the sections of the terrain chunks should be copied as opaque bytes, instead of being parsed
+     */
+    public ShiftPipeline(int parseThreads, int transformThreads, int compressThreads, int writeThreads, boolean isSectionPassthrough) {
+        this.isSectionPassthrough = isSectionPassthrough;
+        stagesExecutor = Executors.newFixedThreadPool(parseThreads + transformThreads + compressThreads + writeThreads);
+
+        startStage(parseThreads, parseQueue, item -> {
+            item.job.parse(item);
+            transformQueue.put(item);
+        });
+
+        startStage(transformThreads, transformQueue, item -> {
+            for(ChunkItem outputItem : item.job.transform(item)) {
+                compressQueue.put(outputItem);
+            }
+        });
+
+        startStage(compressThreads, compressQueue, item -> {
+            item.job.compress(item);
+            writeQueue.put(item);
+        });
+
+        startStage(writeThreads, writeQueue, item -> item.job.write(item));
+    }
+
+    private void startStage(int threadCount, BlockingQueue<ChunkItem> queue, StageHandler handler) {
+        for(int t = 0; t < threadCount; t++) {
+            stagesExecutor.execute(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        ChunkItem item = queue.take();
+                        try {
+                            handler.handle(item);
+                        } catch (InterruptedException ex) {
+                            throw ex;
+                        } catch (Exception ex) {
+                            LogUtils.logError("Error while processing chunk at index:" + item.index, item.job.region.sourceRegionFile, ex);
+                            //The chunk is dropped, so release it and its buffer from the region, and fail the region
+                            if(item.rawChunk != null) {
+                                item.rawChunk.release();
+                                item.rawChunk = null;
+                            }
+                            item.job.fail();
+                            item.job.complete();
+                        }
+                    }
+                } catch (InterruptedException ignored) {
+                    //The pipeline was closed
+                }
+            });
+        }
+    }
+
+    /**
+     * Read the raw chunks of the region and submit them to the pipeline. This is the read stage
+     * of the pipeline and blocks, while the parse queue is full
+     * @param region The region to shift
+     * @return A future, that completes when all the chunks of the region are written, or completes exceptionally
+     * once the rest of the chunks are written, if any chunk of the region could not be read, shifted or written
+     * @throws InterruptedException If the thread was interrupted while waiting on the parse queue
+     */
+    public <C extends ChunkBase> CompletableFuture<Void> submit(MultiRegion<C> region) throws InterruptedException {
+        RegionJob<C> job = new RegionJob<>(region, isSectionPassthrough && region instanceof MultiTerrainRegion);
+
+        try(McaReader reader = new McaReader(region.sourceRegionFile)) {
+            for(int index = 0; index < 1024; index++) {
+                if(!reader.hasChunk(index))
+                    continue;
+
+                ChunkItem item = new ChunkItem(job, index);
+                try {
+                    long readStart = System.nanoTime();
+                    item.rawChunk = reader.readChunk(index);
+                    RunStats.record(RunStats.Stage.READ, readStart);
+                } catch (IOException ex) {
+                    LogUtils.logError("Error while reading raw chunk at index:" + index, region.sourceRegionFile, ex);
+                    job.fail();
+                    continue;
+                }
+
+                job.pending.incrementAndGet();
+                parseQueue.put(item);
+            }
+        } catch (IOException ex) {
+            LogUtils.logError("Error while reading " + region.subFolder + " file", region.sourceRegionFile, ex);
+            job.fail();
+        }
+
+        //Release the read stage hold on the region
+        job.complete();
+        return job.future;
+    }
+
+    /**
+     * Stop the threads of the stages. All submitted regions must be completed beforehand
+     */
+    @Override
+    public void close() {
+        stagesExecutor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    private interface StageHandler {
+        void handle(ChunkItem item) throws Exception;
+    }
+
+    /**
+     * A chunk moving through the stages of the pipeline
+     */
+    private static class ChunkItem {
+        private final RegionJob<?> job;
+        private final int index;
+        private RawChunk rawChunk;
+        private ChunkBase chunk;
+        private OpaqueSections opaqueSections;
+        private int worldIndex;
+        private int chunkX;
+        private int chunkZ;
+
+        private ChunkItem(RegionJob<?> job, int index) {
+            this.job = job;
+            this.index = index;
+        }
+    }
+
+    /**
+     * The state of a region in the pipeline
+     */
+    private static class RegionJob<C extends ChunkBase> {
+        private final MultiRegion<C> region;
+        private final boolean isSectionPassthrough;
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private final Map<Integer, McaWriter> writers = new TreeMap<>();
+
+        //The amount of chunks in the pipeline, plus one for the read stage
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private volatile boolean isFailed = false;
+
+        private RegionJob(MultiRegion<C> region, boolean isSectionPassthrough) {
+            this.region = region;
+            this.isSectionPassthrough = isSectionPassthrough;
+        }
+
+        private void parse(ChunkItem item) throws IOException {
+            long decompressStart = System.nanoTime();
+            byte[] data = ChunkCodec.decompress(item.rawChunk);
+            RunStats.record(RunStats.Stage.DECOMPRESS, decompressStart);
+            //Return the read buffer to the pool for the next chunks
+            item.rawChunk.release();
+            item.rawChunk = null;
+
+            long parseStart = System.nanoTime();
+            //Skip the sections and entities, that would be clipped, before they are parsed
+            ClipPredicate clipPredicate = region.getClipPredicate();
+            if(clipPredicate != null)
+                data = ClippedFilter.filter(data, clipPredicate);
+
+            if(isSectionPassthrough) {
+                //Only parse the stubs of the sections, their bytes are copied to the world slices chunks
+                item.opaqueSections = OpaqueSections.strip(data);
+                if(item.opaqueSections != null)
+                    data = item.opaqueSections.getStrippedData();
+            }
+
+            item.chunk = region.createChunk(ChunkCodec.parse(data));
+            RunStats.record(RunStats.Stage.PARSE, parseStart);
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<ChunkItem> transform(ChunkItem item) throws Exception {
+            C chunk = (C) item.chunk;
+            long transformStart = System.nanoTime();
+            region.shiftChunk(chunk);
+            RunStats.record(RunStats.Stage.TRANSFORM, transformStart);
+
+            Map<Integer, C> indexChunks = region.takeChunks(ChunkPos.getLocalIndex(chunk.getChunkX(), chunk.getChunkZ()));
+            List<ChunkItem> outputItems = new ArrayList<>(indexChunks.size());
+            for(int worldIndex : indexChunks.keySet()) {
+                ChunkItem outputItem = new ChunkItem(this, item.index);
+                outputItem.chunk = indexChunks.get(worldIndex);
+                outputItem.worldIndex = worldIndex;
+                outputItem.chunkX = chunk.getChunkX();
+                outputItem.chunkZ = chunk.getChunkZ();
+                outputItem.opaqueSections = item.opaqueSections;
+                outputItems.add(outputItem);
+            }
+
+            //Swap the source chunk for its world slices chunks
+            pending.addAndGet(outputItems.size());
+            complete();
+
+            return outputItems;
+        }
+
+        private void compress(ChunkItem item) throws IOException {
+            long serializeStart = System.nanoTime();
+            byte[] data = ChunkCodec.serialize(item.chunk.updateHandle());
+            if(item.opaqueSections != null)
+                data = item.opaqueSections.splice(data);
+            RunStats.record(RunStats.Stage.SERIALIZE, serializeStart);
+
+            long compressStart = System.nanoTime();
+            item.rawChunk = ChunkCodec.compress(data);
+            RunStats.record(RunStats.Stage.COMPRESS, compressStart);
+            item.chunk = null;
+            item.opaqueSections = null;
+        }
+
+        private void write(ChunkItem item) throws IOException {
+            long writeStart = System.nanoTime();
+            getWriter(item.worldIndex).write(item.chunkX, item.chunkZ, item.rawChunk);
+            RunStats.record(RunStats.Stage.WRITE, writeStart);
+            item.rawChunk.release();
+            item.rawChunk = null;
+            complete();
+        }
+
+        private synchronized McaWriter getWriter(int worldIndex) throws IOException {
+            McaWriter writer = writers.get(worldIndex);
+            if(writer == null) {
+                File regionFile = region.getRegionFileForIndex(worldIndex);
+                regionFile.getParentFile().mkdirs();
+                writer = new McaWriter(regionFile);
+                writers.put(worldIndex, writer);
+            }
+
+            return writer;
+        }
+
+        /**
+         * Mark that a chunk of the region was dropped, so that the region completes exceptionally
+         */
+        private void fail() {
+            isFailed = true;
+            region.markFailed();
+        }
+
+        /**
+         * Release a chunk from the region. Once all are released, the world slices region files are closed
+         */
+        private void complete() {
+            if(pending.decrementAndGet() != 0)
+                return;
+
+            long flushStart = System.nanoTime();
+            synchronized (this) {
+                for(Map.Entry<Integer, McaWriter> writer : writers.entrySet()) {
+                    try {
+                        writer.getValue().close();
+                        region.recordOutputHash(writer.getKey(), writer.getValue().getHash());
+                    } catch (IOException ex) {
+                        LogUtils.logError("Error while writing file", writer.getValue().getRegionFile(), ex);
+                        fail();
+                    }
+                }
+            }
+
+            RunStats.record(RunStats.Stage.FLUSH, flushStart);
+            if(isFailed)
+                future.completeExceptionally(new IOException("Not all chunks of " + region.sourceRegionFile.getName() + " were shifted, see the logged errors"));
+            else
+                future.complete(null);
+        }
+    }
+}
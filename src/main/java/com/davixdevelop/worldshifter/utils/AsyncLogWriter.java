@@ -0,0 +1,143 @@
+package com.davixdevelop.worldshifter.utils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes the logged errors to a log file on its own thread, one JSON object per line. The errors are handed over
+ * through a bounded queue, so a worker never blocks on the output: if the queue is full the error is dropped and
+ * only counted. The stack traces are also built on the writer thread
+ */
+public class AsyncLogWriter implements Closeable {
+    /**
+     * The amount of errors, that can wait to be written
+     */
+    private static final int QUEUE_CAPACITY = 4096;
+
+    private final File logFile;
+    private final BlockingQueue<LogRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong loggedErrors = new AtomicLong();
+    private final AtomicLong droppedErrors = new AtomicLong();
+    private final Thread writerThread;
+    private volatile boolean isClosed = false;
+
+    /**
+     * Open the log file and start the writer thread
+     * @param logFile The path to the log file
+     * @throws IOException If the log file could not be opened
+     */
+    public AsyncLogWriter(File logFile) throws IOException {
+        this.logFile = logFile;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile), StandardCharsets.UTF_8));
+
+        writerThread = new Thread(() -> writeRecords(writer), "log-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queue the error to be written, without waiting
+     * @param message The message of the error
+     * @param file The file the error happened in, else null
+     * @param ex The caught exception
+     */
+    public void logError(String message, File file, Exception ex) {
+        loggedErrors.incrementAndGet();
+        if(isClosed || !queue.offer(new LogRecord(System.currentTimeMillis(), Thread.currentThread().getName(), message, file, ex)))
+            droppedErrors.incrementAndGet();
+    }
+
+    /**
+     * @return The amount of logged errors, including the dropped errors
+     */
+    public long getLoggedErrors() {
+        return loggedErrors.get();
+    }
+
+    /**
+     * @return The amount of errors, that were dropped because the queue was full
+     */
+    public long getDroppedErrors() {
+        return droppedErrors.get();
+    }
+
+    public File getLogFile() {
+        return logFile;
+    }
+
+    /**
+     * Write the queued errors and close the log file
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        try {
+            writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeRecords(Writer writer) {
+        try(writer) {
+            while (!isClosed || !queue.isEmpty()) {
+                LogRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(record == null) {
+                    writer.flush();
+                    continue;
+                }
+
+                writeRecord(writer, record);
+            }
+
+            if(droppedErrors.get() > 0)
+                writer.write("{\"time\": \"" + Instant.now() + "\", \"message\": \"Dropped " + droppedErrors.get() + " errors, as the log queue was full\"}\n");
+        } catch (IOException | InterruptedException ex) {
+            System.err.println("Error while writing the log file " + logFile.getPath() + ": " + ex.getMessage());
+        }
+    }
+
+    private static void writeRecord(Writer writer, LogRecord record) throws IOException {
+        StringWriter stackTrace = new StringWriter();
+        record.exception.printStackTrace(new PrintWriter(stackTrace));
+
+        writer.write("{\"time\": \"" + Instant.ofEpochMilli(record.time) + "\"");
+        writer.write(", \"thread\": \"" + escape(record.thread) + "\"");
+        writer.write(", \"message\": \"" + escape(record.message) + "\"");
+        if(record.file != null)
+            writer.write(", \"file\": \"" + escape(record.file.getPath()) + "\"");
+        writer.write(", \"exception\": \"" + escape(record.exception.getClass().getName()) + "\"");
+        writer.write(", \"exceptionMessage\": \"" + escape(String.valueOf(record.exception.getMessage())) + "\"");
+        writer.write(", \"stackTrace\": \"" + escape(stackTrace.toString()) + "\"}\n");
+    }
+
+    private static String escape(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for(int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> escaped.append("\\\"");
+                case '\\' -> escaped.append("\\\\");
+                case '\n' -> escaped.append("\\n");
+                case '\r' -> escaped.append("\\r");
+                case '\t' -> escaped.append("\\t");
+                default -> {
+                    if(c < 0x20)
+                        escaped.append(String.format("\\u%04x", (int) c));
+                    else
+                        escaped.append(c);
+                }
+            }
+        }
+
+        return escaped.toString();
+    }
+
+    private record LogRecord(long time, String thread, String message, File file, Exception exception) {
+    }
+}
@@ -0,0 +1,282 @@
+package com.davixdevelop.worldshifter.utils;
+
+import com.davixdevelop.worldshifter.model.WorldHeight;
+import io.github.ensgijs.nbt.io.NamedTag;
+import io.github.ensgijs.nbt.mca.util.VersionAware;
+import io.github.ensgijs.nbt.tag.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rewrites the Y of an entity in a single traversal of its compound tag. The paths of the Y-bearing tags are
+ * compiled into a key trie, that is walked together with the compound tag, so each tag is only visited once.
+ * The rules are loaded from a data file, and a trie is compiled for each data version a rule starts at
+ */
+public class EntityYRewriter {
+    /**
+     * The resource with the default rules
+     */
+    public static final String DEFAULT_RULES = "/entity_y_tags.txt";
+
+    private static final String WILDCARD = "*";
+
+    private static final ThreadLocal<RewriteState> STATES = ThreadLocal.withInitial(RewriteState::new);
+
+    private final Node root;
+    private final int originsCount;
+    private final List<String[]> originPaths;
+
+    private EntityYRewriter(Node root, List<String[]> originPaths) {
+        this.root = root;
+        this.originsCount = originPaths.size();
+        this.originPaths = originPaths;
+    }
+
+    /**
+     * @return The paths of the origin tags, in the order they decide the world slice of the entity
+     */
+    public List<String[]> getOriginPaths() {
+        return originPaths;
+    }
+
+    /**
+     * Shift the Y-bearing tags of the entity and find the world slice it belongs to
+     * @param entity The entity or block entity
+     * @param offsetY The offset of the target world
+     * @param worldHeight The target world height
+     * @param removedEntities The counter of the entities, that are out of bounds of the target world
+     * @param isMultiWorld If multi world is enabled
+     * @return The world index of the entity, else null if the entity has no origin or it's out of bounds of the target world
+     */
+    public Integer rewrite(CompoundTag entity, int offsetY, WorldHeight worldHeight, AtomicInteger removedEntities, boolean isMultiWorld) {
+        RewriteState state = STATES.get();
+        state.reset(originsCount);
+
+        try {
+            visit(entity, root, state, true);
+
+            //Find the first entity origin in the order of the rules, that fits into the target world
+            Integer worldIndex = null;
+            for (int o = 0; o < originsCount; o++) {
+                Tag<?> originTag = state.origins[o];
+                if (originTag == null)
+                    continue;
+
+                double origin = (originTag instanceof IntTag intTag) ? intTag.asDouble() : ((DoubleTag) originTag).asDouble();
+                int originWorldIndex = worldHeight.getWorldIndexFromY(origin + offsetY);
+
+                //Only include entities if multi world is enabled, or world index of entity origin is 0
+                if (isMultiWorld || originWorldIndex == 0) {
+                    worldIndex = originWorldIndex;
+                    break;
+                } else
+                    removedEntities.incrementAndGet();
+            }
+
+            if (worldIndex == null)
+                return null;
+
+            for (Tag<?> yTag : state.yTags) {
+                EntityUtils.offsetTag(yTag, worldHeight, offsetY, worldIndex, isMultiWorld);
+            }
+
+            return worldIndex;
+        } finally {
+            state.yTags.clear();
+        }
+    }
+
+    private void visit(CompoundTag compoundTag, Node node, RewriteState state, boolean isRoot) {
+        for (NamedTag namedTag : compoundTag) {
+            Node child = node.children.get(namedTag.getName());
+            if (child != null)
+                visitTag(namedTag.getTag(), child, state, isRoot);
+
+            if (node.wildcard != null)
+                visitTag(namedTag.getTag(), node.wildcard, state, isRoot);
+        }
+    }
+
+    private void visitTag(Tag<?> tag, Node node, RewriteState state, boolean isRoot) {
+        if (node.isY || node.originOrder >= 0) {
+            Tag<?> yTag = getYTag(tag);
+            if (yTag != null) {
+                state.yTags.add(yTag);
+
+                //The origins of the passengers don't decide the world slice of the entity
+                if (isRoot && node.originOrder >= 0 && state.origins[node.originOrder] == null && (yTag instanceof IntTag || yTag instanceof DoubleTag))
+                    state.origins[node.originOrder] = yTag;
+            }
+        }
+
+        if (node.isPassengers && tag instanceof ListTag<?> passengers) {
+            for (Tag<?> passenger : passengers) {
+                if (passenger instanceof CompoundTag passengerTag)
+                    visit(passengerTag, root, state, false);
+            }
+        }
+
+        if (tag instanceof CompoundTag compoundTag && (!node.children.isEmpty() || node.wildcard != null))
+            visit(compoundTag, node, state, isRoot);
+    }
+
+    /**
+     * Get the tag that holds the Y
+     * @param tag The tag at the path of a rule
+     * @return The Y tag, else null if the tag doesn't hold a Y
+     */
+    private static Tag<?> getYTag(Tag<?> tag) {
+        if (tag instanceof ListTag<?> listTag)
+            return listTag.size() > 1 ? listTag.get(1) : null;
+
+        if (tag instanceof IntTag || tag instanceof DoubleTag || tag instanceof IntArrayTag)
+            return tag;
+
+        return null;
+    }
+
+    /**
+     * Load the default rules
+     * @return The rewriters per data version
+     */
+    public static VersionAware<EntityYRewriter> loadDefault() {
+        try (InputStream stream = EntityYRewriter.class.getResourceAsStream(DEFAULT_RULES)) {
+            if (stream == null)
+                throw new FileNotFoundException("Missing resource " + DEFAULT_RULES);
+
+            return load(new InputStreamReader(stream, StandardCharsets.UTF_8));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Load the rules from a data file
+     * @param rulesFile The path to the rules file
+     * @return The rewriters per data version
+     * @throws IOException If the file could not be read
+     * @throws IllegalArgumentException If a rule is malformed
+     */
+    public static VersionAware<EntityYRewriter> load(File rulesFile) throws IOException {
+        try (Reader reader = new FileReader(rulesFile, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    private static VersionAware<EntityYRewriter> load(Reader reader) throws IOException {
+        List<Rule> rules = new ArrayList<>();
+        TreeSet<Integer> sinceVersions = new TreeSet<>();
+        sinceVersions.add(0);
+
+        BufferedReader bufferedReader = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = bufferedReader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+                continue;
+
+            String[] parts = line.split("\\s+");
+            if (parts.length < 2 || parts.length > 3)
+                throw new IllegalArgumentException("Expected <type> <path> [<since data version>] on line " + lineNumber + ": " + line);
+
+            RuleType type = switch (parts[0]) {
+                case "origin" -> RuleType.ORIGIN;
+                case "relative" -> RuleType.RELATIVE;
+                case "passengers" -> RuleType.PASSENGERS;
+                default -> throw new IllegalArgumentException("Unknown rule type on line " + lineNumber + ": " + parts[0]);
+            };
+
+            int sinceVersion = 0;
+            if (parts.length == 3) {
+                try {
+                    sinceVersion = Integer.parseInt(parts[2]);
+                } catch (NumberFormatException ex) {
+                    throw new IllegalArgumentException("Incorrect data version on line " + lineNumber + ": " + parts[2]);
+                }
+            }
+
+            rules.add(new Rule(type, parts[1].split("\\."), sinceVersion));
+            sinceVersions.add(sinceVersion);
+        }
+
+        VersionAware<EntityYRewriter> rewriters = new VersionAware<>();
+        for (int version : sinceVersions) {
+            rewriters.register(version, compile(rules, version));
+        }
+
+        return rewriters;
+    }
+
+    /**
+     * Compile the rules, that apply to the data version, into a key trie
+     */
+    private static EntityYRewriter compile(List<Rule> rules, int dataVersion) {
+        Node root = new Node();
+        List<String[]> originPaths = new ArrayList<>();
+
+        for (Rule rule : rules) {
+            if (rule.sinceVersion > dataVersion)
+                continue;
+
+            Node node = root;
+            for (String key : rule.path) {
+                if (key.equals(WILDCARD)) {
+                    if (node.wildcard == null)
+                        node.wildcard = new Node();
+                    node = node.wildcard;
+                } else
+                    node = node.children.computeIfAbsent(key, k -> new Node());
+            }
+
+            switch (rule.type) {
+                case ORIGIN -> {
+                    if (node.originOrder < 0) {
+                        node.originOrder = originPaths.size();
+                        originPaths.add(rule.path);
+                    }
+                }
+                case RELATIVE -> node.isY = true;
+                case PASSENGERS -> node.isPassengers = true;
+            }
+        }
+
+        return new EntityYRewriter(root, List.copyOf(originPaths));
+    }
+
+    private enum RuleType {
+        ORIGIN,
+        RELATIVE,
+        PASSENGERS
+    }
+
+    private record Rule(RuleType type, String[] path, int sinceVersion) {
+    }
+
+    private static class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcard;
+        private int originOrder = -1;
+        private boolean isY;
+        private boolean isPassengers;
+    }
+
+    /**
+     * The Y tags found in the traversal of an entity. Reused by each thread, so that the traversal doesn't allocate
+     */
+    private static class RewriteState {
+        private final List<Tag<?>> yTags = new ArrayList<>();
+        private Tag<?>[] origins = new Tag<?>[0];
+
+        private void reset(int originsCount) {
+            if (origins.length < originsCount)
+                origins = new Tag<?>[originsCount];
+            else
+                Arrays.fill(origins, 0, originsCount, null);
+        }
+    }
+}
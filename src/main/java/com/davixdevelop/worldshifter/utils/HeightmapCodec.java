@@ -0,0 +1,207 @@
+package com.davixdevelop.worldshifter.utils;
+
+import com.davixdevelop.worldshifter.model.WorldHeight;
+
+/**
+ * Codec, that shifts and slices the heightmaps of a chunk. The bit-packed heightmaps are repacked straight from
+ * the source bit width to the bit width of the target world height, without decoding them into new arrays. Both
+ * the Heightmaps and the legacy HeightMap go through the same height transform. A codec holds reusable buffers,
+ * so each thread uses its own codec
+ */
+public class HeightmapCodec {
+    /**
+     * The amount of heights in a heightmap
+     */
+    public static final int HEIGHTS_COUNT = 256;
+
+    private static final ThreadLocal<HeightmapCodec> CODECS = ThreadLocal.withInitial(HeightmapCodec::new);
+
+    private final int[] values = new int[HEIGHTS_COUNT];
+    private int min;
+    private int max;
+
+    /**
+     * @return The codec of the current thread
+     */
+    public static HeightmapCodec get() {
+        return CODECS.get();
+    }
+
+    /**
+     * @return The min height of the last scanned heightmap
+     */
+    public int getMin() {
+        return min;
+    }
+
+    /**
+     * @return The max height of the last scanned heightmap
+     */
+    public int getMax() {
+        return max;
+    }
+
+    /**
+     * Find the min and max height of a bit-packed heightmap in a single pass
+     * @param data The bit-packed heightmap
+     * @param bitsPerValue The bit width of the heights
+     * @param minHeight The min block height of the chunk, the packed values are relative to
+     * @return False, if a height is bellow the min height or the heightmap can't be unpacked, in which case it should be excluded
+     */
+    public boolean scan(long[] data, int bitsPerValue, int minHeight) {
+        if(!unpack(data, bitsPerValue))
+            return false;
+
+        int minValue = Integer.MAX_VALUE;
+        int maxValue = Integer.MIN_VALUE;
+        for(int i = 0; i < HEIGHTS_COUNT; i++) {
+            int value = values[i];
+            //A packed value of 0 is a height bellow the min height
+            if(value == 0)
+                return false;
+
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+        }
+
+        min = minHeight - 1 + minValue;
+        max = minHeight - 1 + maxValue;
+        return true;
+    }
+
+    /**
+     * Find the min and max height of a legacy heightmap in a single pass
+     * @param heights The heights of the legacy heightmap
+     * @return False, if the heightmap is empty
+     */
+    public boolean scan(int[] heights) {
+        if(heights.length == 0)
+            return false;
+
+        int minValue = Integer.MAX_VALUE;
+        int maxValue = Integer.MIN_VALUE;
+        for(int h : heights) {
+            minValue = Math.min(minValue, h);
+            maxValue = Math.max(maxValue, h);
+        }
+
+        min = minValue;
+        max = maxValue;
+        return true;
+    }
+
+    /**
+     * Shift a bit-packed heightmap and slice it to the world index
+     * @param source The bit-packed source heightmap
+     * @param sourceBits The bit width of the source heights
+     * @param sourceMinHeight The min block height of the source chunk
+     * @param offsetY The offset of the target world
+     * @param targetWorldHeight The target world height
+     * @param worldIndex The index of the world slice
+     * @param isMultiWorld If multi world is enabled. If not, the heights are clipped to the target world height
+     * @param target The array to repack into, if it has the length of the target bit width, else null
+     * @return The bit-packed heightmap of the world slice
+     */
+    public long[] repack(long[] source, int sourceBits, int sourceMinHeight, int offsetY, WorldHeight targetWorldHeight, int worldIndex, boolean isMultiWorld, long[] target) {
+        if(!unpack(source, sourceBits))
+            return source;
+
+        int targetBits = 32 - Integer.numberOfLeadingZeros(targetWorldHeight.getWorldHeight() - 1);
+        int valuesPerLong = 64 / targetBits;
+        int targetLength = (HEIGHTS_COUNT + valuesPerLong - 1) / valuesPerLong;
+        if(target == null || target.length != targetLength)
+            target = new long[targetLength];
+
+        int heightBase = sourceMinHeight - 1 + offsetY;
+        int targetBase = targetWorldHeight.getMinHeight() - 1;
+
+        int i = 0;
+        for(int l = 0; l < targetLength; l++) {
+            long packed = 0;
+            for(int shift = 0; shift + targetBits <= 64 && i < HEIGHTS_COUNT; shift += targetBits, i++) {
+                int h = sliceHeight(heightBase + values[i], targetWorldHeight, worldIndex, isMultiWorld);
+                packed |= (long) (h - targetBase) << shift;
+            }
+            target[l] = packed;
+        }
+
+        return target;
+    }
+
+    /**
+     * Shift a legacy heightmap and slice it to the world index
+     * @param source The heights of the source legacy heightmap
+     * @param offsetY The offset of the target world
+     * @param targetWorldHeight The target world height
+     * @param worldIndex The index of the world slice
+     * @param isMultiWorld If multi world is enabled. If not, the heights are clipped to the target world height
+     * @param target The heights of the world slice legacy heightmap to write to
+     */
+    public void slice(int[] source, int offsetY, WorldHeight targetWorldHeight, int worldIndex, boolean isMultiWorld, int[] target) {
+        int length = Math.min(source.length, target.length);
+        for(int i = 0; i < length; i++) {
+            target[i] = sliceHeight(source[i] + offsetY, targetWorldHeight, worldIndex, isMultiWorld);
+        }
+    }
+
+    /**
+     * Fit a shifted height into the world slice. Heights bellow or above the world slice are set to the bottom or
+     * top of the world slice
+     * @param h The shifted height
+     * @param targetWorldHeight The target world height
+     * @param worldIndex The index of the world slice
+     * @param isMultiWorld If multi world is enabled. If not, the height is clipped to the target world height
+     * @return The height in the world slice
+     */
+    public static int sliceHeight(int h, WorldHeight targetWorldHeight, int worldIndex, boolean isMultiWorld) {
+        if(!isMultiWorld)
+            return Math.min(Math.max(h, targetWorldHeight.getMinHeight()), targetWorldHeight.getMaxHeight() - 1);
+
+        int hWorldIndex = targetWorldHeight.getWorldIndexFromY(h);
+        if(hWorldIndex == worldIndex)
+            return targetWorldHeight.calcBlockOffset(worldIndex, h);
+
+        return hWorldIndex < worldIndex ? targetWorldHeight.getMinHeight() : targetWorldHeight.getMaxHeight() - 1;
+    }
+
+    /**
+     * Unpack a heightmap into the values buffer. Both the padded (1.16+) and the older spanning layout are supported
+     * @param data The bit-packed heightmap
+     * @param bitsPerValue The bit width of the heights in the padded layout
+     * @return False, if the length of the data matches neither layout
+     */
+    private boolean unpack(long[] data, int bitsPerValue) {
+        int valuesPerLong = 64 / bitsPerValue;
+        if(data.length == (HEIGHTS_COUNT + valuesPerLong - 1) / valuesPerLong) {
+            long mask = (1L << bitsPerValue) - 1;
+            int i = 0;
+            for(long packed : data) {
+                for(int v = 0; v < valuesPerLong && i < HEIGHTS_COUNT; v++, i++) {
+                    values[i] = (int) (packed & mask);
+                    packed >>>= bitsPerValue;
+                }
+            }
+
+            return true;
+        }
+
+        //In the spanning layout, the values are packed back to back, so a value can span two longs
+        int spanningBits = (data.length * 64) / HEIGHTS_COUNT;
+        if(spanningBits < 1 || spanningBits > 32)
+            return false;
+
+        long mask = (1L << spanningBits) - 1;
+        int bitIndex = 0;
+        for(int i = 0; i < HEIGHTS_COUNT; i++, bitIndex += spanningBits) {
+            int longIndex = bitIndex >>> 6;
+            int bitOffset = bitIndex & 63;
+            long value = data[longIndex] >>> bitOffset;
+            if(bitOffset + spanningBits > 64)
+                value |= data[longIndex + 1] << (64 - bitOffset);
+
+            values[i] = (int) (value & mask);
+        }
+
+        return true;
+    }
+}
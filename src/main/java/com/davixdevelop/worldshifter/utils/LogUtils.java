@@ -5,12 +5,28 @@ import java.io.*;
 public class LogUtils {
     private static String SEE_HELP_MSG = "\nSee [-help] for usage info";
 
+    /**
+     * The writer of the error log file. While it's set, the errors are written to the log file instead of the console
+     */
+    private static volatile AsyncLogWriter errorLog;
+
+    /**
+     * The length of the progress line on the console, else 0 if the last line isn't a progress line
+     */
+    private static int progressLength = 0;
+
     public static void log(String message) {
-        System.out.println(message);
+        synchronized (LogUtils.class) {
+            endProgress();
+            System.out.println(message);
+        }
     }
 
     public static void log() {
-        System.out.println();
+        synchronized (LogUtils.class) {
+            endProgress();
+            System.out.println();
+        }
     }
 
     public static void logHelp(String message) {
@@ -18,26 +34,100 @@ public class LogUtils {
         System.out.println(SEE_HELP_MSG);
     }
 
+    /**
+     * Replace the progress line on the console with a new one
+     * @param line The progress line
+     */
+    public static synchronized void logProgress(String line) {
+        StringBuilder builder = new StringBuilder("\r").append(line);
+        //Clear the rest of the previous line, if it was longer
+        for(int i = line.length(); i < progressLength; i++)
+            builder.append(' ');
+
+        System.out.print(builder);
+        System.out.flush();
+        progressLength = line.length();
+    }
+
+    private static void endProgress() {
+        if(progressLength > 0) {
+            System.out.println();
+            progressLength = 0;
+        }
+    }
+
+    /**
+     * Write the errors to the log file from now on, on a separate thread
+     * @param logFile The path to the log file
+     */
+    public static void startErrorLog(File logFile) {
+        try {
+            errorLog = new AsyncLogWriter(logFile);
+        } catch (IOException ex) {
+            logError("Error while opening the log file, the errors will be written to the console", logFile, ex);
+        }
+    }
+
+    /**
+     * Write the queued errors to the log file and close it. The following errors are written to the console again
+     * @return The amount of errors, that were logged to the log file
+     */
+    public static long stopErrorLog() {
+        AsyncLogWriter writer = errorLog;
+        if(writer == null)
+            return 0;
+
+        errorLog = null;
+        writer.close();
+        return writer.getLoggedErrors();
+    }
+
     public static void logError(String message, Exception ex) {
-        StringWriter writer = new StringWriter();
-        ex.printStackTrace(new PrintWriter(writer));
+        AsyncLogWriter writer = errorLog;
+        if(writer != null) {
+            writer.logError(message, null, ex);
+            return;
+        }
+
+        StringWriter stringWriter = new StringWriter();
+        ex.printStackTrace(new PrintWriter(stringWriter));
 
-        System.out.println();
-        System.out.println("An exception was caught: " + message);
-        System.out.println(ex.getMessage() + ":");
-        System.out.println(writer);
-        System.out.println();
+        synchronized (LogUtils.class) {
+            endProgress();
+            System.out.println();
+            System.out.println("An exception was caught: " + message);
+            System.out.println(ex.getMessage() + ":");
+            System.out.println(stringWriter);
+            System.out.println();
+        }
     }
 
     public static void logError(String message, File file, Exception ex) {
-        StringWriter writer = new StringWriter();
-        ex.printStackTrace(new PrintWriter(writer));
-
-        System.out.println();
-        System.out.println("An exception was caught: " + message);
-        System.out.println("File: " + file.getPath());
-        System.out.println(ex.getMessage() + ":");
-        System.out.println(writer);
-        System.out.println();
+        AsyncLogWriter writer = errorLog;
+        if(writer != null) {
+            writer.logError(message, file, ex);
+            return;
+        }
+
+        StringWriter stringWriter = new StringWriter();
+        ex.printStackTrace(new PrintWriter(stringWriter));
+
+        synchronized (LogUtils.class) {
+            endProgress();
+            System.out.println();
+            System.out.println("An exception was caught: " + message);
+            System.out.println("File: " + file.getPath());
+            System.out.println(ex.getMessage() + ":");
+            System.out.println(stringWriter);
+            System.out.println();
+        }
+    }
+
+    /**
+     * @return The amount of errors logged to the log file so far
+     */
+    public static long getLoggedErrors() {
+        AsyncLogWriter writer = errorLog;
+        return writer != null ? writer.getLoggedErrors() : 0;
     }
 }
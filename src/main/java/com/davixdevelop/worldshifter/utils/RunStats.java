@@ -0,0 +1,167 @@
+package com.davixdevelop.worldshifter.utils;
+
+import com.davixdevelop.worldshifter.tasks.ScheduledRegion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collects the time spent in each stage of the shift and the bytes read and written. Each thread accumulates into
+ * its own counters, so recording a stage is only a thread local lookup and a few additions. The counters are summed
+ * once all the threads are done, and written as a JSON report
+ */
+public class RunStats {
+    /**
+     * The stages of the shift. Without the pipeline, the NBT library reads, decompresses and parses a chunk in one call,
+     * which is recorded as the read stage. The flush stage includes the serialize, compress and write stages of the flushed chunks
+     */
+    public enum Stage {
+        READ,
+        DECOMPRESS,
+        PARSE,
+        TRANSFORM,
+        SERIALIZE,
+        COMPRESS,
+        WRITE,
+        FLUSH
+    }
+
+    /**
+     * The amount of the slowest regions in the report
+     */
+    private static final int SLOWEST_REGIONS_COUNT = 10;
+
+    private static final List<Accumulator> ACCUMULATORS = new CopyOnWriteArrayList<>();
+    private static final ThreadLocal<Accumulator> THREAD_ACCUMULATOR = ThreadLocal.withInitial(() -> {
+        Accumulator accumulator = new Accumulator();
+        ACCUMULATORS.add(accumulator);
+        return accumulator;
+    });
+
+    /**
+     * Record the time spent in a stage by the current thread
+     * @param stage The stage
+     * @param startTime The value of System.nanoTime() at the start of the stage
+     */
+    public static void record(Stage stage, long startTime) {
+        Accumulator accumulator = THREAD_ACCUMULATOR.get();
+        accumulator.nanos[stage.ordinal()] += System.nanoTime() - startTime;
+        accumulator.counts[stage.ordinal()]++;
+    }
+
+    /**
+     * Record the bytes of a processed region
+     * @param bytesIn The size of the source region file
+     * @param bytesOut The size of the world slices region files
+     */
+    public static void recordBytes(long bytesIn, long bytesOut) {
+        Accumulator accumulator = THREAD_ACCUMULATOR.get();
+        accumulator.bytesIn += bytesIn;
+        accumulator.bytesOut += bytesOut;
+    }
+
+    /**
+     * Write the report of the run. Must only be called once all the threads are done
+     * @param reportFile The path to the report file, ex. stats.json in the output folder
+     * @param wallNanos The time in nanoseconds the run took
+     * @param scheduledRegions The scheduled regions, with their actual cost
+     */
+    public static void writeReport(File reportFile, long wallNanos, List<ScheduledRegion> scheduledRegions) {
+        long[] nanos = new long[Stage.values().length];
+        long[] counts = new long[Stage.values().length];
+        long bytesIn = 0;
+        long bytesOut = 0;
+        for(Accumulator accumulator : ACCUMULATORS) {
+            for(int s = 0; s < nanos.length; s++) {
+                nanos[s] += accumulator.nanos[s];
+                counts[s] += accumulator.counts[s];
+            }
+            bytesIn += accumulator.bytesIn;
+            bytesOut += accumulator.bytesOut;
+        }
+
+        List<ScheduledRegion> processedRegions = new ArrayList<>();
+        for(ScheduledRegion region : scheduledRegions) {
+            if(region.getActualCost() >= 0)
+                processedRegions.add(region);
+        }
+        processedRegions.sort(Comparator.comparingLong(ScheduledRegion::getActualCost).reversed());
+
+        double wallSeconds = wallNanos / 1_000_000_000.0;
+        long chunks = counts[Stage.TRANSFORM.ordinal()];
+
+        try(PrintWriter writer = new PrintWriter(reportFile)) {
+            writer.println("{");
+            writer.println(format("  \"wallSeconds\": %.3f,", wallSeconds));
+            writer.println("  \"regions\": " + processedRegions.size() + ",");
+            writer.println("  \"chunks\": " + chunks + ",");
+            writer.println(format("  \"chunksPerSecond\": %.1f,", wallSeconds > 0 ? chunks / wallSeconds : 0));
+            writer.println("  \"bytesIn\": " + bytesIn + ",");
+            writer.println("  \"bytesOut\": " + bytesOut + ",");
+
+            //The stage times are summed over all threads, so they can exceed the wall time
+            writer.println("  \"stages\": {");
+            for(Stage stage : Stage.values()) {
+                int s = stage.ordinal();
+                writer.print(format("    \"%s\": {\"count\": %d, \"totalMs\": %.1f, \"meanUs\": %.1f}", stage.name().toLowerCase(Locale.ROOT),
+                        counts[s], nanos[s] / 1_000_000.0, counts[s] > 0 ? nanos[s] / 1_000.0 / counts[s] : 0));
+                writer.println(s + 1 < nanos.length ? "," : "");
+            }
+            writer.println("  },");
+
+            writer.println("  \"regionLatencyMs\": {");
+            writer.println(format("    \"p50\": %.1f,", percentile(processedRegions, 0.5)));
+            writer.println(format("    \"p90\": %.1f,", percentile(processedRegions, 0.9)));
+            writer.println(format("    \"p99\": %.1f,", percentile(processedRegions, 0.99)));
+            writer.println(format("    \"max\": %.1f", percentile(processedRegions, 1)));
+            writer.println("  },");
+
+            writer.println("  \"slowestRegions\": [");
+            int slowestCount = Math.min(SLOWEST_REGIONS_COUNT, processedRegions.size());
+            for(int r = 0; r < slowestCount; r++) {
+                ScheduledRegion region = processedRegions.get(r);
+                writer.print(format("    {\"type\": \"%s\", \"file\": \"%s\", \"ms\": %.1f, \"predictedSectors\": %d}", region.getSubFolder(),
+                        region.getRegionFile().getName(), region.getActualCost() / 1_000_000.0, region.getPredictedCost()));
+                writer.println(r + 1 < slowestCount ? "," : "");
+            }
+            writer.println("  ]");
+            writer.println("}");
+        } catch (IOException ex) {
+            LogUtils.logError("Error while writing the stats report", reportFile, ex);
+        }
+    }
+
+    /**
+     * @param regions The processed regions, sorted from the slowest to the fastest
+     * @param percentile The percentile from 0 to 1
+     * @return The latency in milliseconds at the percentile (nearest rank)
+     */
+    private static double percentile(List<ScheduledRegion> regions, double percentile) {
+        if(regions.isEmpty())
+            return 0;
+
+        int rank = (int) Math.ceil(percentile * regions.size());
+        int index = regions.size() - Math.max(rank, 1);
+        return regions.get(index).getActualCost() / 1_000_000.0;
+    }
+
+    private static String format(String format, Object... args) {
+        return String.format(Locale.ROOT, format, args);
+    }
+
+    /**
+     * The counters of a single thread
+     */
+    private static class Accumulator {
+        private final long[] nanos = new long[Stage.values().length];
+        private final long[] counts = new long[Stage.values().length];
+        private long bytesIn;
+        private long bytesOut;
+    }
+}
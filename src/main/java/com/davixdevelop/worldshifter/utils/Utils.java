@@ -1,73 +1,57 @@
 package com.davixdevelop.worldshifter.utils;
 
+import io.github.ensgijs.nbt.io.NamedTag;
 import io.github.ensgijs.nbt.mca.util.VersionAware;
 import io.github.ensgijs.nbt.query.NbtPath;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.Tag;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Set;
 
 public class Utils {
     private static final VersionAware<NbtPath> ENTITIES_BRAIN_MEMORIES_PATH = new VersionAware<NbtPath>()
             .register(0, NbtPath.of("Brain.memories"));
 
-    public static void copyFile(File source, File target) throws IOException {
-        InputStream is = null;
-        OutputStream os = null;
-        try {
-            is = new FileInputStream(source);
-            os = new FileOutputStream(target);
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = is.read(buffer)) > 0) {
-                os.write(buffer, 0, length);
-            }
-
-            is.close();
-            os.close();
-
-        } catch (Exception ex) {
-            throw ex;
-        }
-    }
-
-    public static int[] decodeDataLongArray(long[] data, int bits_per_value) {
-        int[] res = new int[256];
-
-        int values_per_long = 64 / bits_per_value;
-
-        int expected_data_length = (256 + values_per_long - 1) / values_per_long;
-        if(data.length != expected_data_length) {
-            bits_per_value = (64 * (data.length  - 1))/255;
-            values_per_long = 64 / bits_per_value;
-        }
-
-        int mask = (1 << bits_per_value) - 1;
-
-        for(int i = 0; i < 256; i++) {
-            int long_index = i / values_per_long;
-            int bit_index = (i % values_per_long) * bits_per_value;
-            res[i] = (int)((data[long_index] >> bit_index) & mask);
+    /**
+     * Deep copy a compound tag, without the excluded keys. The excluded keys are also skipped in the
+     * legacy `Level` compound tag of pre 1.18 chunks
+     * @param source The compound tag to copy
+     * @param excludedKeys The keys of the tags to leave out of the copy
+     * @return The copy of the compound tag
+     */
+    public static CompoundTag copyCompoundTag(CompoundTag source, Set<String> excludedKeys) {
+        CompoundTag copy = new CompoundTag();
+        for(NamedTag namedTag : source) {
+            String name = namedTag.getName();
+            if(excludedKeys.contains(name))
+                continue;
+
+            Tag<?> tag = namedTag.getTag();
+            if(tag instanceof CompoundTag compoundTag && name.equals("Level"))
+                copy.put(name, copyCompoundTag(compoundTag, excludedKeys));
+            else
+                copy.put(name, tag.clone());
         }
 
-        return res;
+        return copy;
     }
 
-    public static long[] encodeDataLongArray(int[] data, int bits_per_value) {
-        int values_per_long = 64 / bits_per_value;
-
-        int data_length = (256 + values_per_long - 1) / values_per_long;
-        long[] res = new long[data_length];
-
-
-        long mask = (1L << bits_per_value) - 1;
-
-        for(int i = 0; i < 256; i++) {
-            int long_index = i / values_per_long;
-            int bit_index = (i % values_per_long) * bits_per_value;
-
-            res[long_index] &= ~(mask << bit_index);
-            res[long_index] |= (long) data[i] << bit_index;
+    /**
+     * Rename the file to the target file, replacing it. The rename is atomic, if the file system supports it
+     * @param file The file to rename
+     * @param targetFile The target file
+     * @throws IOException If the file could not be renamed
+     */
+    public static void moveAtomically(File file, File targetFile) throws IOException {
+        try {
+            Files.move(file.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(file.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
         }
-
-        return res;
     }
 }
@@ -0,0 +1,98 @@
+package com.davixdevelop.worldshifter.io;
+
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClippedFilterTest {
+    /**
+     * Clips the sections and the entity origins below Y 0
+     */
+    private static class BelowZeroPredicate implements ClipPredicate {
+        private final ClippedFilter.OriginTrie originTrie = ClippedFilter.OriginTrie.compile(List.of(new String[]{"Pos"}, new String[]{"y"}));
+        private int clippedSections;
+        private int clippedEntities;
+
+        @Override
+        public boolean isSectionClipped(int dataVersion, int sectionY) {
+            return sectionY < 0;
+        }
+
+        @Override
+        public boolean isOriginClipped(int dataVersion, double originY) {
+            return originY < 0;
+        }
+
+        @Override
+        public ClippedFilter.OriginTrie getOriginTrie(int dataVersion) {
+            return originTrie;
+        }
+
+        @Override
+        public void recordClipped(int sections, int entities) {
+            clippedSections += sections;
+            clippedEntities += entities;
+        }
+    }
+
+    @Test
+    void filteredShiftMatchesTheUnfilteredShift(@TempDir File outputFolder) throws Exception {
+        byte[] data = ChunkCodec.serialize(TestChunks.createChunkWithEntities());
+
+        //The chunk shifted by a region, that drops the clipped sections and entities itself
+        TestChunks.ShiftedRegion unfilteredRegion = new TestChunks.ShiftedRegion(outputFolder);
+        Map<Integer, byte[]> expected = unfilteredRegion.shift(data, null);
+
+        //The chunk filtered by the clip predicate of the region, before it is shifted by the region
+        TestChunks.ShiftedRegion filteredRegion = new TestChunks.ShiftedRegion(outputFolder);
+        byte[] filtered = ClippedFilter.filter(data, filteredRegion.region.getClipPredicate());
+        assertTrue(filtered.length < data.length);
+        Map<Integer, byte[]> actual = filteredRegion.shift(filtered, null);
+
+        assertTrue(unfilteredRegion.excludedSections.get() > 0);
+        assertTrue(unfilteredRegion.removedEntities.get() > 0);
+        assertEquals(unfilteredRegion.excludedSections.get(), filteredRegion.excludedSections.get());
+        assertEquals(unfilteredRegion.removedEntities.get(), filteredRegion.removedEntities.get());
+
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<Integer, byte[]> slice : expected.entrySet()) {
+            assertEquals(ChunkCodec.parse(slice.getValue()), ChunkCodec.parse(actual.get(slice.getKey())));
+        }
+    }
+
+    @Test
+    void chunkWithoutClippedContentIsNotCopied() throws IOException {
+        CompoundTag chunk = TestChunks.createChunkWithEntities();
+        chunk.put("sections", ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+        chunk.put("block_entities", ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+        chunk.put("Entities", ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+        byte[] data = ChunkCodec.serialize(chunk);
+
+        BelowZeroPredicate predicate = new BelowZeroPredicate();
+        assertSame(data, ClippedFilter.filter(data, predicate));
+        assertEquals(0, predicate.clippedSections);
+        assertEquals(0, predicate.clippedEntities);
+    }
+
+    @Test
+    void sectionsAreKeptWithoutYPos() throws IOException {
+        CompoundTag chunk = TestChunks.createChunkWithEntities();
+        chunk.remove("yPos");
+        chunk.put("block_entities", ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+        chunk.put("Entities", ListTag.createUnchecked(CompoundTag.class).asCompoundTagList());
+        byte[] data = ChunkCodec.serialize(chunk);
+
+        BelowZeroPredicate predicate = new BelowZeroPredicate();
+        assertSame(data, ClippedFilter.filter(data, predicate));
+        assertEquals(0, predicate.clippedSections);
+    }
+}
@@ -0,0 +1,89 @@
+package com.davixdevelop.worldshifter.io;
+
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpaqueSectionsTest {
+    @Test
+    void splicedSectionsMatchTheSourceSections() throws IOException {
+        byte[] data = ChunkCodec.serialize(TestChunks.createChunk(-4, 8));
+
+        OpaqueSections opaqueSections = OpaqueSections.strip(data);
+        assertNotNull(opaqueSections);
+        assertTrue(opaqueSections.getStrippedData().length < data.length);
+
+        //The stubs only hold the Y and the index of the source section
+        CompoundTag stripped = ChunkCodec.parse(opaqueSections.getStrippedData());
+        ListTag<CompoundTag> stubs = stripped.getListTag("sections").asCompoundTagList();
+        assertEquals(8, stubs.size());
+        for (int i = 0; i < stubs.size(); i++) {
+            assertEquals(-4 + i, stubs.get(i).getByte("Y"));
+            assertFalse(stubs.get(i).containsKey("block_states"));
+        }
+
+        //Shift the chunk like a world slice, that keeps every second section moved up by 16 sections
+        ListTag<CompoundTag> shiftedStubs = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for (int i = 0; i < stubs.size(); i += 2) {
+            CompoundTag stub = stubs.get(i);
+            stub.putByte("Y", (byte) (stub.getByte("Y") + 16));
+            shiftedStubs.add(stub);
+        }
+        stripped.put("sections", shiftedStubs);
+
+        byte[] spliced = opaqueSections.splice(ChunkCodec.serialize(stripped));
+
+        //The same shift applied to the fully parsed chunk
+        CompoundTag expected = ChunkCodec.parse(data);
+        ListTag<CompoundTag> sections = expected.getListTag("sections").asCompoundTagList();
+        ListTag<CompoundTag> shiftedSections = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for (int i = 0; i < sections.size(); i += 2) {
+            CompoundTag section = sections.get(i);
+            section.putByte("Y", (byte) (section.getByte("Y") + 16));
+            shiftedSections.add(section);
+        }
+        expected.put("sections", shiftedSections);
+
+        assertArrayEquals(ChunkCodec.serialize(expected), spliced);
+        assertEquals(expected, ChunkCodec.parse(spliced));
+    }
+
+    @Test
+    void passthroughShiftMatchesTheParsedShift(@TempDir File outputFolder) throws Exception {
+        //Sections from Y -4 to 11, so that the shift excludes some of them and keeps the rest
+        byte[] data = ChunkCodec.serialize(TestChunks.createChunk(-4, 16));
+
+        //The chunk shifted by a region with the whole sections parsed
+        TestChunks.ShiftedRegion parsedRegion = new TestChunks.ShiftedRegion(outputFolder);
+        Map<Integer, byte[]> expected = parsedRegion.shift(data, null);
+
+        //The chunk shifted by a region with only the section stubs parsed, and the source sections spliced back in
+        OpaqueSections opaqueSections = OpaqueSections.strip(data);
+        assertNotNull(opaqueSections);
+        TestChunks.ShiftedRegion passthroughRegion = new TestChunks.ShiftedRegion(outputFolder);
+        Map<Integer, byte[]> spliced = passthroughRegion.shift(opaqueSections.getStrippedData(), opaqueSections);
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected.keySet(), spliced.keySet());
+        for (Map.Entry<Integer, byte[]> slice : expected.entrySet()) {
+            //The spliced sections keep the tag order of the source, so the chunks are compared by their tags
+            assertEquals(ChunkCodec.parse(slice.getValue()), ChunkCodec.parse(spliced.get(slice.getKey())));
+        }
+        assertEquals(parsedRegion.excludedSections.get(), passthroughRegion.excludedSections.get());
+    }
+
+    @Test
+    void chunkWithoutSectionsIsNotStripped() throws IOException {
+        CompoundTag chunk = TestChunks.createChunk(0, 0);
+        chunk.remove("sections");
+
+        assertNull(OpaqueSections.strip(ChunkCodec.serialize(chunk)));
+    }
+}
@@ -0,0 +1,157 @@
+package com.davixdevelop.worldshifter.io;
+
+import com.davixdevelop.worldshifter.model.ChunkPos;
+import com.davixdevelop.worldshifter.model.MultiTerrainRegion;
+import io.github.ensgijs.nbt.mca.TerrainChunk;
+import io.github.ensgijs.nbt.tag.CompoundTag;
+import io.github.ensgijs.nbt.tag.DoubleTag;
+import io.github.ensgijs.nbt.tag.ListTag;
+
+import java.io.File;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Synthetic chunks, and the shift of a chunk by a real terrain region, for the tests of the byte level chunk filters
+ */
+class TestChunks {
+    static final int DATA_VERSION = 3465;
+    static final int CHUNK_X = 3;
+    static final int CHUNK_Z = -7;
+
+    /**
+     * The offset of the shift, that moves the sections from Y -4 to -1 out of the bottom of the world
+     */
+    static final int OFFSET_Y = -64;
+
+    /**
+     * A terrain region, that shifts the chunks by the offset without multi world, and its counters
+     */
+    static class ShiftedRegion {
+        final AtomicInteger excludedSections = new AtomicInteger();
+        final AtomicInteger removedEntities = new AtomicInteger();
+        final MultiTerrainRegion region;
+
+        ShiftedRegion(File outputFolder) {
+            region = new MultiTerrainRegion(new File("r.0.-1.mca"), null, null, OFFSET_Y, OFFSET_Y / 16, outputFolder, false, excludedSections, removedEntities, null);
+        }
+
+        /**
+         * Shift the chunk, like the pipeline does
+         * @param data The uncompressed NBT data of the chunk, that is parsed
+         * @param opaqueSections The opaque sections of the chunk, if the data has the sections replaced by stubs, else null
+         * @return The uncompressed NBT data of the world slices chunks, by their world index
+         */
+        Map<Integer, byte[]> shift(byte[] data, OpaqueSections opaqueSections) throws Exception {
+            region.shiftChunk(region.createChunk(ChunkCodec.parse(data)));
+
+            Map<Integer, byte[]> slices = new TreeMap<>();
+            for (Map.Entry<Integer, TerrainChunk> slice : region.takeChunks(ChunkPos.getLocalIndex(CHUNK_X, CHUNK_Z)).entrySet()) {
+                byte[] sliceData = ChunkCodec.serialize(slice.getValue().updateHandle());
+                slices.put(slice.getKey(), opaqueSections != null ? opaqueSections.splice(sliceData) : sliceData);
+            }
+
+            return slices;
+        }
+    }
+
+    /**
+     * Create a chunk with sections, that each have their own block states, biomes and light
+     * @param minSectionY The Y of the lowest section
+     * @param sectionsCount The amount of sections
+     * @return The root tag of the chunk
+     */
+    static CompoundTag createChunk(int minSectionY, int sectionsCount) {
+        CompoundTag chunk = new CompoundTag();
+        chunk.putInt("DataVersion", DATA_VERSION);
+        chunk.putInt("xPos", CHUNK_X);
+        chunk.putInt("yPos", minSectionY);
+        chunk.putInt("zPos", CHUNK_Z);
+        chunk.putString("Status", "minecraft:full");
+
+        ListTag<CompoundTag> sections = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for (int i = 0; i < sectionsCount; i++) {
+            int sectionY = minSectionY + i;
+
+            //Two block states, so that the data holds 4 bits per block
+            CompoundTag blockStates = new CompoundTag();
+            ListTag<CompoundTag> palette = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+            for (String name : new String[]{"minecraft:air", sectionY < 0 ? "minecraft:deepslate" : "minecraft:stone"}) {
+                CompoundTag state = new CompoundTag();
+                state.putString("Name", name);
+                palette.add(state);
+            }
+            blockStates.put("palette", palette);
+            long[] blocks = new long[256];
+            for (int b = 0; b < blocks.length; b++) {
+                blocks[b] = (long) sectionY * 31 + b;
+            }
+            blockStates.putLongArray("data", blocks);
+
+            CompoundTag biomes = new CompoundTag();
+            ListTag<CompoundTag> biomesPalette = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+            CompoundTag biome = new CompoundTag();
+            biome.putString("Name", "minecraft:plains");
+            biomesPalette.add(biome);
+            biomes.put("palette", biomesPalette);
+
+            byte[] light = new byte[2048];
+            for (int b = 0; b < light.length; b++) {
+                light[b] = (byte) (sectionY + b);
+            }
+
+            //The Y is not the first tag of the section, so that the bytes before it are also copied
+            CompoundTag section = new CompoundTag();
+            section.put("block_states", blockStates);
+            section.putByte("Y", (byte) sectionY);
+            section.put("biomes", biomes);
+            section.putByteArray("SkyLight", light);
+            sections.add(section);
+        }
+
+        chunk.put("sections", sections);
+        chunk.putLong("LastUpdate", 1234);
+        return chunk;
+    }
+
+    /**
+     * Create a chunk with sections from Y -4 to 3, and entities and block entities on both sides of the bottom of the shifted world
+     * @return The root tag of the chunk
+     */
+    static CompoundTag createChunkWithEntities() {
+        CompoundTag chunk = createChunk(-4, 8);
+
+        //The block entities at -60 and -1 end up below the bottom of the world, which is at Y -64 after the shift
+        ListTag<CompoundTag> blockEntities = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for (int y : new int[]{-60, -1, 0, 70}) {
+            CompoundTag blockEntity = new CompoundTag();
+            blockEntity.putString("id", "minecraft:chest");
+            blockEntity.putInt("x", CHUNK_X * 16);
+            blockEntity.putInt("y", y);
+            blockEntity.putInt("z", CHUNK_Z * 16);
+            blockEntities.add(blockEntity);
+        }
+        chunk.put("block_entities", blockEntities);
+
+        ListTag<CompoundTag> entities = ListTag.createUnchecked(CompoundTag.class).asCompoundTagList();
+        for (double y : new double[]{-30.5, 12.25, -0.5}) {
+            CompoundTag entity = new CompoundTag();
+            entity.putString("id", "minecraft:zombie");
+            ListTag<DoubleTag> pos = ListTag.createUnchecked(DoubleTag.class).asDoubleTagList();
+            pos.addDouble(CHUNK_X * 16 + 0.5);
+            pos.addDouble(y);
+            pos.addDouble(CHUNK_Z * 16 + 0.5);
+            entity.put("Pos", pos);
+            entities.add(entity);
+        }
+
+        //An entity without an origin is never clipped
+        CompoundTag marker = new CompoundTag();
+        marker.putString("id", "minecraft:marker");
+        entities.add(marker);
+        chunk.put("Entities", entities);
+
+        return chunk;
+    }
+}